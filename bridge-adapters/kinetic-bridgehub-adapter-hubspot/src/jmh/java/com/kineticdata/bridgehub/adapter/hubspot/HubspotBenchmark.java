@@ -0,0 +1,189 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpVersion;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the adapter hot paths using a recorded page of 100 companies.
+ *
+ * Run with: mvn -Pbenchmark test-compile exec:exec
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HubspotBenchmark {
+
+    private static final String QUERY = "associations=tickets&limit=100"
+        + "&after=<%=parameter[\"Page\"]%>&archived=false";
+
+    private static final List<String> PLAIN_FIELDS =
+        Arrays.asList("id", "createdAt", "updatedAt", "archived");
+    private static final List<String> JSON_PATH_FIELDS = Arrays.asList("id",
+        "$.properties.name", "$.properties.domain", "$.properties.industry",
+        "$.associations.tickets.results[*].id");
+
+    private String fixture;
+    private JSONArray records;
+    private HubspotAdapter adapter;
+    private HubspotQualificationParser parser;
+    private Map<String, String> urlParameters;
+    private BridgeRequest searchRequest;
+
+    @Setup
+    public void setup() throws IOException, ParseException {
+        StringBuilder builder = new StringBuilder();
+        try (Reader reader = new InputStreamReader(HubspotBenchmark.class
+            .getResourceAsStream("/fixtures/companies.json"),
+            StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            for (int n; (n = reader.read(buffer)) != -1; ) {
+                builder.append(buffer, 0, n);
+            }
+        }
+        fixture = builder.toString();
+        records = (JSONArray)((JSONObject)new JSONParser().parse(fixture))
+            .get("results");
+
+        adapter = new HubspotAdapter();
+        adapter.setApiHelper(new FixtureApiHelper(fixture));
+        parser = new HubspotQualificationParser();
+
+        urlParameters = new HashMap<>();
+        urlParameters.put("associations", "tickets");
+        urlParameters.put("limit", "100");
+        urlParameters.put("after", "5000000100");
+        urlParameters.put("properties", "name,domain,industry");
+
+        searchRequest = new BridgeRequest();
+        searchRequest.setStructure("Companies");
+        searchRequest.setQuery(QUERY);
+        searchRequest.setFields(JSON_PATH_FIELDS);
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("Page", "5000000000");
+        searchRequest.setParameters(parameters);
+    }
+
+    @Benchmark
+    public Map<String, String> getParameters() throws BridgeError {
+        return parser.getParameters(QUERY);
+    }
+
+    @Benchmark
+    public String getUrl() {
+        Map<String, NameValuePair> parameterMap =
+            adapter.buildNameValuePairMap(urlParameters);
+        return adapter.getUrl("/crm/v3/objects/companies", parameterMap);
+    }
+
+    @Benchmark
+    public void buildRecordPlainFields(Blackhole blackhole) {
+        buildRecords(PLAIN_FIELDS, blackhole);
+    }
+
+    @Benchmark
+    public void buildRecordJsonPathFields(Blackhole blackhole) {
+        buildRecords(JSON_PATH_FIELDS, blackhole);
+    }
+
+    @Benchmark
+    public void buildRecordFieldPlan(Blackhole blackhole) {
+        HubspotFieldPlan plan = HubspotFieldPlan.compile(JSON_PATH_FIELDS);
+        for (Object record : records) {
+            blackhole.consume(plan.buildRecord((JSONObject)record));
+        }
+    }
+
+    @Benchmark
+    public Object parseResponse() throws IOException, ParseException {
+        return new JSONParser().parse(new StringReader(fixture));
+    }
+
+    @Benchmark
+    public Object parseResponseProjected() throws IOException, ParseException {
+        return HubspotResponseProjection.forFields("results", JSON_PATH_FIELDS)
+            .parse(new StringReader(fixture));
+    }
+
+    @Benchmark
+    public Object search() throws BridgeError {
+        return adapter.search(searchRequest);
+    }
+
+    private void buildRecords(List<String> fields, Blackhole blackhole) {
+        for (Object record : records) {
+            blackhole.consume(adapter.buildRecord(fields, (JSONObject)record));
+        }
+    }
+
+    /**
+     * Serves the recorded response for every request without a network or
+     * rate limit.
+     */
+    private static class FixtureApiHelper extends HubspotApiHelper {
+        private final String body;
+
+        FixtureApiHelper(String body) {
+            super("http://localhost", "benchmark");
+            this.body = body;
+            setRateLimiter(new HubspotRateLimiter(Integer.MAX_VALUE, 1,
+                Integer.MAX_VALUE, 0, 0));
+        }
+
+        @Override
+        protected CompletableFuture<CloseableHttpResponse> send(
+            HttpRequestBase http) {
+
+            FixtureResponse response = new FixtureResponse();
+            response.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+            return CompletableFuture.completedFuture(response);
+        }
+    }
+
+    private static class FixtureResponse extends BasicHttpResponse
+        implements CloseableHttpResponse {
+
+        FixtureResponse() {
+            super(HttpVersion.HTTP_1_1, 200, "OK");
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -14,16 +14,54 @@ import java.util.Map;
  *  String structure - Name of the data model.
  *  PathBuilder pathBuilder - URL path to asset.  Defined in child class.
  *  String accessor - property name accessor when multiple results returned.
+ *  String objectType - HubSpot object type, null if the structure is not a 
+ *      CRM object.
+ * 
+ * Mappings are immutable so that they can be shared by concurrent requests.
  */
 public class AdapterMapping {
+    private static final String OBJECTS_PATH = "/crm/v3/objects/";
+    
     private final String structure;
-    private String accessor;
+    private final String accessor;
     private final PathBuilder pathbuilder;
+    private final String objectType;
     
     public AdapterMapping(String structure, String accessor, PathBuilder pathbuilder){
+        this(structure, accessor, pathbuilder, null);
+    }
+    
+    public AdapterMapping(String structure, String accessor, PathBuilder pathbuilder,
+        String objectType){
+        
         this.accessor = accessor;
         this.structure = structure;
         this.pathbuilder = pathbuilder;
+        this.objectType = objectType;
+    }
+    
+    /**
+     * Map a structure to a HubSpot CRM object type.  Every object type has the
+     * same v3 list, get, search and batch read endpoints.
+     * 
+     * @param structure
+     * @param objectType object type name or id, ie. deals or 2-1234567
+     * @return 
+     */
+    public static AdapterMapping forObjectType(String structure, String objectType) {
+        String listPath = OBJECTS_PATH + objectType;
+        return new AdapterMapping(structure, "results", (structureList, parameters) -> {
+            String path = listPath;
+            if (parameters.containsKey("id")) {
+                path = String.format("%s/%s", path, parameters.get("id"));
+                parameters.remove("id");
+            }
+            if (parameters.containsKey("body")) {
+                path = String.format("%s/%s", path, "search");
+                parameters.remove("body");
+            }
+            return path;
+        }, objectType);
     }
     
     /**
@@ -57,4 +95,41 @@ public class AdapterMapping {
     public PathBuilder getPathbuilder() {
         return pathbuilder;
     }
+    
+    /**
+     * @return the HubSpot object type, ie. contacts
+     */
+    public String getObjectType() {
+        return objectType;
+    }
+    
+    /**
+     * @return the path listing the objects, null if the structure is not a CRM
+     *   object
+     */
+    public String getListPath() {
+        return objectType == null ? null : OBJECTS_PATH + objectType;
+    }
+    
+    /**
+     * @param id
+     * @return the path of one object, null if the structure is not a CRM object
+     */
+    public String getObjectPath(String id) {
+        return objectType == null ? null : getListPath() + "/" + id;
+    }
+    
+    /**
+     * @return the search path, null if the structure is not a CRM object
+     */
+    public String getSearchPath() {
+        return objectType == null ? null : getListPath() + "/search";
+    }
+    
+    /**
+     * @return the batch read path, null if the structure is not a CRM object
+     */
+    public String getBatchReadPath() {
+        return objectType == null ? null : getListPath() + "/batch/read";
+    }
 }
@@ -1,8 +1,5 @@
 package com.kineticdata.bridgehub.adapter.hubspot;
 
-import com.jayway.jsonpath.DocumentContext;
-import com.jayway.jsonpath.JsonPath;
-import com.jayway.jsonpath.JsonPathException;
 import com.kineticdata.bridgehub.adapter.BridgeAdapter;
 import com.kineticdata.bridgehub.adapter.BridgeError;
 import com.kineticdata.bridgehub.adapter.BridgeRequest;
@@ -13,15 +10,32 @@ import com.kineticdata.bridgehub.adapter.RecordList;
 import com.kineticdata.commons.v1.config.ConfigurableProperty;
 import com.kineticdata.commons.v1.config.ConfigurablePropertyMap;
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
 import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.regex.Matcher;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.NameValuePair;
@@ -30,7 +44,6 @@ import org.apache.http.message.BasicNameValuePair;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
-import org.json.simple.parser.ParseException;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
 
@@ -48,19 +61,20 @@ public class HubspotAdapter implements BridgeAdapter {
     
     /*----------------------------------------------------------------------------------------------
      * STRUCTURES
-     *      AdapterMapping( Structure Name, accessor, Path Function)
+     *      AdapterMapping( Structure Name, accessor, Path Function, Object Type)
      *--------------------------------------------------------------------------------------------*/
-    public static Map<String,AdapterMapping> MAPPINGS 
-        = new HashMap<String,AdapterMapping>() {{
-        put("Companies", new AdapterMapping("Companies", "results",
-            HubspotAdapter::pathCompanies));
-        put("Contacts", new AdapterMapping("Contacts", "results",
-            HubspotAdapter::pathContacts));
-        put("Tickets", new AdapterMapping("Tickets", "results",
-            HubspotAdapter::pathTickets));
-        put("Adhoc", new AdapterMapping("Adhoc", "",
-            HubspotAdapter::pathAdhoc));
-    }};
+    // Structures every adapter instance has.  More object types are added by
+    // the Object Types and Discover Custom Objects properties.
+    public static final Map<String,AdapterMapping> MAPPINGS =
+        new HubspotStructureRegistry(Arrays.asList(
+            AdapterMapping.forObjectType("Companies", "companies"),
+            AdapterMapping.forObjectType("Contacts", "contacts"),
+            AdapterMapping.forObjectType("Tickets", "tickets"),
+            AdapterMapping.forObjectType("Deals", "deals"),
+            AdapterMapping.forObjectType("Products", "products"),
+            AdapterMapping.forObjectType("Line Items", "line_items"),
+            new AdapterMapping("Adhoc", "", HubspotAdapter::pathAdhoc)))
+            .getMappings();
 
     /*----------------------------------------------------------------------------------------------
      * PROPERTIES
@@ -90,15 +104,249 @@ public class HubspotAdapter implements BridgeAdapter {
     /** Defines the collection of property names for the adapter */
     public static class Properties {
         public static final String PROPERTY_API_KEY = "API Key";
+        public static final String PROPERTY_API_BASE_URL = "API Base Url";
+        public static final String PROPERTY_MAX_CONNECTIONS = "Max Connections";
+        public static final String PROPERTY_MAX_CONNECTIONS_PER_ROUTE = 
+            "Max Connections Per Route";
+        public static final String PROPERTY_KEEP_ALIVE = "Keep Alive (ms)";
+        public static final String PROPERTY_IDLE_TIMEOUT = 
+            "Idle Connection Timeout (ms)";
+        public static final String PROPERTY_HTTP_TRANSPORT = "HTTP Transport";
+        public static final String PROPERTY_RATE_LIMIT = 
+            "Rate Limit (requests per 10s)";
+        public static final String PROPERTY_SEARCH_RATE_LIMIT = 
+            "Search Rate Limit (requests per second)";
+        public static final String PROPERTY_MAX_RETRIES = "Max Retries";
+        public static final String PROPERTY_MAX_RATE_LIMIT_WAIT = 
+            "Max Rate Limit Wait (ms)";
+        public static final String PROPERTY_FETCH_ALL_MAX_RECORDS = 
+            "Fetch All Max Records";
+        public static final String PROPERTY_COUNT_CACHE_TTL = 
+            "Count Cache TTL (s)";
+        public static final String PROPERTY_BATCH_WINDOW = "Batch Window (ms)";
+        public static final String PROPERTY_BATCH_SIZE = "Batch Size";
+        public static final String PROPERTY_RETRIEVE_CACHE_TTLS = 
+            "Retrieve Cache TTLs (s)";
+        public static final String PROPERTY_RETRIEVE_CACHE_SIZE = 
+            "Retrieve Cache Size (KB)";
+        public static final String PROPERTY_MIRROR_STRUCTURES = 
+            "Mirror Structures";
+        public static final String PROPERTY_MIRROR_PROPERTIES = 
+            "Mirror Properties";
+        public static final String PROPERTY_MIRROR_INDEXES = "Mirror Indexes";
+        public static final String PROPERTY_MIRROR_DIRECTORY = 
+            "Mirror Directory";
+        public static final String PROPERTY_MIRROR_SYNC_INTERVAL = 
+            "Mirror Sync Interval (s)";
+        public static final String PROPERTY_MIRROR_MAX_STALENESS = 
+            "Mirror Max Staleness (s)";
+        public static final String PROPERTY_WEBHOOK_PORT = "Webhook Port";
+        public static final String PROPERTY_WEBHOOK_BIND_ADDRESS = 
+            "Webhook Bind Address";
+        public static final String PROPERTY_WEBHOOK_PATH = "Webhook Path";
+        public static final String PROPERTY_WEBHOOK_URL = "Webhook Url";
+        public static final String PROPERTY_WEBHOOK_CLIENT_SECRET = 
+            "Webhook Client Secret";
+        public static final String PROPERTY_WEBHOOK_BATCH_WINDOW = 
+            "Webhook Batch Window (ms)";
+        public static final String PROPERTY_WEBHOOK_MAX_BODY_SIZE = 
+            "Webhook Max Body Size (bytes)";
+        public static final String PROPERTY_CONNECT_TIMEOUT = 
+            "Connect Timeout (ms)";
+        public static final String PROPERTY_CONNECTION_REQUEST_TIMEOUT = 
+            "Connection Request Timeout (ms)";
+        public static final String PROPERTY_SOCKET_TIMEOUT = 
+            "Socket Timeout (ms)";
+        public static final String PROPERTY_OPERATION_TIMEOUTS = 
+            "Operation Socket Timeouts (ms)";
+        public static final String PROPERTY_HEDGE_PERCENTILE = 
+            "Hedge Percentile";
+        public static final String PROPERTY_HEDGE_BUDGET = "Hedge Budget (%)";
+        public static final String PROPERTY_CIRCUIT_FAILURE_RATE = 
+            "Circuit Breaker Failure Rate (%)";
+        public static final String PROPERTY_CIRCUIT_SLOW_CALL_RATE = 
+            "Circuit Breaker Slow Call Rate (%)";
+        public static final String PROPERTY_CIRCUIT_SLOW_CALL_DURATION = 
+            "Circuit Breaker Slow Call (ms)";
+        public static final String PROPERTY_CIRCUIT_OPEN_DURATION = 
+            "Circuit Breaker Open Duration (s)";
+        public static final String PROPERTY_STALE_FALLBACK_MAX_AGE = 
+            "Stale Fallback Max Age (s)";
+        public static final String PROPERTY_STALE_FALLBACK_CACHE_SIZE = 
+            "Stale Fallback Cache Size (KB)";
+        public static final String PROPERTY_BULKHEAD_MAX_CONCURRENT = 
+            "Max Concurrent Requests Per Structure";
+        public static final String PROPERTY_BULKHEAD_MAX_WAIT = 
+            "Bulkhead Max Wait (ms)";
+        public static final String PROPERTY_OBJECT_TYPES = 
+            "Object Types";
+        public static final String PROPERTY_DISCOVER_CUSTOM_OBJECTS = 
+            "Discover Custom Objects";
+        public static final String PROPERTY_PAGE_TOKEN_TTL = 
+            "Page Token TTL (s)";
+        public static final String PROPERTY_MAX_SORT_RECORDS = 
+            "Max Sort Records";
+        public static final String PROPERTY_UNIQUE_PROPERTIES = 
+            "Unique Properties";
+        public static final String PROPERTY_SCAN_PARALLELISM = 
+            "Scan Parallelism";
+        public static final String PROPERTY_SCAN_MAX_RECORDS = 
+            "Scan Max Records";
     }
     private final ConfigurablePropertyMap properties = new ConfigurablePropertyMap(
-        new ConfigurableProperty(Properties.PROPERTY_API_KEY).setIsRequired(true));
+        new ConfigurableProperty(Properties.PROPERTY_API_KEY).setIsRequired(true),
+        new ConfigurableProperty(Properties.PROPERTY_API_BASE_URL),
+        new ConfigurableProperty(Properties.PROPERTY_MAX_CONNECTIONS),
+        new ConfigurableProperty(Properties.PROPERTY_MAX_CONNECTIONS_PER_ROUTE),
+        new ConfigurableProperty(Properties.PROPERTY_KEEP_ALIVE),
+        new ConfigurableProperty(Properties.PROPERTY_IDLE_TIMEOUT),
+        new ConfigurableProperty(Properties.PROPERTY_HTTP_TRANSPORT),
+        new ConfigurableProperty(Properties.PROPERTY_RATE_LIMIT),
+        new ConfigurableProperty(Properties.PROPERTY_SEARCH_RATE_LIMIT),
+        new ConfigurableProperty(Properties.PROPERTY_MAX_RETRIES),
+        new ConfigurableProperty(Properties.PROPERTY_MAX_RATE_LIMIT_WAIT),
+        new ConfigurableProperty(Properties.PROPERTY_FETCH_ALL_MAX_RECORDS),
+        new ConfigurableProperty(Properties.PROPERTY_COUNT_CACHE_TTL),
+        new ConfigurableProperty(Properties.PROPERTY_BATCH_WINDOW),
+        new ConfigurableProperty(Properties.PROPERTY_BATCH_SIZE),
+        new ConfigurableProperty(Properties.PROPERTY_RETRIEVE_CACHE_TTLS),
+        new ConfigurableProperty(Properties.PROPERTY_RETRIEVE_CACHE_SIZE),
+        new ConfigurableProperty(Properties.PROPERTY_MIRROR_STRUCTURES),
+        new ConfigurableProperty(Properties.PROPERTY_MIRROR_PROPERTIES),
+        new ConfigurableProperty(Properties.PROPERTY_MIRROR_INDEXES),
+        new ConfigurableProperty(Properties.PROPERTY_MIRROR_DIRECTORY),
+        new ConfigurableProperty(Properties.PROPERTY_MIRROR_SYNC_INTERVAL),
+        new ConfigurableProperty(Properties.PROPERTY_MIRROR_MAX_STALENESS),
+        new ConfigurableProperty(Properties.PROPERTY_WEBHOOK_PORT),
+        new ConfigurableProperty(Properties.PROPERTY_WEBHOOK_BIND_ADDRESS),
+        new ConfigurableProperty(Properties.PROPERTY_WEBHOOK_PATH),
+        new ConfigurableProperty(Properties.PROPERTY_WEBHOOK_URL),
+        new ConfigurableProperty(Properties.PROPERTY_WEBHOOK_CLIENT_SECRET)
+            .setIsSensitive(true),
+        new ConfigurableProperty(Properties.PROPERTY_WEBHOOK_BATCH_WINDOW),
+        new ConfigurableProperty(Properties.PROPERTY_WEBHOOK_MAX_BODY_SIZE),
+        new ConfigurableProperty(Properties.PROPERTY_CONNECT_TIMEOUT),
+        new ConfigurableProperty(Properties.PROPERTY_CONNECTION_REQUEST_TIMEOUT),
+        new ConfigurableProperty(Properties.PROPERTY_SOCKET_TIMEOUT),
+        new ConfigurableProperty(Properties.PROPERTY_OPERATION_TIMEOUTS),
+        new ConfigurableProperty(Properties.PROPERTY_HEDGE_PERCENTILE),
+        new ConfigurableProperty(Properties.PROPERTY_HEDGE_BUDGET),
+        new ConfigurableProperty(Properties.PROPERTY_CIRCUIT_FAILURE_RATE),
+        new ConfigurableProperty(Properties.PROPERTY_CIRCUIT_SLOW_CALL_RATE),
+        new ConfigurableProperty(Properties.PROPERTY_CIRCUIT_SLOW_CALL_DURATION),
+        new ConfigurableProperty(Properties.PROPERTY_CIRCUIT_OPEN_DURATION),
+        new ConfigurableProperty(Properties.PROPERTY_STALE_FALLBACK_MAX_AGE),
+        new ConfigurableProperty(Properties.PROPERTY_STALE_FALLBACK_CACHE_SIZE),
+        new ConfigurableProperty(Properties.PROPERTY_BULKHEAD_MAX_CONCURRENT),
+        new ConfigurableProperty(Properties.PROPERTY_BULKHEAD_MAX_WAIT),
+        new ConfigurableProperty(Properties.PROPERTY_OBJECT_TYPES),
+        new ConfigurableProperty(Properties.PROPERTY_DISCOVER_CUSTOM_OBJECTS),
+        new ConfigurableProperty(Properties.PROPERTY_PAGE_TOKEN_TTL),
+        new ConfigurableProperty(Properties.PROPERTY_MAX_SORT_RECORDS),
+        new ConfigurableProperty(Properties.PROPERTY_UNIQUE_PROPERTIES),
+        new ConfigurableProperty(Properties.PROPERTY_SCAN_PARALLELISM),
+        new ConfigurableProperty(Properties.PROPERTY_SCAN_MAX_RECORDS));
 
     // Local variables to store the property values in
     private final HubspotQualificationParser parser;
     private HubspotApiHelper apiHelper;
+    // The structures of this instance.  Replaced as a whole by initialize so
+    // requests always route through a complete registry.
+    private volatile HubspotStructureRegistry structures =
+        new HubspotStructureRegistry(MAPPINGS.values());
+    // Responses of retrieve by id requests.  Keyed by structure, url and the
+    // requested properties.
+    private HubspotCache<String, JSONObject> retrieveCache;
+    private Map<String, Long> retrieveCacheTtls = new HashMap<>();
+    
+    private static final long DEFAULT_RETRIEVE_CACHE_SIZE_KB = 10240;
+    
+    // Coalesces retrieves by id into batch reads.  Null when disabled.
+    private HubspotBatchReader batchReader;
+    
+    // Search totals keyed by search path and normalized body.
+    private final HubspotCache<String, Integer> countCache =
+        new HubspotCache<>(10000, (key, value) -> 1);
+    private long countCacheTtl;
+    
+    // Local replica of the mirrored structures.  Null when disabled.
+    private HubspotMirror mirror;
+    
+    // Applies HubSpot webhook events to the caches and mirror.  Null when 
+    // disabled.
+    private HubspotWebhookReceiver webhookReceiver;
+    
+    // Bounds the concurrent requests per structure.  Null when unbounded.
+    private HubspotBulkhead bulkhead;
+    
+    // The last results of searches, served while the circuit is open.  Keyed
+    // by the bridge request.
+    private HubspotCache<String, StaleRecordList> lastGoodSearches;
+    private long staleFallbackMaxAge;
+    private static final long DEFAULT_STALE_FALLBACK_MAX_AGE = 3600;
+    private static final long DEFAULT_STALE_FALLBACK_CACHE_SIZE_KB = 10240;
+    
+    // Metadata of a search result served from the last good results.
+    public static final String METADATA_STALE = "stale";
+    public static final String METADATA_STALE_SINCE = "staleSince";
+    
+    // Latency and counters per structure and operation, published over JMX.
+    private final HubspotMetrics metrics = new HubspotMetrics();
+    
+    // Paging tokens by the offset they start at, so an offset page resumes 
+    // from the nearest known token.  Null when disabled.
+    private HubspotPageIndex pageIndex;
+    private static final long DEFAULT_PAGE_TOKEN_TTL = 300;
+    
+    // Fetches pages in the background while the current page is built.
+    private ExecutorService pageExecutor;
+    private int fetchAllMaxRecords = DEFAULT_FETCH_ALL_MAX_RECORDS;
+    // Most records read to sort a search that HubSpot can not sort.
+    private int maxSortRecords = DEFAULT_MAX_SORT_RECORDS;
+    private static final int DEFAULT_MAX_SORT_RECORDS = 10000;
+    // HubSpot property types by name by object type.
+    private final HubspotCache<String, Map<String, String>> propertyTypes =
+        new HubspotCache<>(1000, (key, value) -> 1);
+    private static final String PROPERTIES_PATH = "/crm/v3/properties/";
+    // Property types that HubSpot and the adapter sort the same way.
+    private static final Set<String> ORDERED_PROPERTY_TYPES = 
+        Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList("number", "date", "datetime")));
+    
+    // Properties by structure that a retrieve looks up with idProperty 
+    // instead of a search.
+    private Map<String, Set<String>> uniqueProperties = new HashMap<>();
+    private static final String DEFAULT_UNIQUE_PROPERTIES = "Contacts=email";
+    
+    // Ranges searched at the same time, and the most records, of a scan.
+    private int scanParallelism = HubspotPartitionedScan.DEFAULT_PARALLELISM;
+    private long scanMaxRecords = DEFAULT_SCAN_MAX_RECORDS;
+    private static final long DEFAULT_SCAN_MAX_RECORDS = 1000000;
+    // Largest page HubSpot returns.
+    private static final int MAX_PAGE_SIZE = 100;
+    // Parameters of a list that a search can take, so an ordered list with
+    // only these is searched.  Others, ie. archived, only apply to lists.
+    private static final Set<String> SEARCHABLE_LIST_PARAMETERS = 
+        Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList("properties", "limit", "after")));
+    private static final int DEFAULT_FETCH_ALL_MAX_RECORDS = 10000;
 
-    private static final String API_PATH = "https://api.hubapi.com";
+    private static final String DEFAULT_API_BASE_URL = "https://api.hubapi.com";
+    
+    // Values of the HTTP Transport property.
+    public static final String TRANSPORT_CLASSIC = "classic";
+    public static final String TRANSPORT_ASYNC = "async";
+    
+    // Plans only depend on the request templates so they are kept for the 
+    // life of the adapter, bounded by count.
+    private final HubspotCache<String, HubspotRequestPlan> planCache =
+        new HubspotCache<>(1000, (key, value) -> 1);
+    private static final long PLAN_CACHE_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+    
+    // Key of the parent object on the records of a nested structure.
+    private static final String NESTED_PARENT_KEY = "parent";
+    
+    private static final Pattern STRUCTURE_SEPARATOR = Pattern.compile("\\s*>\\s*");
 
     /*---------------------------------------------------------------------------------------------
      * SETUP METHODS
@@ -109,7 +357,407 @@ public class HubspotAdapter implements BridgeAdapter {
         // Initializing the variables with the property values that were passed
         // when creating the bridge so that they are easier to use
         String apiKey = properties.getValue(Properties.PROPERTY_API_KEY);
-        apiHelper = new HubspotApiHelper(API_PATH, apiKey);
+        // The base url can point at a proxy or a local stand-in server.
+        String apiBaseUrl = StringUtils.removeEnd(StringUtils.defaultIfBlank(
+            properties.getValue(Properties.PROPERTY_API_BASE_URL),
+            DEFAULT_API_BASE_URL).trim(), "/");
+        
+        // Release the connection pool and threads of a previous 
+        // initialization.
+        if (apiHelper != null) {
+            apiHelper.close();
+        }
+        if (pageExecutor != null) {
+            pageExecutor.shutdown();
+        }
+        if (batchReader != null) {
+            batchReader.close();
+            batchReader = null;
+        }
+        if (mirror != null) {
+            mirror.close();
+            mirror = null;
+        }
+        if (webhookReceiver != null) {
+            webhookReceiver.close();
+            webhookReceiver = null;
+        }
+        // The operation MBeans are registered again as they are used.
+        metrics.close();
+        apiHelper = new HubspotApiHelper(apiBaseUrl, apiKey, buildTransport());
+        metrics.registerPool(apiHelper);
+        apiHelper.setRateLimiter(new HubspotRateLimiter(
+            getIntegerProperty(Properties.PROPERTY_RATE_LIMIT,
+                HubspotRateLimiter.DEFAULT_BURST_LIMIT),
+            HubspotRateLimiter.DEFAULT_BURST_INTERVAL_MILLIS,
+            getIntegerProperty(Properties.PROPERTY_SEARCH_RATE_LIMIT,
+                HubspotRateLimiter.DEFAULT_SEARCH_LIMIT),
+            getIntegerProperty(Properties.PROPERTY_MAX_RETRIES,
+                HubspotRateLimiter.DEFAULT_MAX_RETRIES),
+            getLongProperty(Properties.PROPERTY_MAX_RATE_LIMIT_WAIT,
+                HubspotRateLimiter.DEFAULT_MAX_WAIT_MILLIS)));
+        apiHelper.setTimeouts(new HubspotTimeouts(
+            getIntegerProperty(Properties.PROPERTY_CONNECT_TIMEOUT,
+                HubspotTimeouts.DEFAULT_CONNECT_TIMEOUT_MILLIS),
+            getIntegerProperty(Properties.PROPERTY_CONNECTION_REQUEST_TIMEOUT,
+                HubspotTimeouts.DEFAULT_CONNECTION_REQUEST_TIMEOUT_MILLIS),
+            getIntegerProperty(Properties.PROPERTY_SOCKET_TIMEOUT,
+                HubspotTimeouts.DEFAULT_SOCKET_TIMEOUT_MILLIS),
+            getOperationTimeouts(Properties.PROPERTY_OPERATION_TIMEOUTS)));
+        // GETs are only hedged within a budget.
+        double hedgeBudget = getDoubleProperty(Properties.PROPERTY_HEDGE_BUDGET, 0);
+        if (hedgeBudget > 0) {
+            apiHelper.setHedgePolicy(new HubspotHedgePolicy(
+                getDoubleProperty(Properties.PROPERTY_HEDGE_PERCENTILE,
+                    HubspotHedgePolicy.DEFAULT_PERCENTILE), hedgeBudget));
+        }
+        apiHelper.setCircuitBreaker(buildCircuitBreaker());
+        staleFallbackMaxAge = getLongProperty(
+            Properties.PROPERTY_STALE_FALLBACK_MAX_AGE, 
+            DEFAULT_STALE_FALLBACK_MAX_AGE) * 1000;
+        // Entries are weighed by their approximate size in bytes, so a result
+        // too large for the cache is not kept.
+        lastGoodSearches = new HubspotCache<>(
+            getLongProperty(Properties.PROPERTY_STALE_FALLBACK_CACHE_SIZE,
+                DEFAULT_STALE_FALLBACK_CACHE_SIZE_KB) * 1024,
+            (key, value) -> 2L * (key.length() + value.getLength()));
+        int maxConcurrent = getIntegerProperty(
+            Properties.PROPERTY_BULKHEAD_MAX_CONCURRENT, 0);
+        bulkhead = maxConcurrent > 0 
+            ? new HubspotBulkhead(maxConcurrent, getLongProperty(
+                Properties.PROPERTY_BULKHEAD_MAX_WAIT, 0))
+            : null;
+        
+        structures = buildStructures();
+        // Plans hold the mapping of their structure.
+        planCache.invalidateAll();
+        propertyTypes.invalidateAll();
+        
+        fetchAllMaxRecords = getIntegerProperty(
+            Properties.PROPERTY_FETCH_ALL_MAX_RECORDS, DEFAULT_FETCH_ALL_MAX_RECORDS);
+        uniqueProperties = getUniqueProperties(
+            Properties.PROPERTY_UNIQUE_PROPERTIES);
+        scanParallelism = getIntegerProperty(
+            Properties.PROPERTY_SCAN_PARALLELISM, 
+            HubspotPartitionedScan.DEFAULT_PARALLELISM);
+        scanMaxRecords = getLongProperty(
+            Properties.PROPERTY_SCAN_MAX_RECORDS, DEFAULT_SCAN_MAX_RECORDS);
+        maxSortRecords = getIntegerProperty(
+            Properties.PROPERTY_MAX_SORT_RECORDS, DEFAULT_MAX_SORT_RECORDS);
+        long pageTokenTtl = getLongProperty(Properties.PROPERTY_PAGE_TOKEN_TTL,
+            DEFAULT_PAGE_TOKEN_TTL) * 1000;
+        pageIndex = pageTokenTtl > 0 
+            ? new HubspotPageIndex(1000, pageTokenTtl) : null;
+        pageExecutor = Executors.newCachedThreadPool(daemonThreadFactory(
+            "hubspot-page-"));
+        
+        long batchWindow = getLongProperty(Properties.PROPERTY_BATCH_WINDOW, 0);
+        if (batchWindow > 0) {
+            batchReader = new HubspotBatchReader(apiHelper, batchWindow,
+                getIntegerProperty(Properties.PROPERTY_BATCH_SIZE,
+                    HubspotBatchReader.MAX_BATCH_SIZE));
+        }
+        
+        countCacheTtl = getLongProperty(Properties.PROPERTY_COUNT_CACHE_TTL, 0)
+            * 1000;
+        countCache.invalidateAll();
+        
+        retrieveCacheTtls = getStructureTtls(
+            Properties.PROPERTY_RETRIEVE_CACHE_TTLS);
+        // Entries are weighed by their approximate size in bytes.
+        retrieveCache = new HubspotCache<>(
+            getLongProperty(Properties.PROPERTY_RETRIEVE_CACHE_SIZE,
+                DEFAULT_RETRIEVE_CACHE_SIZE_KB) * 1024,
+            (key, value) -> 2L * (key.length() + value.toJSONString().length()));
+        
+        mirror = buildMirror();
+        webhookReceiver = buildWebhookReceiver();
+    }
+
+    /**
+     * Build the structures from the built in structures, the custom objects
+     * of the account if Discover Custom Objects is true and the Object Types
+     * property, in that order, so a configured structure replaces a built in
+     * or discovered structure of the same name.
+     * 
+     * @return 
+     * @throws BridgeError 
+     */
+    private HubspotStructureRegistry buildStructures() throws BridgeError {
+        List<AdapterMapping> mappings = new ArrayList<>(MAPPINGS.values());
+        if (Boolean.parseBoolean(StringUtils.trim(properties.getValue(
+            Properties.PROPERTY_DISCOVER_CUSTOM_OBJECTS)))) {
+            
+            // The built in and configured structures still work when the 
+            // schemas can not be read, ie. the key lacks the schemas scope.
+            try {
+                mappings.addAll(HubspotStructureRegistry
+                    .discoverCustomObjects(apiHelper));
+            } catch (BridgeError e) {
+                LOGGER.warn("Unable to discover the custom objects.", e);
+            }
+        }
+        mappings.addAll(HubspotStructureRegistry.parseObjectTypes(
+            Properties.PROPERTY_OBJECT_TYPES, 
+            properties.getValue(Properties.PROPERTY_OBJECT_TYPES)));
+        HubspotStructureRegistry registry = new HubspotStructureRegistry(mappings);
+        LOGGER.info("Structures: {}", registry.getMappings().keySet());
+        return registry;
+    }
+
+    /**
+     * Start the webhook receiver if the Webhook Port property is set.
+     */
+    private HubspotWebhookReceiver buildWebhookReceiver() throws BridgeError {
+        int port = getIntegerProperty(Properties.PROPERTY_WEBHOOK_PORT, -1);
+        if (port < 0) {
+            return null;
+        }
+        String clientSecret = properties.getValue(
+            Properties.PROPERTY_WEBHOOK_CLIENT_SECRET);
+        if (StringUtils.isBlank(clientSecret)) {
+            throw new BridgeError(String.format("The '%s' property is required"
+                + " when the '%s' property is set.", 
+                Properties.PROPERTY_WEBHOOK_CLIENT_SECRET,
+                Properties.PROPERTY_WEBHOOK_PORT));
+        }
+        String url = properties.getValue(Properties.PROPERTY_WEBHOOK_URL);
+        String bindAddress = properties.getValue(
+            Properties.PROPERTY_WEBHOOK_BIND_ADDRESS);
+        try {
+            return new HubspotWebhookReceiver(StringUtils.isBlank(bindAddress)
+                    ? null : bindAddress.trim(), port, StringUtils.defaultIfBlank(
+                    properties.getValue(Properties.PROPERTY_WEBHOOK_PATH),
+                    HubspotWebhookReceiver.DEFAULT_PATH).trim(),
+                clientSecret.trim(), StringUtils.isBlank(url) ? null : url.trim(),
+                getLongProperty(Properties.PROPERTY_WEBHOOK_BATCH_WINDOW,
+                    HubspotWebhookReceiver.DEFAULT_BATCH_WINDOW_MILLIS),
+                getIntegerProperty(Properties.PROPERTY_WEBHOOK_MAX_BODY_SIZE,
+                    HubspotWebhookReceiver.DEFAULT_MAX_BODY_BYTES),
+                this::applyWebhookEvents).start();
+        } catch (IOException e) {
+            throw new BridgeError(String.format("Unable to start the webhook"
+                + " receiver on port %d.", port), e);
+        }
+    }
+
+    /**
+     * Build the mirror of the Mirror Structures property, null if there are 
+     * none.
+     */
+    private HubspotMirror buildMirror() throws BridgeError {
+        List<String> objectTypes = new ArrayList<>();
+        for (String structure : getListProperty(
+            Properties.PROPERTY_MIRROR_STRUCTURES)) {
+            
+            AdapterMapping mapping = getMapping(structure);
+            if (mapping.getObjectType() == null) {
+                throw new BridgeError(String.format("The '%s' property can not"
+                    + " include '%s'.", Properties.PROPERTY_MIRROR_STRUCTURES,
+                    structure));
+            }
+            objectTypes.add(mapping.getObjectType());
+        }
+        if (objectTypes.isEmpty()) {
+            return null;
+        }
+        
+        List<String> indexes = getListProperty(Properties.PROPERTY_MIRROR_INDEXES);
+        String directory = properties.getValue(Properties.PROPERTY_MIRROR_DIRECTORY);
+        return new HubspotMirror(apiHelper, objectTypes, 
+            getListProperty(Properties.PROPERTY_MIRROR_PROPERTIES),
+            indexes.isEmpty() ? HubspotMirror.DEFAULT_INDEXES : indexes,
+            StringUtils.isBlank(directory) ? null : Paths.get(directory.trim()),
+            getLongProperty(Properties.PROPERTY_MIRROR_SYNC_INTERVAL,
+                HubspotMirror.DEFAULT_SYNC_INTERVAL_MILLIS / 1000) * 1000,
+            getLongProperty(Properties.PROPERTY_MIRROR_MAX_STALENESS,
+                HubspotMirror.DEFAULT_MAX_STALENESS_MILLIS / 1000) * 1000)
+            .start();
+    }
+
+    /**
+     * Build the transport selected by the HTTP Transport property.
+     */
+    private HubspotTransport buildTransport() throws BridgeError {
+        int maxConnections = getIntegerProperty(
+            Properties.PROPERTY_MAX_CONNECTIONS,
+            HubspotApiHelper.DEFAULT_MAX_CONNECTIONS);
+        int maxConnectionsPerRoute = getIntegerProperty(
+            Properties.PROPERTY_MAX_CONNECTIONS_PER_ROUTE,
+            HubspotApiHelper.DEFAULT_MAX_CONNECTIONS_PER_ROUTE);
+        long keepAlive = getLongProperty(Properties.PROPERTY_KEEP_ALIVE,
+            HubspotApiHelper.DEFAULT_KEEP_ALIVE_MILLIS);
+        long idleTimeout = getLongProperty(Properties.PROPERTY_IDLE_TIMEOUT,
+            HubspotApiHelper.DEFAULT_IDLE_TIMEOUT_MILLIS);
+        
+        String transport = StringUtils.defaultIfBlank(
+            properties.getValue(Properties.PROPERTY_HTTP_TRANSPORT),
+            TRANSPORT_CLASSIC).trim();
+        if (TRANSPORT_CLASSIC.equalsIgnoreCase(transport)) {
+            return new HubspotClassicTransport(maxConnections,
+                maxConnectionsPerRoute, keepAlive, idleTimeout);
+        } else if (TRANSPORT_ASYNC.equalsIgnoreCase(transport)) {
+            return new HubspotAsyncTransport(maxConnections,
+                maxConnectionsPerRoute, keepAlive, idleTimeout);
+        }
+        throw new BridgeError(String.format("The '%s' property must be '%s' or"
+            + " '%s' but was '%s'.", Properties.PROPERTY_HTTP_TRANSPORT,
+            TRANSPORT_CLASSIC, TRANSPORT_ASYNC, transport));
+    }
+
+    /**
+     * Build the circuit breaker, null if neither threshold is set.
+     */
+    private HubspotCircuitBreaker buildCircuitBreaker() throws BridgeError {
+        double failureRate = getDoubleProperty(
+            Properties.PROPERTY_CIRCUIT_FAILURE_RATE, 0);
+        double slowCallRate = getDoubleProperty(
+            Properties.PROPERTY_CIRCUIT_SLOW_CALL_RATE, 0);
+        if (failureRate <= 0 && slowCallRate <= 0) {
+            return null;
+        }
+        return new HubspotCircuitBreaker(failureRate, slowCallRate,
+            getLongProperty(Properties.PROPERTY_CIRCUIT_SLOW_CALL_DURATION,
+                HubspotCircuitBreaker.DEFAULT_SLOW_CALL_MILLIS),
+            getLongProperty(Properties.PROPERTY_CIRCUIT_OPEN_DURATION,
+                HubspotCircuitBreaker.DEFAULT_OPEN_MILLIS / 1000) * 1000);
+    }
+
+    /**
+     * Replace the api helper created by initialize, ie. with a helper that
+     * serves recorded responses.
+     * 
+     * @param apiHelper 
+     */
+    void setApiHelper(HubspotApiHelper apiHelper) {
+        this.apiHelper = apiHelper;
+    }
+    
+    /**
+     * The metrics of the adapter, ie. for a test or benchmark that does not 
+     * use JMX.
+     * 
+     * @return 
+     */
+    HubspotMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * The mirror of the adapter, null if no structures are mirrored.
+     * 
+     * @return 
+     */
+    HubspotMirror getMirror() {
+        return mirror;
+    }
+    
+    /**
+     * The webhook receiver of the adapter, null if it is not enabled.
+     * 
+     * @return 
+     */
+    HubspotWebhookReceiver getWebhookReceiver() {
+        return webhookReceiver;
+    }
+    
+    /**
+     * Bring the caches and mirror up to date with a batch of webhook events.
+     * A property change patches the cached objects that have the property, 
+     * every other change evicts the cached objects.  Counts of an object type
+     * are evicted on any change since the change may move objects in or out 
+     * of a search.
+     * 
+     * @param events 
+     */
+    @SuppressWarnings("unchecked")
+    void applyWebhookEvents(List<HubspotWebhookReceiver.Event> events) {
+        Map<String, Set<String>> changedIds = new HashMap<>();
+        Map<String, Set<String>> deletedIds = new HashMap<>();
+        
+        for (HubspotWebhookReceiver.Event event : events) {
+            String objectType = event.getObjectType();
+            String prefix = String.format("/crm/v3/objects/%s/", objectType);
+            changedIds.computeIfAbsent(objectType, key -> new LinkedHashSet<>());
+            deletedIds.computeIfAbsent(objectType, key -> new LinkedHashSet<>());
+            
+            if (event.getType() == HubspotWebhookReceiver.EventType.PROPERTY_CHANGE) {
+                retrieveCache.updateAll(
+                    key -> isCachedObject(key, prefix, event.getObjectId()),
+                    (key, object) -> {
+                        Object objectProperties = object.get("properties");
+                        if (!(objectProperties instanceof JSONObject) 
+                            || !((JSONObject)objectProperties)
+                                .containsKey(event.getPropertyName())) {
+                            return null;
+                        }
+                        JSONObject patched = new JSONObject(object);
+                        JSONObject patchedProperties = 
+                            new JSONObject((JSONObject)objectProperties);
+                        patchedProperties.put(event.getPropertyName(), 
+                            event.getPropertyValue());
+                        patched.put("properties", patchedProperties);
+                        return patched;
+                    });
+            } else {
+                retrieveCache.invalidateAll(
+                    key -> isCachedObject(key, prefix, event.getObjectId()));
+                event.getMergedObjectIds().forEach(id -> retrieveCache.invalidateAll(
+                    key -> isCachedObject(key, prefix, id)));
+            }
+            // Lookups by a unique property are keyed by its value, which the
+            // event may have changed, so they are removed rather than patched.
+            retrieveCache.invalidateAll((key, object) -> 
+                isCachedLookup(key, prefix, object, event.getObjectId()) 
+                || event.getMergedObjectIds().stream().anyMatch(id -> 
+                    isCachedLookup(key, prefix, object, id)));
+            countCache.invalidateAll(key -> key.startsWith(prefix));
+            
+            if (event.getType() == HubspotWebhookReceiver.EventType.DELETION) {
+                deletedIds.get(objectType).add(event.getObjectId());
+                changedIds.get(objectType).remove(event.getObjectId());
+            } else {
+                changedIds.get(objectType).add(event.getObjectId());
+                deletedIds.get(objectType).addAll(event.getMergedObjectIds());
+            }
+        }
+        
+        if (mirror != null) {
+            for (String objectType : changedIds.keySet()) {
+                try {
+                    mirror.apply(objectType, changedIds.get(objectType),
+                        deletedIds.get(objectType));
+                } catch (BridgeError e) {
+                    LOGGER.warn("Unable to apply the webhook events to the {}"
+                        + " mirror", objectType, e);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Retrieve cache keys are structure|url|properties.
+     */
+    private static boolean isCachedObject(String key, String prefix, String id) {
+        String[] segments = key.split("\\|", 3);
+        if (segments.length < 2) {
+            return false;
+        }
+        String url = segments[1];
+        return url.equals(prefix + id) || url.startsWith(prefix + id + "?");
+    }
+    
+    /**
+     * @return true if the key is a lookup by a unique property, ie. 
+     *   contacts/jane@acme.com?idProperty=email, of the object with the id
+     */
+    private static boolean isCachedLookup(String key, String prefix, 
+        JSONObject object, String id) {
+        
+        String[] segments = key.split("\\|", 3);
+        return segments.length >= 2 && segments[1].startsWith(prefix)
+            && segments[1].contains("idProperty=") 
+            && id.equals(String.valueOf(object.get("id")));
     }
 
     @Override
@@ -141,6 +789,75 @@ public class HubspotAdapter implements BridgeAdapter {
 
     @Override
     public Count count(BridgeRequest request) throws BridgeError {
+        return metrics.record(getMetricsStructure(request), "count",
+            () -> isolate(request, () -> countRecords(request)));
+    }
+
+    @Override
+    public Record retrieve(BridgeRequest request) throws BridgeError {
+        return metrics.record(getMetricsStructure(request), "retrieve",
+            () -> isolate(request, () -> retrieveRecord(request)));
+    }
+
+    @Override
+    public RecordList search(BridgeRequest request) throws BridgeError {
+        return metrics.record(getMetricsStructure(request), "search",
+            () -> searchWithFallback(request));
+    }
+    
+    /**
+     * Run the request in the bulkhead of its structure.
+     */
+    private <T> T isolate(BridgeRequest request, HubspotCache.Loader<T> loader) 
+        throws BridgeError {
+        
+        HubspotBulkhead structureBulkhead = bulkhead;
+        return structureBulkhead == null ? loader.load()
+            : structureBulkhead.execute(getMetricsStructure(request), loader);
+    }
+    
+    /**
+     * Search, keeping the result as the last good result of the request.  If
+     * the search fails while the circuit is open the last good result is
+     * returned instead, flagged with the stale and staleSince metadata.
+     */
+    private RecordList searchWithFallback(BridgeRequest request) 
+        throws BridgeError {
+        
+        HubspotCircuitBreaker breaker = apiHelper.getCircuitBreaker();
+        if (breaker == null || staleFallbackMaxAge <= 0) {
+            return isolate(request, () -> searchRecords(request));
+        }
+        
+        String key = getFallbackKey(request);
+        try {
+            RecordList records = isolate(request, () -> searchRecords(request));
+            lastGoodSearches.put(key, new StaleRecordList(records), 
+                staleFallbackMaxAge);
+            return records;
+        } catch (BridgeError e) {
+            StaleRecordList stale = breaker.isOpen() 
+                ? lastGoodSearches.get(key) : null;
+            if (stale == null) {
+                throw e;
+            }
+            LOGGER.warn("Returning the last good result of a {} search from {}"
+                + " because the circuit is open: {}", request.getStructure(),
+                stale.getSince(), e.getMessage());
+            return stale.toRecordList();
+        }
+    }
+    
+    private static String getFallbackKey(BridgeRequest request) {
+        return String.join("|", String.valueOf(request.getStructure()),
+            String.valueOf(request.getFields()), String.valueOf(request.getQuery()),
+            String.valueOf(request.getParameters() == null ? null 
+                : new TreeMap<>(request.getParameters())),
+            String.valueOf(request.getMetadata() == null ? null 
+                : new TreeMap<>(request.getMetadata())));
+    }
+
+    private Count countRecords(BridgeRequest request) throws BridgeError {
         // Log the access
         LOGGER.trace("Counting records");
         LOGGER.trace("  Structure: " + request.getStructure());
@@ -148,17 +865,64 @@ public class HubspotAdapter implements BridgeAdapter {
             LOGGER.trace("  Query: " + request.getQuery());
         }
 
-        // parse Structure
-        List<String> structureList = Arrays.asList(request.getStructure().trim()
-            .split("\\s*>\\s*"));
-        // get Structure model
-        AdapterMapping mapping = getMapping(structureList.get(0));
+        // Get the cached plan for the structure, qualification and fields
+        HubspotRequestPlan plan = getRequestPlan(request);
+        List<String> structureList = plan.getStructureList();
+        AdapterMapping mapping = plan.getMapping();
         
-        // Convet the query string into a map of query parameters to values.       
-        Map<String, String> parameters = getParameters(request.getQuery(), mapping);
         // Replace <%=parameter["..."]%> with value.
-        for (Map.Entry<String, String> entry : parameters.entrySet()) {
-            entry.setValue(parser.parse(entry.getValue(),request.getParameters()));
+        Map<String, String> parameters = plan.getParameters(parser,
+            request.getParameters());
+        pushDownFilters(mapping, parameters, false);
+        
+        // The count of a nested structure is the number of associations.
+        if (structureList.size() > 1) {
+            AdapterMapping childMapping = getChildMapping(plan);
+            List<JSONObject> parents = getParents(plan, parameters,
+                request.getFields());
+            Map<String, List<String>> associations = 
+                getAssociationReader().readAssociations(mapping.getObjectType(),
+                    childMapping.getObjectType(), getIds(parents));
+            return new Count(associations.values().stream()
+                .mapToInt(List::size).sum());
+        }
+        
+        // Counting a list of objects uses the search endpoint, which returns
+        // the total number of matches.  Only one result is requested since
+        // the results themselves are not used.
+        if (!mapping.getStructure().equals("Adhoc") 
+            && !parameters.containsKey("id")) {
+            
+            JSONObject body = parameters.containsKey("body") 
+                ? plan.getBody(parameters) : new JSONObject();
+            body.remove("after");
+            body.remove("sorts");
+            body.put("limit", 1);
+            // The result is not used so only its id is returned.
+            JSONArray propertyArray = new JSONArray();
+            propertyArray.add("hs_object_id");
+            body.put("properties", propertyArray);
+            parameters.put("body", body.toJSONString());
+            
+            // Path builder functions may mutate the parameters Map;
+            String path = mapping.getPathbuilder().apply(structureList, parameters);
+            String cacheKey = String.join("|", path, toCanonicalJson(body));
+            
+            Integer mirrored = mirror == null ? null 
+                : mirror.count(mapping.getObjectType(), body);
+            if (mirrored != null) {
+                return new Count(mirrored);
+            }
+            
+            return new Count(countCache.get(cacheKey, countCacheTtl, () -> {
+                JSONObject responseObject = apiHelper.executeRequest(path, body);
+                Object total = responseObject.get("total");
+                if (!(total instanceof Number)) {
+                    throw new BridgeError("The Count result was unexpected.  "
+                        + "Please check query and rerun.");
+                }
+                return ((Number)total).intValue();
+            }));
         }
         
         // Path builder functions may mutate the parameters Map;
@@ -166,32 +930,37 @@ public class HubspotAdapter implements BridgeAdapter {
         
         Map<String, NameValuePair> parameterMap = buildNameValuePairMap(parameters);
         
+        // Accessor values is either passed as a parameter in the qualification
+        // mapping for Adhoc or on the mapping for all other structures.
+        String accessor = getAccessor(mapping, parameters);
+        
         // Retrieve the objects based on the structure from the source
         JSONObject responseObject = apiHelper.executeRequest(getUrl(path, parameterMap));
         
         // Get the number of elements in the returned array
-        Long tempCount = (Long)responseObject.get("total_entries");
+        Object tempCount = responseObject.containsKey("total") 
+            ? responseObject.get("total") : responseObject.get("total_entries");
         Integer count = 0;
         // Single results will not have a total_entries property
-        if (tempCount == null) {
-            Long singleResult = (Long)responseObject.get("id");
-            if (singleResult == null) {
-                throw new BridgeError("The Count result was unexpected.  Please"
-                        + "check query and rerun.");
-            } else {
-                // If object has id property assume a single result for found
-                count = 1;
-            }
+        if (tempCount instanceof Number) {
+            count = ((Number)tempCount).intValue();
+        } else if (responseObject.get(accessor) instanceof JSONArray
+            && getNextPage(responseObject).isEmpty()) {
+            // A list that fits on one page is counted directly.
+            count = ((JSONArray)responseObject.get(accessor)).size();
+        } else if (responseObject.get("id") != null) {
+            // If object has id property assume a single result for found
+            count = 1;
         } else {
-            count = (int) tempCount.intValue();
+            throw new BridgeError("The Count result was unexpected.  Please"
+                    + "check query and rerun.");
         }
 
         // Create and return a count object that contains the count
         return new Count(count);
     }
 
-    @Override
-    public Record retrieve(BridgeRequest request) throws BridgeError {
+    private Record retrieveRecord(BridgeRequest request) throws BridgeError {
         // Log the access
         LOGGER.trace("Retrieving Record");
         LOGGER.trace("  Structure: " + request.getStructure());
@@ -202,30 +971,102 @@ public class HubspotAdapter implements BridgeAdapter {
             LOGGER.trace("  Fields: " + request.getFieldString());
         }
         
-        // parse Structure
-        List<String> structureList = Arrays.asList(request.getStructure().trim()
-            .split("\\s*>\\s*"));
-        // get Structure model
-        AdapterMapping mapping = getMapping(structureList.get(0));
+        // Get the cached plan for the structure, qualification and fields
+        HubspotRequestPlan plan = getRequestPlan(request);
+        List<String> structureList = plan.getStructureList();
+        AdapterMapping mapping = plan.getMapping();
         
-        // Convet the query string into a map of query parameters to values.       
-        Map<String, String> parameters = getParameters(request.getQuery(), mapping);
         // Replace <%=parameter["..."]%> with value.
-        for (Map.Entry<String, String> entry : parameters.entrySet()) {
-            entry.setValue(parser.parse(entry.getValue(),request.getParameters()));
+        Map<String, String> parameters = plan.getParameters(parser,
+            request.getParameters());
+        pushDownFilters(mapping, parameters, structureList.size() == 1);
+        
+        if (structureList.size() > 1) {
+            return buildSingleRecord(request, 
+                getNestedObjects(plan, parameters, request.getFields()));
+        }
+        
+        // Only lookups by id are cached.  Check before the path builder 
+        // removes the id from the parameters.
+        String id = parameters.get("id");
+        long cacheTtl = id != null
+            ? retrieveCacheTtls.getOrDefault(mapping.getStructure(), 0L) * 1000
+            : 0;
+        
+        // A retrieve qualified by filters is a search for at most two objects,
+        // enough to tell that more than one matches.
+        boolean isSearch = parameters.containsKey("body");
+        JSONObject body = isSearch ? plan.getBody(parameters) : null;
+        if (isSearch) {
+            body.remove("after");
+            body.put("limit", 2);
+            if (!plan.getProperties().isEmpty() && !body.containsKey("properties")) {
+                JSONArray propertyArray = new JSONArray();
+                propertyArray.addAll(plan.getProperties());
+                body.put("properties", propertyArray);
+            }
         }
         
         // Path builder functions may mutate the parameters Map;
         String path = mapping.getPathbuilder().apply(structureList, parameters);
+        boolean plainLookup = id != null && parameters.isEmpty() 
+            && plan.getAssociations().isEmpty();
                 
         // Accessor values is either passed as a parameter in the qualification
         // mapping for Adhoc or on the mapping for all other structures.
         String accessor = getAccessor(mapping, parameters);
         
+        // Only ask for the properties and associations the fields use.
+        if (!isSearch && mapping.getObjectType() != null) {
+            addReferences(plan, parameters);
+        }
+        
         Map<String, NameValuePair> parameterMap = buildNameValuePairMap(parameters);
+        String url = isSearch ? path : getUrl(path, parameterMap);
+        
+        // Cached objects are shared by requests for other fields so only 
+        // uncached responses are projected to the fields.
+        List<String> fields = request.getFields() == null 
+            ? Collections.emptyList() : request.getFields();
+        HubspotResponseProjection projection = fields.isEmpty() || cacheTtl > 0 
+            ? null : HubspotResponseProjection.forFields(accessor, fields);
+        
+        // A plain lookup by id can be combined with concurrent lookups of the
+        // same object type into one batch read.
+        HubspotCache.Loader<JSONObject> loader;
+        if (batchReader != null && plainLookup && mapping.getObjectType() != null) {
+            
+            loader = () -> {
+                JSONObject object = batchReader.read(mapping.getObjectType(), id,
+                    plan.getProperties());
+                if (object == null) {
+                    throw new BridgeError(String.format("The server responded "
+                        + "with: \"%s %s was not found\"", 
+                        mapping.getObjectType(), id));
+                }
+                return object;
+            };
+        } else if (isSearch) {
+            loader = () -> apiHelper.executeRequest(path, body, projection);
+        } else {
+            loader = () -> apiHelper.executeRequest(url, projection);
+        }
 
         // Retrieve the objects based on the structure from the source
-        JSONObject responseObject = apiHelper.executeRequest(getUrl(path, parameterMap));
+        JSONObject responseObject = getMirrored(mapping, id, plan, parameters);
+        if (responseObject != null) {
+            LOGGER.trace("Retrieved {} {} from the mirror", 
+                mapping.getObjectType(), id);
+        } else if (cacheTtl > 0) {
+            // The requested properties are part of the key so that requests
+            // for different fields of the same object do not collide.
+            String cacheKey = String.join("|", mapping.getStructure(), url,
+                String.join(",", plan.getProperties()));
+            responseObject = retrieveCache.get(cacheKey, cacheTtl, loader);
+            LOGGER.trace("Retrieve cache: {}", retrieveCache);
+        } else {
+            responseObject = loader.load();
+        }
         
         JSONArray responseArray = new JSONArray();
         if (responseObject.containsKey(accessor)) {
@@ -234,6 +1075,17 @@ public class HubspotAdapter implements BridgeAdapter {
             responseArray = getResponseData(responseObject);
         }
         
+        return buildSingleRecord(request, responseArray);
+    }
+    
+    /**
+     * Build the record of a retrieve.
+     * 
+     * @throws BridgeError if there is more than one object
+     */
+    private Record buildSingleRecord(BridgeRequest request, List<?> responseArray)
+        throws BridgeError {
+        
         Record record = new Record();
         if (responseArray.size() == 1) {
             // Reassign object to single result 
@@ -253,8 +1105,7 @@ public class HubspotAdapter implements BridgeAdapter {
         return record;
     }
 
-    @Override
-    public RecordList search(BridgeRequest request) throws BridgeError {
+    private RecordList searchRecords(BridgeRequest request) throws BridgeError {
         // Log the access
         LOGGER.trace("Searching Records");
         LOGGER.trace("  Structure: " + request.getStructure());
@@ -265,63 +1116,107 @@ public class HubspotAdapter implements BridgeAdapter {
             LOGGER.trace("  Fields: " + request.getFieldString());
         }
         
-        // Parse Structure
-        List<String> structureList = Arrays.asList(request.getStructure().trim()
-            .split("\\s*>\\s*"));
-        // Get Structure model
-        AdapterMapping mapping = getMapping(structureList.get(0));
+        // Get the cached plan for the structure, qualification and fields
+        HubspotRequestPlan plan = getRequestPlan(request);
+        List<String> structureList = plan.getStructureList();
+        AdapterMapping mapping = plan.getMapping();
         
-        // Convet the query string into a map of query parameters to values.       
-        Map<String, String> parameters = getParameters(request.getQuery(), mapping);
         // Replace <%=parameter["..."]%> with value.
-        for (Map.Entry<String, String> entry : parameters.entrySet()) {
-            entry.setValue(parser.parse(entry.getValue(),request.getParameters()));
-        }
+        Map<String, String> parameters = plan.getParameters(parser,
+            request.getParameters());
+        pushDownFilters(mapping, parameters, false);
         // Add pagination to parameters.
         addPagination(parameters, request.getMetadata());
+        
+        if (structureList.size() > 1) {
+            return searchNested(plan, parameters, request.getFields() == null 
+                ? new ArrayList() : request.getFields());
+        }
+        
+        // Fetch all mode follows the paging tokens inside the adapter and
+        // returns every page as a single RecordList.
+        boolean fetchAll = Boolean.parseBoolean(parameters.remove("fetchAll"));
+        // Scan mode reads every match of a search, past HubSpot's 10,000 
+        // result limit.
+        boolean scan = Boolean.parseBoolean(parameters.remove("scan"));
+        String maxRecordsValue = parameters.remove("maxRecords");
+        int maxRecords = maxRecordsValue != null 
+            ? parseMaxRecords(maxRecordsValue) : fetchAllMaxRecords;
+  
+        // HubSpot only sorts searches, so an ordered list is a search with the
+        // list's properties and paging.
+        if (!parameters.containsKey("body") && mapping.getObjectType() != null
+            && StringUtils.isNotBlank(request.getMetadata("order"))
+            && SEARCHABLE_LIST_PARAMETERS.containsAll(parameters.keySet())) {
+            
+            parameters.put("body", toSearchBody(parameters).toJSONString());
+        }
   
         // Hubspot searching requires a POST request with json body
-        boolean isSearch = false;
-        JSONObject body = new JSONObject();
-        if (parameters.containsKey("body")) {
-            isSearch = true; 
-            try {
-                body = (JSONObject)JSONValue.parseWithException(parameters.get("body"));
-            } catch (ParseException e){
-                throw new BridgeError("'body' parameter was not valid JSON", e);
-            }
+        boolean isSearch = parameters.containsKey("body");
+        if (scan && !isSearch) {
+            // Lists are not limited so they are read by fetching all pages.
+            scan = false;
+            fetchAll = true;
+            maxRecords = maxRecordsValue != null ? maxRecords 
+                : (int)Math.min(Integer.MAX_VALUE, scanMaxRecords);
+        }
+        JSONObject body = isSearch ? plan.getBody(parameters) : new JSONObject();
+        if (isSearch && parameters.containsKey("after")) {
+            // The search endpoint takes the paging token in the body.
+            body.putIfAbsent("after", parameters.get("after"));
         }
         
+        // Order on the first key is sent to HubSpot's search.  More keys, and
+        // lists that can not be searched, are sorted by the adapter.
+        HubspotSortOrder sortOrder = 
+            StringUtils.isBlank(request.getMetadata("order")) 
+            || body.containsKey("sorts") ? null 
+            : new HubspotSortOrder(getSortOrderItems(
+                BridgeUtils.parseOrder(request.getMetadata("order"))));
+        boolean sortPages = sortOrder != null 
+            && (sortOrder.size() > 1 || !isSearch);
+        if (sortPages) {
+            // Records sorted by the adapter are paged by offset.
+            parameters.remove("after");
+            body.remove("after");
+        }
+        
+        // Offset pagination returns the page of pageSize records at the 
+        // offset metadata.  A paging token takes precedence.
+        int offset = fetchAll || parameters.containsKey("after") 
+            || mapping.getObjectType() == null 
+            ? -1 : getOffset(request.getMetadata());
         
+        // Ask for a page of the requested size, or a full page of 100 (the 
+        // HubSpot max) when fetching all records.
+        String limit = String.valueOf(fetchAll 
+            ? Math.min(MAX_PAGE_SIZE, maxRecords) 
+            : getPageSize(request.getMetadata()));
         if (!isSearch) {
-            // Add limit to pramaeters if it does not exist. 100 is hubspot max.
-            parameters.putIfAbsent("limit", "100");
+            parameters.putIfAbsent("limit", limit);
         } else {
-            // Add limit to body if it does not exist. 100 is hubspot max.
-            body.putIfAbsent("limit", "100");
+            body.putIfAbsent("limit", limit);
             
-            // Get sort order items
-            LinkedHashMap<String,String> sortOrderItems = null; 
-            if (request.getMetadata("order") != null && !body.containsKey("sorts")) { 
-                sortOrderItems = getSortOrderItems(
-                    BridgeUtils.parseOrder(request.getMetadata("order")));
-                
-                if (sortOrderItems.size() == 1) {
-                    Entry<String, String> firstItem = 
-                        sortOrderItems.entrySet().iterator().next();
-                    
-                    JSONObject sortsObj = new JSONObject() {{
-                        put("propertyName", firstItem.getKey());
-                        put("direction", firstItem.getValue().equals("ASC") ? "ASCENDING" : "DESCENDING");
-                    }};
-                    
-                    JSONArray sorts = new JSONArray();
-                    sorts.add(sortsObj);
-                    // Add sort to body
-                    body.put("sorts", sorts);
-                } else {
-                    throw new BridgeError("HubSpot only supports a sort on one property.");
-                }
+            // Only ask for the properties the fields use.
+            if (!plan.getProperties().isEmpty() && !body.containsKey("properties")) {
+                JSONArray propertyArray = new JSONArray();
+                propertyArray.addAll(plan.getProperties());
+                body.put("properties", propertyArray);
+            }
+            if (sortPages && body.get("properties") instanceof List) {
+                // The adapter compares the objects on the sort properties.  The
+                // list may be shared with the cached plan so it is copied.
+                JSONArray propertyList = new JSONArray();
+                propertyList.addAll((List)body.get("properties"));
+                sortOrder.getProperties().stream()
+                    .filter(property -> !propertyList.contains(property))
+                    .forEach(propertyList::add);
+                body.put("properties", propertyList);
+            }
+            
+            if (sortOrder != null) {
+                body.put("sorts", sortOrder.getFirstSort());
             }
         }
         
@@ -330,8 +1225,14 @@ public class HubspotAdapter implements BridgeAdapter {
         
         // Hubspot specific requirement to add "properties" fields.  This is how
         // custom fields are fetched.
-        if (!fields.isEmpty()) {
-            parameters = setProperties(fields, parameters);
+        if (!isSearch && mapping.getObjectType() != null) {
+            addReferences(plan, parameters);
+        }
+        if (!isSearch && sortPages && parameters.containsKey("properties")) {
+            Set<String> propertySet = new LinkedHashSet<>(
+                Arrays.asList(parameters.get("properties").split(",")));
+            propertySet.addAll(sortOrder.getProperties());
+            parameters.put("properties", String.join(",", propertySet));
         }
         
         Map<String, NameValuePair> parameterMap = buildNameValuePairMap(parameters);
@@ -339,88 +1240,708 @@ public class HubspotAdapter implements BridgeAdapter {
         // Path builder functions may mutate the parameters Map;
         String path = mapping.getPathbuilder().apply(structureList, parameters);
         
-        // Retrieve the objects based on the structure from the source
-        JSONObject responseObject = isSearch 
-            ? apiHelper.executeRequest(path, body) 
-            : apiHelper.executeRequest(getUrl(path, parameterMap));
-        
         // Accessor values is either passed as a parameter in the qualification
         // mapping for Adhoc or on the mapping for all other structures.
         String accessor = getAccessor(mapping, parameters);
         
-        JSONArray responseArray = new JSONArray();
-        if (responseObject.containsKey(accessor)) {
-            responseArray = getResponseData(responseObject.get(accessor));
+        // Only materialize the parts of the response that the fields use.  If
+        // no fields were requested all fields are returned so the whole 
+        // response is needed.
+        List<String> projectedFields = fields;
+        if (scan) {
+            // Scanned objects are merged by id.
+            projectedFields = new ArrayList<>(fields);
+            projectedFields.add("id");
+        } else if (sortPages) {
+            // Keep the values the records are sorted on.
+            projectedFields = new ArrayList<>(fields);
+            for (String property : sortOrder.getProperties()) {
+                projectedFields.add("$.properties." + property);
+                projectedFields.add(property);
+            }
+        }
+        HubspotResponseProjection projection = fields.isEmpty() ? null
+            : HubspotResponseProjection.forFields(accessor, projectedFields);
+        
+        // Fetch a page of results starting after the paging token.  A null 
+        // token fetches the page that was requested and a null limit the
+        // requested page size.
+        PageFetcher fetcher = (after, pageLimit) -> {
+            if (isSearch) {
+                JSONObject pageBody = body;
+                if (after != null || pageLimit != null) {
+                    pageBody = (JSONObject)body.clone();
+                    if (after != null) {
+                        pageBody.put("after", after);
+                    }
+                    if (pageLimit != null) {
+                        pageBody.put("limit", pageLimit);
+                    }
+                }
+                JSONObject mirrored = mirror == null ? null
+                    : mirror.search(mapping.getObjectType(), pageBody);
+                return mirrored != null ? mirrored
+                    : apiHelper.executeRequest(path, pageBody, projection);
+            } else {
+                Map<String, NameValuePair> pageParameterMap = parameterMap;
+                if (after != null || pageLimit != null) {
+                    pageParameterMap = new TreeMap<>(parameterMap);
+                    if (after != null) {
+                        pageParameterMap.put("after", 
+                            new BasicNameValuePair("after", after));
+                    }
+                    if (pageLimit != null) {
+                        pageParameterMap.put("limit", 
+                            new BasicNameValuePair("limit", pageLimit));
+                    }
+                }
+                JSONObject mirrored = mirror == null ? null
+                    : mirror.list(mapping.getObjectType(), 
+                        toParameters(pageParameterMap));
+                return mirrored != null ? mirrored 
+                    : apiHelper.executeRequest(getUrl(path, pageParameterMap),
+                        projection);
+            }
+        };
+        
+        if (scan) {
+            return searchScan(fields, path, body, projection, 
+                maxRecordsValue != null ? maxRecords : scanMaxRecords);
+        }
+        if (sortPages) {
+            return searchSorted(request, mapping, fields, fetcher, accessor, 
+                sortOrder, isSearch, offset, fetchAll ? maxRecords : -1);
+        }
+        
+        // The request without its paging, that the page index is keyed by.
+        String pageQuery = pageIndex == null || mapping.getObjectType() == null
+            ? null : getPageQuery(path, isSearch, body, parameterMap);
+        // Offset of the first record of the response, -1 if it is not known.
+        int pageOffset;
+        String after = null;
+        boolean pastEnd = false;
+        if (offset >= 0) {
+            pageOffset = 0;
+            if (pageQuery != null) {
+                Entry<Integer, String> known = pageIndex.floor(pageQuery, offset);
+                pageOffset = known.getKey();
+                after = known.getValue();
+            }
+            // Page to the offset with pages of at most 100 records, recording
+            // the tokens on the way.
+            while (pageOffset < offset && !pastEnd) {
+                JSONObject skipped = fetcher.fetch(after, String.valueOf(
+                    Math.min(MAX_PAGE_SIZE, offset - pageOffset)));
+                int skippedSize = getResponseArray(skipped, accessor).size();
+                String next = getNextPage(skipped);
+                if (next.isEmpty() || skippedSize == 0) {
+                    pastEnd = true;
+                } else {
+                    pageOffset += skippedSize;
+                    after = next;
+                    recordPage(pageQuery, pageOffset, after);
+                }
+            }
+        } else if (parameters.containsKey("after")) {
+            pageOffset = pageQuery == null ? -1 
+                : pageIndex.getOffset(pageQuery, parameters.get("after"));
         } else {
-            responseArray = getResponseData(responseObject);
+            pageOffset = 0;
+        }
+        
+        // Retrieve the objects based on the structure from the source.  An
+        // offset past the last record has an empty page.
+        JSONObject responseObject;
+        if (pastEnd) {
+            responseObject = new JSONObject();
+            responseObject.put(accessor, new JSONArray());
+        } else {
+            responseObject = fetcher.fetch(after, null);
         }
         
         // Create a List of records that will be used to make a RecordList object.
-        List<Record> recordList = new ArrayList<>();          
-        if(responseArray != null && responseArray.isEmpty() != true){
-            fields = getFields(fields, (JSONObject)responseArray.get(0));
-
+        List<Record> recordList = new ArrayList<>();
+        HubspotFieldPlan fieldPlan = null;
+        String nextPage = getNextPage(responseObject);
+        // True if the record cap stopped a fetch all part way through a page.
+        boolean pageCut = false;
+        
+        while (true) {
+            JSONArray responseArray = getResponseArray(responseObject, accessor);
+            if (pageOffset >= 0) {
+                pageOffset += responseArray.size();
+                recordPage(pageQuery, pageOffset, nextPage);
+            }
+            
+            // Request the next page while this page is being built into 
+            // records.
+            Future<JSONObject> nextResponse = null;
+            int remaining = maxRecords - recordList.size() - responseArray.size();
+            if (fetchAll && !nextPage.isEmpty() && remaining > 0) {
+                // The last page only asks for the records under the cap, so 
+                // the cap ends on a page and its token resumes after it.
+                String nextAfter = nextPage;
+                String nextLimit = String.valueOf(Math.min(MAX_PAGE_SIZE, remaining));
+                nextResponse = pageExecutor.submit(HubspotMetrics.propagate(
+                    () -> fetcher.fetch(nextAfter, nextLimit)));
+            }
+            
+            if (fieldPlan == null && !responseArray.isEmpty()) {
+                fields = getFields(fields, (JSONObject)responseArray.get(0));
+                // Compile the fields once for every record in the response.
+                fieldPlan = HubspotFieldPlan.compile(fields);
+            }
+            
             // Iterate through the responce objects and make a new Record for each.
             for (Object o : responseArray) {
+                if (fetchAll && recordList.size() >= maxRecords) {
+                    pageCut = true;
+                    break;
+                }
                 JSONObject obj = (JSONObject)o;
-                Record record = buildRecord(fields, obj);
+                Record record = fieldPlan.buildRecord(obj);
                 
                 // Add the created record to the list of records
                 recordList.add(record);
             }
+            
+            if (nextResponse == null) {
+                break;
+            }
+            responseObject = getPage(nextResponse);
+            nextPage = getNextPage(responseObject);
         }
 
-        // Add next page token to metadata.
+        // Add next page token to metadata.  When fetching all records the 
+        // token is only set if the record cap stopped the paging, and not if
+        // it stopped inside a page (ie. a limit parameter larger than the cap)
+        // since the token would skip the rest of that page.
         Map<String, String> metadata = new LinkedHashMap<>();
-        metadata.put("next_page", getNextPage(responseObject));
+        metadata.put("next_page", pageCut ? "" : nextPage);
+        if (offset >= 0) {
+            addOffsetMetadata(metadata, request, offset, recordList.size());
+            if (responseObject.get("total") != null) {
+                metadata.put("count", String.valueOf(responseObject.get("total")));
+            }
+        }
 
         // Return the RecordList object
         return new RecordList(fields, recordList, metadata);
     }
+    
+    /**
+     * Search with an order that HubSpot can not apply, ie. on more than one
+     * property or of a list.  The pages are streamed through a heap that only
+     * keeps the records up to the end of the requested page.  HubSpot sorts a
+     * search on the first key, so paging stops once a page ends past the last
+     * kept record on that key if the adapter compares the key the same way.
+     * 
+     * @param maxRecords records of a fetchAll search, -1 to return the page
+     *   of the pageSize metadata
+     */
+    private RecordList searchSorted(BridgeRequest request, AdapterMapping mapping,
+        List<String> fields, PageFetcher fetcher, String accessor, 
+        HubspotSortOrder sortOrder, boolean isSearch, int offset, int maxRecords)
+        throws BridgeError {
+        
+        int start = Math.max(0, offset);
+        int end = start + (maxRecords >= 0 
+            ? maxRecords : getPageSize(request.getMetadata()));
+        if (end > maxSortRecords) {
+            throw new BridgeError(String.format("Sorting the first %d %s records"
+                + " is more than the %d allowed by the '%s' property.", end, 
+                request.getStructure(), maxSortRecords, 
+                Properties.PROPERTY_MAX_SORT_RECORDS));
+        }
+        
+        boolean sortedOnFirstKey = isSearch && isSortedAsHubspot(mapping, sortOrder);
+        HubspotTopK<JSONObject> top = new HubspotTopK<>(end, 
+            sortOrder.comparator());
+        Comparator<JSONObject> firstKey = sortOrder.comparator(1);
+        int read = 0;
+        String after = null;
+        do {
+            JSONObject response = fetcher.fetch(after, 
+                String.valueOf(MAX_PAGE_SIZE));
+            JSONArray page = getResponseArray(response, accessor);
+            page.forEach(object -> top.offer((JSONObject)object));
+            read += page.size();
+            after = page.isEmpty() ? "" : getNextPage(response);
+            
+            // A page can be empty if its objects were deleted after the
+            // previous page was read.
+            if (sortedOnFirstKey && top.isFull() && !page.isEmpty() 
+                && firstKey.compare((JSONObject)page.get(page.size() - 1), 
+                    top.getLast()) > 0) {
+                break;
+            }
+            if (!after.isEmpty() && read >= maxSortRecords) {
+                throw new BridgeError(String.format("Sorting the %s records "
+                    + "reads more than the %d allowed by the '%s' property.  "
+                    + "Narrow the query or order by one property of a search.",
+                    request.getStructure(), maxSortRecords,
+                    Properties.PROPERTY_MAX_SORT_RECORDS));
+            }
+        } while (!after.isEmpty());
+        
+        List<JSONObject> sorted = top.toList();
+        List<Record> recordList = new ArrayList<>();
+        if (sorted.size() > start) {
+            fields = getFields(fields, sorted.get(start));
+            HubspotFieldPlan fieldPlan = HubspotFieldPlan.compile(fields);
+            sorted.subList(start, sorted.size()).forEach(object -> 
+                recordList.add(fieldPlan.buildRecord(object)));
+        }
+        
+        // The records are paged by offset, HubSpot's tokens do not apply.
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("next_page", "");
+        if (offset >= 0) {
+            addOffsetMetadata(metadata, request, offset, recordList.size());
+        }
+        return new RecordList(fields, recordList, metadata);
+    }
+    
+    /**
+     * A search sorted by HubSpot on the first key can only stop early if the
+     * adapter compares that key the same way.  HubSpot sorts number and date
+     * properties by value and others as text, where the adapter compares
+     * numbers in text as numbers.  Objects without the property come first in
+     * the adapter's descending order but HubSpot may return them last, so
+     * only an ascending key qualifies.
+     */
+    private boolean isSortedAsHubspot(AdapterMapping mapping, 
+        HubspotSortOrder sortOrder) throws BridgeError {
+        
+        return sortOrder.isFirstAscending() && ORDERED_PROPERTY_TYPES.contains(
+            getPropertyTypes(mapping).get(sortOrder.getFirstProperty()));
+    }
+    
+    /**
+     * @return the HubSpot type, ie. number or string, by property name of the
+     *   object type.  Empty if they can not be read.
+     */
+    private Map<String, String> getPropertyTypes(AdapterMapping mapping) 
+        throws BridgeError {
+        
+        return propertyTypes.get(mapping.getObjectType(), PLAN_CACHE_TTL_MILLIS, 
+            () -> {
+                Map<String, String> types = new HashMap<>();
+                try {
+                    JSONObject response = apiHelper.executeRequest(
+                        PROPERTIES_PATH + mapping.getObjectType());
+                    for (Object property : getResponseData(response.get("results"))) {
+                        types.put(String.valueOf(((JSONObject)property).get("name")),
+                            String.valueOf(((JSONObject)property).get("type")));
+                    }
+                } catch (BridgeError e) {
+                    LOGGER.warn("Unable to read the {} properties, searches "
+                        + "sorted by the adapter read every page.", 
+                        mapping.getObjectType(), e);
+                }
+                return types;
+            });
+    }
+    
+    /**
+     * Read every match of a search with a partitioned scan.  The records are 
+     * in id order and the order metadata does not apply.
+     */
+    private RecordList searchScan(List<String> fields, String path, 
+        JSONObject body, HubspotResponseProjection projection, long maxRecords) 
+        throws BridgeError {
+        
+        List<JSONObject> objects = new HubspotPartitionedScan(
+            pageBody -> apiHelper.executeRequest(path, pageBody, projection),
+            scanParallelism, maxRecords).scan(body);
+        
+        List<Record> recordList = new ArrayList<>(objects.size());
+        if (!objects.isEmpty()) {
+            fields = getFields(fields, objects.get(0));
+            HubspotFieldPlan fieldPlan = HubspotFieldPlan.compile(fields);
+            objects.forEach(object -> recordList.add(fieldPlan.buildRecord(object)));
+        }
+        
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("next_page", "");
+        metadata.put("size", String.valueOf(recordList.size()));
+        return new RecordList(fields, recordList, metadata);
+    }
+    
+    private static void addOffsetMetadata(Map<String, String> metadata,
+        BridgeRequest request, int offset, int size) {
+        
+        int pageSize = getPageSize(request.getMetadata());
+        metadata.put("offset", String.valueOf(offset));
+        metadata.put("pageSize", String.valueOf(pageSize));
+        metadata.put("pageNumber", String.valueOf(offset / pageSize + 1));
+        metadata.put("size", String.valueOf(size));
+    }
+
+    /*--------------------------------------------------------------------------
+     * NESTED STRUCTURES
+     *------------------------------------------------------------------------*/
+    
+    /**
+     * Search a nested structure, ie. "Companies > Contacts" returns the 
+     * contacts of the companies.  Every record has the parent object under 
+     * the "parent" key.
+     */
+    private RecordList searchNested(HubspotRequestPlan plan, 
+        Map<String, String> parameters, List<String> fields) throws BridgeError {
+        
+        List<JSONObject> objects = getNestedObjects(plan, parameters, fields);
+        
+        List<Record> records = new ArrayList<>(objects.size());
+        if (!objects.isEmpty()) {
+            HubspotFieldPlan fieldPlan = 
+                HubspotFieldPlan.compile(getFields(fields, objects.get(0)));
+            objects.forEach(object -> records.add(fieldPlan.buildRecord(object)));
+        }
+        
+        // The children of every parent are returned so there is no next page.
+        Map<String, String> metadata = new LinkedHashMap<>();
+        metadata.put("next_page", "");
+        metadata.put("size", String.valueOf(records.size()));
+        return new RecordList(fields, records, metadata);
+    }
+    
+    /**
+     * Get the child objects of a nested structure joined with their parent.
+     * 
+     * The associations of all of the parents are read with batch association
+     * reads and the children with batch object reads that run in parallel.
+     */
+    @SuppressWarnings("unchecked")
+    private List<JSONObject> getNestedObjects(HubspotRequestPlan plan, 
+        Map<String, String> parameters, List<String> fields) throws BridgeError {
+        
+        AdapterMapping childMapping = getChildMapping(plan);
+        HubspotAssociationReader reader = getAssociationReader();
+        
+        List<JSONObject> parents = getParents(plan, parameters, fields);
+        Map<String, List<String>> associations = reader.readAssociations(
+            plan.getMapping().getObjectType(), childMapping.getObjectType(),
+            getIds(parents));
+        
+        Set<String> childIds = new LinkedHashSet<>();
+        associations.values().forEach(childIds::addAll);
+        Map<String, JSONObject> children = childIds.isEmpty() 
+            ? Collections.emptyMap()
+            : reader.readObjects(childMapping.getObjectType(), childIds,
+                getPropertyNames(getChildFields(fields)));
+        
+        List<JSONObject> objects = new ArrayList<>();
+        for (JSONObject parent : parents) {
+            for (String childId : associations.get(String.valueOf(parent.get("id")))) {
+                JSONObject child = children.get(childId);
+                // Skip associations to objects that were deleted.
+                if (child != null) {
+                    JSONObject object = new JSONObject(child);
+                    object.put(NESTED_PARENT_KEY, parent);
+                    objects.add(object);
+                }
+            }
+        }
+        return objects;
+    }
+    
+    /**
+     * Get the parent objects of a nested structure.  An id qualification 
+     * (one or more comma separated ids) selects the parents directly, 
+     * otherwise every page of the parent structure's list or search is read.
+     * 
+     * @throws BridgeError if there are more parents than the maxRecords 
+     *   parameter, or Fetch All Max Records, allows
+     */
+    @SuppressWarnings("unchecked")
+    private List<JSONObject> getParents(HubspotRequestPlan plan,
+        Map<String, String> parameters, List<String> fields) throws BridgeError {
+        
+        AdapterMapping mapping = plan.getMapping();
+        List<String> parentProperties = getPropertyNames(getParentFields(fields));
+        List<JSONObject> parents = new ArrayList<>();
+        
+        String id = parameters.remove("id");
+        if (id != null) {
+            List<String> ids = new ArrayList<>();
+            for (String parentId : id.split(",")) {
+                if (!parentId.trim().isEmpty()) {
+                    ids.add(parentId.trim());
+                }
+            }
+            if (parentProperties.isEmpty()) {
+                ids.forEach(parentId -> {
+                    JSONObject parent = new JSONObject();
+                    parent.put("id", parentId);
+                    parents.add(parent);
+                });
+            } else {
+                // The parent fields need the parent objects.
+                Map<String, JSONObject> objects = getAssociationReader()
+                    .readObjects(mapping.getObjectType(), ids, parentProperties);
+                ids.stream().map(objects::get).filter(Objects::nonNull)
+                    .forEach(parents::add);
+            }
+            return parents;
+        }
+        
+        // Every parent is read, rather than a page of them, so that the 
+        // children are complete.  Too many parents fail the request.
+        String maxRecordsValue = parameters.remove("maxRecords");
+        int maxParents = maxRecordsValue != null 
+            ? parseMaxRecords(maxRecordsValue) : fetchAllMaxRecords;
+        
+        boolean isSearch = parameters.containsKey("body");
+        JSONObject body = isSearch ? plan.getBody(parameters) : null;
+        if (isSearch) {
+            body.put("limit", String.valueOf(MAX_PAGE_SIZE));
+            if (!parentProperties.isEmpty()) {
+                JSONArray propertyArray = new JSONArray();
+                propertyArray.addAll(parentProperties);
+                body.put("properties", propertyArray);
+            }
+        } else {
+            parameters.put("limit", String.valueOf(MAX_PAGE_SIZE));
+            if (!parentProperties.isEmpty()) {
+                parameters.put("properties", String.join(",", parentProperties));
+            }
+        }
+        
+        // Path builder functions may mutate the parameters Map;
+        String path = mapping.getPathbuilder().apply(plan.getStructureList(),
+            parameters);
+        Map<String, NameValuePair> parameterMap = buildNameValuePairMap(parameters);
+        String after = isSearch ? Objects.toString(body.remove("after"), "")
+            : StringUtils.defaultString(parameters.get("after"));
+        do {
+            JSONObject responseObject;
+            if (isSearch) {
+                JSONObject pageBody = (JSONObject)body.clone();
+                if (!after.isEmpty()) {
+                    pageBody.put("after", after);
+                }
+                responseObject = apiHelper.executeRequest(path, pageBody);
+            } else {
+                Map<String, NameValuePair> pageParameterMap = new TreeMap<>(parameterMap);
+                if (!after.isEmpty()) {
+                    pageParameterMap.put("after", new BasicNameValuePair("after", after));
+                }
+                responseObject = apiHelper.executeRequest(getUrl(path, pageParameterMap));
+            }
+            
+            for (Object parent : getResponseArray(responseObject, mapping.getAccessor())) {
+                parents.add((JSONObject)parent);
+            }
+            after = getNextPage(responseObject);
+            if (!after.isEmpty() && parents.size() >= maxParents) {
+                throw new BridgeError(String.format("The qualification matches "
+                    + "more than %d %s, the most parents of a nested structure.  "
+                    + "Narrow the qualification or raise maxRecords.", maxParents,
+                    mapping.getStructure()));
+            }
+        } while (!after.isEmpty());
+        return parents;
+    }
+    
+    /**
+     * Get the mapping of the child of a nested structure.
+     * 
+     * @throws BridgeError if the structure can not be nested
+     */
+    private AdapterMapping getChildMapping(HubspotRequestPlan plan) 
+        throws BridgeError {
+        
+        List<String> structureList = plan.getStructureList();
+        if (structureList.size() > 2) {
+            throw new BridgeError(String.format("Invalid Structure: '%s' only one"
+                + " level of nesting is supported", 
+                String.join(" > ", structureList)));
+        }
+        AdapterMapping childMapping = getMapping(structureList.get(1));
+        for (AdapterMapping mapping : Arrays.asList(plan.getMapping(), childMapping)) {
+            if (mapping.getObjectType() == null) {
+                throw new BridgeError(String.format("Invalid Structure: '%s' can"
+                    + " not be used in a nested structure", 
+                    mapping.getStructure()));
+            }
+        }
+        return childMapping;
+    }
+    
+    private HubspotAssociationReader getAssociationReader() {
+        return new HubspotAssociationReader(apiHelper, pageExecutor);
+    }
+    
+    private static List<String> getIds(List<JSONObject> objects) {
+        List<String> ids = new ArrayList<>(objects.size());
+        objects.forEach(object -> ids.add(String.valueOf(object.get("id"))));
+        return ids;
+    }
+    
+    private static boolean isParentField(String field) {
+        return field.startsWith("$." + NESTED_PARENT_KEY + ".") 
+            || field.startsWith("$['" + NESTED_PARENT_KEY + "']")
+            || field.startsWith("$[\"" + NESTED_PARENT_KEY + "\"]");
+    }
+    
+    private static List<String> getParentFields(List<String> fields) {
+        List<String> parentFields = new ArrayList<>();
+        fields.stream().filter(HubspotAdapter::isParentField)
+            .forEach(parentFields::add);
+        return parentFields;
+    }
+    
+    private static List<String> getChildFields(List<String> fields) {
+        List<String> childFields = new ArrayList<>();
+        fields.stream().filter(field -> !isParentField(field))
+            .forEach(childFields::add);
+        return childFields;
+    }
 
     /*--------------------------------------------------------------------------
      * HELPER METHODS
      *------------------------------------------------------------------------*/
-    private Map<String, String> setProperties(List<String> fields, 
-        Map<String, String> parameters) {
-        
-        List<String> properties = new ArrayList<>();
-
-        Pattern pDot = Pattern.compile("(?<=properties.).*");
-        Pattern pBracket = Pattern.compile("(?<=properties\\[\").*.+?(?=\")");
-        
-        fields.forEach(field -> {
-            Matcher mDot = pDot.matcher(field);
-            Matcher mBracket = pBracket.matcher(field);
-            
-            if( mDot.find()){
-               properties.add(mDot.group());
+    /**
+     * Fetches a page of search results.
+     */
+    @FunctionalInterface
+    private static interface PageFetcher {
+        JSONObject fetch(String after, String limit) throws BridgeError;
+    }
+    
+    /**
+     * Wait for a page that is being fetched in the background.
+     * 
+     * @param page
+     * @return
+     * @throws BridgeError 
+     */
+    private JSONObject getPage(Future<JSONObject> page) throws BridgeError {
+        try {
+            return page.get();
+        } catch (InterruptedException e) {
+            page.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while fetching the next page.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BridgeError) {
+                throw (BridgeError)e.getCause();
             }
-            if( mBracket.find()) {
-                properties.add(mBracket.group());
+            throw new BridgeError("There was an issue fetching the next page.", 
+                e.getCause());
+        }
+    }
+    
+    private int parseMaxRecords(String value) throws BridgeError {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            throw new BridgeError(String.format("The maxRecords parameter must"
+                + " be a number but was '%s'.", value), e);
+        }
+    }
+    
+    /**
+     * Serialize a JSON value with the object keys sorted so that equal 
+     * values always produce the same string.
+     * 
+     * @param value
+     * @return 
+     */
+    protected static String toCanonicalJson(Object value) {
+        if (value instanceof Map) {
+            StringBuilder json = new StringBuilder("{");
+            new TreeMap<Object, Object>((Map)value).forEach((key, child) -> {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append(JSONValue.toJSONString(String.valueOf(key)))
+                    .append(':').append(toCanonicalJson(child));
+            });
+            return json.append('}').toString();
+        } else if (value instanceof List) {
+            StringBuilder json = new StringBuilder("[");
+            for (Object child : (List)value) {
+                if (json.length() > 1) {
+                    json.append(',');
+                }
+                json.append(toCanonicalJson(child));
             }
-        });
+            return json.append(']').toString();
+        }
+        return JSONValue.toJSONString(value);
+    }
+    
+    /**
+     * Get the records from the response.  If the response does not have the
+     * accessor the response is a single record.
+     * 
+     * @param responseObject
+     * @param accessor
+     * @return 
+     */
+    private JSONArray getResponseArray(JSONObject responseObject, 
+        String accessor) {
         
-        if (!properties.isEmpty()) {
-            parameters.put("properties", StringUtils.join(properties, ","));
+        if (responseObject.containsKey(accessor)) {
+            return getResponseData(responseObject.get(accessor));
+        } else {
+            return getResponseData(responseObject);
         }
+    }
+    
+    /**
+     * Get the plan for the request from the cache or build it.
+     * 
+     * @param request
+     * @return
+     * @throws BridgeError 
+     */
+    protected HubspotRequestPlan getRequestPlan(BridgeRequest request) 
+        throws BridgeError {
         
-        return parameters;
+        String key = String.join("\u0000", request.getStructure(),
+            String.valueOf(request.getQuery()), 
+            String.valueOf(request.getFieldString()));
+        
+        return planCache.get(key, PLAN_CACHE_TTL_MILLIS, () -> {
+            // parse Structure
+            List<String> structureList = Arrays.asList(
+                STRUCTURE_SEPARATOR.split(request.getStructure().trim()));
+            // get Structure model
+            AdapterMapping mapping = getMapping(structureList.get(0));
+            
+            // Convet the query string into a map of query parameters to values.
+            Map<String, String> parameters = getParameters(request.getQuery(),
+                mapping);
+            
+            List<String> fields = request.getFields() == null 
+                ? Collections.emptyList() : request.getFields();
+            return new HubspotRequestPlan(structureList, mapping, parameters,
+                HubspotRequestPlan.getPropertyNames(fields),
+                HubspotRequestPlan.getAssociationNames(fields));
+        });
+    }
+    
+    /**
+     * Get the HubSpot property names referenced by the bridge fields, ie. 
+     * properties.name, properties["name"] or $.properties.name.
+     * 
+     * @param fields
+     * @return 
+     */
+    private List<String> getPropertyNames(List<String> fields) {
+        return HubspotRequestPlan.getPropertyNames(fields);
     }
     
     private String getNextPage (JSONObject responseObject) {
-        String nextPage = "";
-        
-        try {
-            nextPage = JsonPath.parse(responseObject).read("$.paging.next.after");
-        } catch (Exception e) {
-            /* There is not concern with this execption. JsonPath will force an
-             * exception if the json object does not have a matching path. To keep 
-             * the adapter generic we always check if there is a next page token.  
-             */
-        }
+        // The token is at $.paging.next.after when there is a next page.
+        Object paging = responseObject.get("paging");
+        Object next = paging instanceof Map ? ((Map)paging).get("next") : null;
+        Object after = next instanceof Map ? ((Map)next).get("after") : null;
         
-        return nextPage;
+        return after == null ? "" : after.toString();
     }
     
     protected List<String> getFields(List<String> fields, JSONObject jsonobj) {
@@ -435,40 +1956,15 @@ public class HubspotAdapter implements BridgeAdapter {
     /**
      * Build a Record.  If no fields are provided all fields will be returned.
      * 
+     * When building more than one record compile a HubspotFieldPlan once and
+     * reuse it instead.
+     * 
      * @param fields
      * @param jsonobj
      * @return Record
      */
     protected Record buildRecord (List<String> fields, JSONObject jsonobj) {
-        JSONObject obj = new JSONObject();
-        DocumentContext jsonContext = JsonPath.parse(jsonobj); 
-        
-        fields.stream().forEach(field -> {
-            // either use JsonPath or just add the field value.  We're assuming
-            // all JsonPath usages will begin with $[ or $.. 
-            if (field.startsWith("$.") || field.startsWith("$[")) {
-                try {
-                    obj.put(field, jsonContext.read(field));
-                } catch (JsonPathException e) {
-                    // if field is a valid path but object is missing the property
-                    // return null for field.  This is consistent with existing 
-                    // adapter behavior.
-                    if (e.getMessage().startsWith("Missing property")) {
-                        obj.put(field, null);
-                        LOGGER.debug(String.format("%s was not found, returning"
-                            + " null value", field), e);
-                    } else {   
-                        throw new JsonPathException(String.format("There was an issue"
-                            + " reading %s", field), e);
-                    }
-                }
-            } else {
-                obj.put(field, jsonobj.get(field));
-            }
-        });
-        
-        Record record = new Record(obj, fields);
-        return record;
+        return HubspotFieldPlan.compile(fields).buildRecord(jsonobj);
     }
     
         
@@ -506,6 +2002,348 @@ public class HubspotAdapter implements BridgeAdapter {
         return accessor;
     }
     
+    /**
+     * Get a retrieve by id from the mirror.
+     * 
+     * @return the object or null if the mirror can not answer
+     */
+    private JSONObject getMirrored(AdapterMapping mapping, String id,
+        HubspotRequestPlan plan, Map<String, String> parameters) {
+        
+        if (mirror == null || id == null || mapping.getObjectType() == null
+            || !Collections.singleton("properties").containsAll(parameters.keySet())) {
+            return null;
+        }
+        Set<String> requested = new LinkedHashSet<>(plan.getProperties());
+        if (parameters.containsKey("properties")) {
+            for (String property : parameters.get("properties").split(",")) {
+                requested.add(property.trim());
+            }
+        }
+        return mirror.get(mapping.getObjectType(), id, requested);
+    }
+    
+    /**
+     * Replace the filter parameters of a qualification, ie. email=..., with a 
+     * search body so that HubSpot filters the objects.  The list endpoint 
+     * ignores them.  A lookup on one unique property is a get with 
+     * idProperty instead.
+     * 
+     * @param mapping
+     * @param parameters
+     * @param lookup true for a retrieve of one object
+     * @throws BridgeError 
+     */
+    private void pushDownFilters(AdapterMapping mapping, 
+        Map<String, String> parameters, boolean lookup) throws BridgeError {
+        
+        if (mapping.getObjectType() == null || parameters.containsKey("body")
+            || parameters.containsKey("id")) {
+            return;
+        }
+        HubspotFilters filters = HubspotFilters.extract(parameters);
+        if (filters.isEmpty()) {
+            return;
+        }
+        Entry<String, String> unique = lookup 
+            ? filters.getUniqueLookup(uniqueProperties.getOrDefault(
+                mapping.getStructure(), Collections.emptySet()))
+            : null;
+        if (unique != null) {
+            try {
+                parameters.put("id", URLEncoder.encode(unique.getValue(), 
+                    "UTF-8").replace("+", "%20"));
+            } catch (UnsupportedEncodingException e) {
+                throw new BridgeError("Unable to encode the lookup value.", e);
+            }
+            parameters.put("idProperty", unique.getKey());
+        } else {
+            parameters.put("body", filters.toBody().toJSONString());
+        }
+    }
+    
+    /**
+     * Move the properties and limit parameters of a list to a search body.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject toSearchBody(Map<String, String> parameters) {
+        JSONObject body = new JSONObject();
+        String properties = parameters.remove("properties");
+        if (properties != null) {
+            JSONArray propertyArray = new JSONArray();
+            for (String property : properties.split(",")) {
+                propertyArray.add(property.trim());
+            }
+            body.put("properties", propertyArray);
+        }
+        String limit = parameters.remove("limit");
+        if (limit != null) {
+            body.put("limit", limit);
+        }
+        return body;
+    }
+    
+    /**
+     * Add the properties and associations that the fields use to the query
+     * parameters of a list or get, unless the qualification sets them.
+     */
+    private static void addReferences(HubspotRequestPlan plan, 
+        Map<String, String> parameters) {
+        
+        if (!plan.getProperties().isEmpty()) {
+            parameters.putIfAbsent("properties", 
+                String.join(",", plan.getProperties()));
+        }
+        if (!plan.getAssociations().isEmpty()) {
+            parameters.putIfAbsent("associations", 
+                String.join(",", plan.getAssociations()));
+        }
+    }
+    
+    /**
+     * The pageSize metadata of the request, at most a HubSpot page.
+     */
+    private static int getPageSize(Map<String, String> metadata) {
+        String pageSize = metadata == null ? null : metadata.get("pageSize");
+        if (StringUtils.isNotBlank(pageSize)) {
+            try {
+                int size = Integer.parseInt(pageSize.trim());
+                if (size > 0) {
+                    return Math.min(MAX_PAGE_SIZE, size);
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.debug("Ignoring the pageSize metadata '{}'", pageSize);
+            }
+        }
+        return MAX_PAGE_SIZE;
+    }
+    
+    /**
+     * The offset metadata of the request, or the first record of the 
+     * pageNumber metadata.
+     * 
+     * @return the offset, -1 if the request does not ask for an offset page
+     */
+    private static int getOffset(Map<String, String> metadata) {
+        if (metadata == null) {
+            return -1;
+        }
+        try {
+            if (StringUtils.isNotBlank(metadata.get("offset"))) {
+                return Math.max(0, Integer.parseInt(metadata.get("offset").trim()));
+            }
+            if (StringUtils.isNotBlank(metadata.get("pageNumber"))) {
+                int pageNumber = Integer.parseInt(metadata.get("pageNumber").trim());
+                return Math.max(0, pageNumber - 1) * getPageSize(metadata);
+            }
+        } catch (NumberFormatException e) {
+            LOGGER.debug("Ignoring the offset metadata '{}'", metadata);
+        }
+        return -1;
+    }
+    
+    /**
+     * The request without its paging token and page size.  Tokens do not
+     * depend on the page size so requests with different page sizes share
+     * their tokens.
+     */
+    private String getPageQuery(String path, boolean isSearch, JSONObject body,
+        Map<String, NameValuePair> parameterMap) {
+        
+        if (isSearch) {
+            JSONObject query = (JSONObject)body.clone();
+            query.remove("after");
+            query.remove("limit");
+            return path + " " + toCanonicalJson(query);
+        }
+        Map<String, NameValuePair> query = new TreeMap<>(parameterMap);
+        query.remove("after");
+        query.remove("limit");
+        return getUrl(path, query);
+    }
+    
+    private void recordPage(String pageQuery, int offset, String after) {
+        if (pageQuery != null) {
+            pageIndex.record(pageQuery, offset, after);
+        }
+    }
+    
+    private static Map<String, String> toParameters(
+        Map<String, NameValuePair> parameterMap) {
+        
+        Map<String, String> parameters = new HashMap<>();
+        parameterMap.values().forEach(pair -> 
+            parameters.put(pair.getName(), pair.getValue()));
+        return parameters;
+    }
+    
+    /**
+     * Get an optional comma separated property value.
+     */
+    private List<String> getListProperty(String name) {
+        List<String> values = new ArrayList<>();
+        String value = properties.getValue(name);
+        if (StringUtils.isNotBlank(value)) {
+            for (String item : value.split(",")) {
+                if (StringUtils.isNotBlank(item)) {
+                    values.add(item.trim());
+                }
+            }
+        }
+        return values;
+    }
+    
+    /**
+     * Get an optional numeric property value.  A blank value uses the default.
+     * 
+     * @param name
+     * @param defaultValue
+     * @return
+     * @throws BridgeError 
+     */
+    private long getLongProperty(String name, long defaultValue) 
+        throws BridgeError {
+        
+        String value = properties.getValue(name);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new BridgeError(String.format("The '%s' property must be a"
+                + " number but was '%s'.", name, value), e);
+        }
+    }
+    
+    private int getIntegerProperty(String name, int defaultValue) 
+        throws BridgeError {
+        
+        return (int)getLongProperty(name, defaultValue);
+    }
+    
+    private double getDoubleProperty(String name, double defaultValue) 
+        throws BridgeError {
+        
+        String value = properties.getValue(name);
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new BridgeError(String.format("The '%s' property must be a"
+                + " number but was '%s'.", name, value), e);
+        }
+    }
+    
+    /**
+     * The structure that metrics are recorded under.  Requests for structures
+     * that are not mapped share one name so that they can not create an 
+     * unbounded number of MBeans.
+     */
+    private String getMetricsStructure(BridgeRequest request) {
+        String structure = request.getStructure() == null 
+            ? "" : STRUCTURE_SEPARATOR.split(request.getStructure().trim())[0];
+        return structures.contains(structure) ? structure : "Unknown";
+    }
+    
+    /**
+     * Background threads must not keep the bridgehub from shutting down.
+     * 
+     * @param prefix
+     * @return 
+     */
+    protected static ThreadFactory daemonThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+    
+    /**
+     * Parse a per structure time to live property.  The value is a comma 
+     * separated list of Structure=seconds pairs, ie. Companies=300,Contacts=60.
+     * 
+     * @param name
+     * @return
+     * @throws BridgeError 
+     */
+    private Map<String, Long> getStructureTtls(String name) throws BridgeError {
+        return getPairsProperty(name, "Structure=seconds");
+    }
+    
+    /**
+     * Parse a per operation timeout property.  The value is a comma separated
+     * list of operation=milliseconds pairs, ie. retrieve=5000,search=30000.
+     * 
+     * @param name
+     * @return
+     * @throws BridgeError 
+     */
+    private Map<String, Integer> getOperationTimeouts(String name) 
+        throws BridgeError {
+        
+        Map<String, Integer> timeouts = new HashMap<>();
+        getPairsProperty(name, "operation=milliseconds").forEach((operation, 
+            timeout) -> timeouts.put(operation.toLowerCase(), timeout.intValue()));
+        return timeouts;
+    }
+    
+    /**
+     * Parse a list of Structure=property pairs, ie. 
+     * Contacts=email,Companies=external_id.  A structure may be listed more 
+     * than once.
+     * 
+     * @param name
+     * @return
+     * @throws BridgeError 
+     */
+    private Map<String, Set<String>> getUniqueProperties(String name) 
+        throws BridgeError {
+        
+        Map<String, Set<String>> pairs = new HashMap<>();
+        String value = StringUtils.defaultIfBlank(properties.getValue(name),
+            DEFAULT_UNIQUE_PROPERTIES);
+        for (String pair : value.split(",")) {
+            String[] segments = pair.split("=", 2);
+            if (segments.length != 2 || StringUtils.isBlank(segments[0]) 
+                || StringUtils.isBlank(segments[1])) {
+                
+                throw new BridgeError(String.format("The '%s' property must"
+                    + " be a list of Structure=property pairs but was '%s'.",
+                    name, value));
+            }
+            pairs.computeIfAbsent(segments[0].trim(), 
+                key -> new HashSet<>()).add(segments[1].trim());
+        }
+        return pairs;
+    }
+    
+    private Map<String, Long> getPairsProperty(String name, String format) 
+        throws BridgeError {
+        
+        Map<String, Long> pairs = new HashMap<>();
+        String value = properties.getValue(name);
+        
+        if (StringUtils.isNotBlank(value)) {
+            for (String pair : value.split(",")) {
+                String[] segments = pair.split("=", 2);
+                try {
+                    pairs.put(segments[0].trim(), Long.valueOf(segments[1].trim()));
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                    throw new BridgeError(String.format("The '%s' property must"
+                        + " be a list of %s pairs but was '%s'.",
+                        name, format, value), e);
+                }
+            }
+        }
+        
+        return pairs;
+    }
+    
     /**
      * This helper is intended to abstract the parser get parameters from the core
      * methods.
@@ -545,7 +2383,7 @@ public class HubspotAdapter implements BridgeAdapter {
      * @throws BridgeError
      */
     protected AdapterMapping getMapping(String structure) throws BridgeError {
-        AdapterMapping mapping = MAPPINGS.get(structure);
+        AdapterMapping mapping = structures.get(structure);
         if (mapping == null) {
             throw new BridgeError("Invalid Structure: '" + structure + "' is not a valid structure");
         }
@@ -553,7 +2391,9 @@ public class HubspotAdapter implements BridgeAdapter {
     }
 
     protected Map<String, NameValuePair> buildNameValuePairMap(Map<String, String> parameters) {
-        Map<String, NameValuePair> parameterMap = new HashMap<>();
+        // Sorted so that the same parameters always build the same url, which
+        // lets identical in-flight requests be shared.
+        Map<String, NameValuePair> parameterMap = new TreeMap<>();
 
         parameters.forEach((key, value) -> {
             parameterMap.put(key, new BasicNameValuePair(key, value));
@@ -606,50 +2446,6 @@ public class HubspotAdapter implements BridgeAdapter {
     }
     
     /**************************** Path Definitions ****************************/
-    protected static String pathCompanies(List<String> structureList,
-        Map<String, String> parameters) throws BridgeError {
-        
-        String path = "/crm/v3/objects/companies";
-        if (parameters.containsKey("id")) {
-            path = String.format("%s/%s", path, parameters.get("id"));
-            parameters.remove("id");
-        }
-        if (parameters.containsKey("body")) {
-            path = String.format("%s/%s", path, "search");
-            parameters.remove("body");
-        }
-        
-        return path;
-    }   
-    
-    protected static String pathContacts(List<String> structureList,
-        Map<String, String> parameters) throws BridgeError {
-
-        String path = "/crm/v3/objects/contacts";
-        if (parameters.containsKey("id")) {
-            path = String.format("%s/%s", path, parameters.get("id"));
-            parameters.remove("id");
-        }
-        if (parameters.containsKey("body")) {
-            path = String.format("%s/%s", path, "search");
-            parameters.remove("body");
-        }
-        
-        return path;
-    }
-    
-    protected static String pathTickets(List<String> structureList,
-        Map<String, String> parameters) throws BridgeError {
-
-        String path = "/crm/v3/objects/tickets";
-        if (parameters.containsKey("id")) {
-            path = String.format("%s/%s", path, parameters.get("id"));
-            parameters.remove("id");
-        }
-   
-        return path;
-    }          
-       
     /**
      * Build path for Adhoc structure.
      * 
@@ -682,4 +2478,51 @@ public class HubspotAdapter implements BridgeAdapter {
                 + "parameter.", structure, param));
         }
     }
+
+    /**
+     * A search result kept to be served while the circuit is open.
+     */
+    private static class StaleRecordList {
+        private final List<String> fields;
+        private final List<Record> records;
+        private final Map<String, String> metadata;
+        private final Instant since = Instant.now();
+        private final long length;
+        
+        StaleRecordList(RecordList recordList) {
+            fields = recordList.getFields();
+            records = recordList.getRecords();
+            metadata = recordList.getMetadata() == null ? new LinkedHashMap<>()
+                : new LinkedHashMap<>(recordList.getMetadata());
+            long recordsLength = 0;
+            for (Record record : records) {
+                if (record.getRecord() != null) {
+                    for (Map.Entry<String, Object> value : 
+                        record.getRecord().entrySet()) {
+                        recordsLength += value.getKey().length() 
+                            + String.valueOf(value.getValue()).length();
+                    }
+                }
+            }
+            length = recordsLength + metadata.toString().length();
+        }
+        
+        Instant getSince() {
+            return since;
+        }
+        
+        /**
+         * @return the approximate number of characters of the result
+         */
+        long getLength() {
+            return length;
+        }
+        
+        RecordList toRecordList() {
+            Map<String, String> staleMetadata = new LinkedHashMap<>(metadata);
+            staleMetadata.put(METADATA_STALE, "true");
+            staleMetadata.put(METADATA_STALE_SINCE, since.toString());
+            return new RecordList(fields, records, staleMetadata);
+        }
+    }
 }
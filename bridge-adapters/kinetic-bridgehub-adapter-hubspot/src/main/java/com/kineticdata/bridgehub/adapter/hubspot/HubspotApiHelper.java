@@ -1,39 +1,267 @@
 package com.kineticdata.bridgehub.adapter.hubspot;
 
 import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
+import org.apache.http.pool.PoolStats;
 import org.apache.http.util.EntityUtils;
 import org.json.simple.JSONObject;
-import org.json.simple.JSONValue;
+import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * This class is a Rest service helper.
+ * 
+ * Requests are sent through a transport that is shared by every request made
+ * through the helper.  The classic transport keeps pooled HTTP/1.1 connections
+ * alive and blocks the calling thread, the async transport multiplexes
+ * requests over HTTP/2 without holding a thread per request.  The helper is
+ * expected to live as long as the adapter instance that created it and must
+ * be closed when it is replaced.
+ * 
+ * The executeRequestAsync methods return immediately with a future of the 
+ * response.  The executeRequest methods wait for the same future.
+ * 
+ * Concurrent GETs of the same url and POSTs of the same path and body share
+ * one in-flight request, so a burst of identical bridge requests makes one
+ * HubSpot call.  The adapter only POSTs searches and batch reads, so every 
+ * request sent by path is safe to share.  The shared response must not be 
+ * modified.
+ * 
+ * Every request is sent with the connect, connection request and socket
+ * timeouts of the bridge operation it is made for.  If a hedge policy is set,
+ * a GET that has not responded within a percentile of the response times of
+ * its operation is sent again; the first response is used and the other 
+ * request is aborted.
+ * 
+ * If a circuit breaker is set, requests fail without being sent while its 
+ * circuit is open.
  */
-public class HubspotApiHelper {
+public class HubspotApiHelper implements AutoCloseable {
     private static final Logger LOGGER = 
         LoggerFactory.getLogger(HubspotApiHelper.class);
     
+    public static final int DEFAULT_MAX_CONNECTIONS = 50;
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 30000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60000;
+    
+    // Delays rate limit waits and retry backoffs of async requests without 
+    // holding a thread while waiting.
+    private static final ScheduledExecutorService DELAYS =
+        Executors.newSingleThreadScheduledExecutor(
+            HubspotAdapter.daemonThreadFactory("hubspot-delay-"));
+    // Sends hedged requests, which block a thread on the classic transport.
+    private static final ExecutorService HEDGES = Executors.newCachedThreadPool(
+        HubspotAdapter.daemonThreadFactory("hubspot-hedge-"));
+    
     private final String baseUrl;
     private final String apiKey;
+    private final HubspotTransport transport;
+    private HubspotRateLimiter rateLimiter = new HubspotRateLimiter();
+    private HubspotSingleFlight<String, JSONObject> singleFlight =
+        new HubspotSingleFlight<>();
+    private HubspotTimeouts timeouts = new HubspotTimeouts();
+    // Null when GETs are not hedged.
+    private HubspotHedgePolicy hedgePolicy;
+    // Null when requests are always sent.
+    private HubspotCircuitBreaker circuitBreaker;
     
     public HubspotApiHelper(String baseUrl, String apiKey) {
+        this(baseUrl, apiKey, DEFAULT_MAX_CONNECTIONS, 
+            DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_KEEP_ALIVE_MILLIS,
+            DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+    
+    /**
+     * Use the classic transport.
+     * 
+     * @param baseUrl
+     * @param apiKey
+     * @param maxConnections total number of pooled connections
+     * @param maxConnectionsPerRoute pooled connections to a single host
+     * @param keepAliveMillis how long an idle connection is kept alive when
+     *   the server does not send a Keep-Alive timeout
+     * @param idleTimeoutMillis idle connections older than this are evicted
+     *   from the pool by a background thread
+     */
+    public HubspotApiHelper(String baseUrl, String apiKey, int maxConnections,
+        int maxConnectionsPerRoute, long keepAliveMillis, long idleTimeoutMillis) {
+        
+        this(baseUrl, apiKey, new HubspotClassicTransport(maxConnections,
+            maxConnectionsPerRoute, keepAliveMillis, idleTimeoutMillis));
+    }
+    
+    /**
+     * @param baseUrl
+     * @param apiKey
+     * @param transport closed when the helper is closed
+     */
+    public HubspotApiHelper(String baseUrl, String apiKey,
+        HubspotTransport transport) {
+        
         this.baseUrl = baseUrl;
         this.apiKey = apiKey;
+        this.transport = transport;
+    }
+    
+    /**
+     * Replace the default rate limiter.
+     * 
+     * @param rateLimiter
+     */
+    public void setRateLimiter(HubspotRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+    
+    /**
+     * Replace the single-flight of identical in-flight requests.
+     * 
+     * @param singleFlight null sends every request
+     */
+    public void setSingleFlight(HubspotSingleFlight<String, JSONObject> singleFlight) {
+        this.singleFlight = singleFlight;
+    }
+    
+    /**
+     * Replace the default timeouts.
+     * 
+     * @param timeouts 
+     */
+    public void setTimeouts(HubspotTimeouts timeouts) {
+        this.timeouts = timeouts;
+    }
+    
+    /**
+     * Hedge slow GETs.
+     * 
+     * @param hedgePolicy null never hedges
+     */
+    public void setHedgePolicy(HubspotHedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+    
+    /**
+     * Stop sending requests while HubSpot is failing or slow.
+     * 
+     * @param circuitBreaker null always sends requests
+     */
+    public void setCircuitBreaker(HubspotCircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+    
+    /**
+     * @return the circuit breaker, null if requests are always sent
+     */
+    public HubspotCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+    
+    /**
+     * @return the hedge policy, null if GETs are not hedged
+     */
+    public HubspotHedgePolicy getHedgePolicy() {
+        return hedgePolicy;
+    }
+    
+    /**
+     * @return the single-flight of identical in-flight requests, null if every
+     *   request is sent
+     */
+    public HubspotSingleFlight<String, JSONObject> getSingleFlight() {
+        return singleFlight;
+    }
+    
+    /**
+     * @return true if the executeRequestAsync methods return without waiting
+     *   for the response
+     */
+    public boolean isAsync() {
+        return transport.isAsync();
+    }
+    
+    /**
+     * @return the leased, available and pending connections of the pool
+     */
+    public PoolStats getPoolStats() {
+        return transport.getPoolStats();
+    }
+    
+    /**
+     * Shut down the transport and release all pooled connections.
+     */
+    @Override
+    public void close() {
+        transport.close();
     }
     
     public JSONObject executeRequest (String path, JSONObject body) throws BridgeError{
+        return executeRequest(path, body, null);
+    }
+    
+    /**
+     * POST the body to the path.  If a projection is provided only the 
+     * projected parts of the response are materialized.
+     * 
+     * @param path
+     * @param body
+     * @param projection may be null
+     * @return
+     * @throws BridgeError 
+     */
+    public JSONObject executeRequest (String path, JSONObject body,
+        HubspotResponseProjection projection) throws BridgeError{
+        
+        return join(executeRequestAsync(path, body, projection));
+    }
+    
+    /**
+     * POST the body to the path without waiting for the response.
+     * 
+     * @param path
+     * @param body
+     * @param projection may be null
+     * @return the response, completed exceptionally with a BridgeError if the 
+     *   request failed
+     */
+    public CompletableFuture<JSONObject> executeRequestAsync (String path,
+        JSONObject body, HubspotResponseProjection projection) {
+        
+        return share("POST", path + " " + HubspotAdapter.toCanonicalJson(body), 
+            projection, () -> post(path, body, projection));
+    }
+    
+    private CompletableFuture<JSONObject> post (String path, JSONObject body,
+        HubspotResponseProjection projection) {
+        
         String url = baseUrl + path + "?hapikey=" + apiKey;
         
         HttpPost post = new HttpPost(url);
@@ -42,15 +270,51 @@ public class HubspotApiHelper {
         try {
             requestEntity = new StringEntity(body.toJSONString());
         } catch(UnsupportedEncodingException e) {
-            throw new BridgeError("An exception occured during encoding json string", e);
+            return failed(new BridgeError(
+                "An exception occured during encoding json string", e));
         }
         post.setEntity(requestEntity);
         post.setHeader("Content-Type", "application/json");
             
-        return executeRequest(post);
+        return executeRequestAsync(post, projection);
     }
     
     public JSONObject executeRequest (String path) throws BridgeError {
+        return executeRequest(path, (HubspotResponseProjection)null);
+    }
+    
+    /**
+     * GET the path.  If a projection is provided only the projected parts of
+     * the response are materialized.
+     * 
+     * @param path
+     * @param projection may be null
+     * @return
+     * @throws BridgeError 
+     */
+    public JSONObject executeRequest (String path, 
+        HubspotResponseProjection projection) throws BridgeError {
+        
+        return join(executeRequestAsync(path, projection));
+    }
+    
+    /**
+     * GET the path without waiting for the response.
+     * 
+     * @param path
+     * @param projection may be null
+     * @return the response, completed exceptionally with a BridgeError if the 
+     *   request failed
+     */
+    public CompletableFuture<JSONObject> executeRequestAsync (String path, 
+        HubspotResponseProjection projection) {
+        
+        return share("GET", path, projection, () -> get(path, projection));
+    }
+    
+    private CompletableFuture<JSONObject> get (String path,
+        HubspotResponseProjection projection) {
+        
         String url = baseUrl + path;
         
         // Append the api key to the end of the url for authntication
@@ -58,48 +322,337 @@ public class HubspotApiHelper {
             ? url + "&hapikey=" + apiKey
             : url + "?hapikey=" + apiKey;
         
+        HubspotHedgePolicy policy = hedgePolicy;
+        return policy == null 
+            ? executeRequestAsync(newGet(url), projection)
+            : hedge(url, projection, policy, HubspotMetrics.current());
+    }
+    
+    private static HttpGet newGet(String url) {
         HttpGet get = new HttpGet(url);
 
         get.setHeader("Content-Type", "application/json");
         get.setHeader("Accept", "application/json");
-
-        return executeRequest (get);
+        
+        return get;
+    }
+    
+    /**
+     * GET the url and GET it again if it has not responded once its 
+     * operation's hedge delay has passed and the hedge budget allows it.  
+     * The first response is used and the other request is aborted.  An error
+     * is only used once no other request is in flight.
+     */
+    private CompletableFuture<JSONObject> hedge(String url,
+        HubspotResponseProjection projection, HubspotHedgePolicy policy,
+        HubspotOperationMetrics metrics) {
+        
+        String operation = metrics == null ? null : metrics.getOperation();
+        long delay = policy.getDelayMillis(operation);
+        long start = System.nanoTime();
+        
+        CompletableFuture<JSONObject> result = new CompletableFuture<>();
+        List<HttpGet> requests = new CopyOnWriteArrayList<>();
+        AtomicInteger inFlight = new AtomicInteger(1);
+        result.whenComplete((output, e) -> {
+            if (e == null) {
+                policy.record(operation, System.nanoTime() - start);
+            }
+        });
+        
+        // The timer is started before the first request because the classic
+        // transport sends it on this thread.
+        if (delay >= 0) {
+            ScheduledFuture<?> timer = DELAYS.schedule(() -> {
+                if (result.isDone() || !policy.tryAcquire()) {
+                    return;
+                }
+                // Only hedge while the first request is still in flight.
+                if (inFlight.getAndUpdate(count -> count == 0 ? 0 : count + 1) > 0) {
+                    LOGGER.debug("Hedging \"{}\" after {}ms.", url, delay);
+                    if (metrics != null) {
+                        metrics.recordHedge();
+                    }
+                    HEDGES.execute(() -> race(newGet(url), projection, metrics,
+                        result, requests, inFlight));
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+            result.whenComplete((output, e) -> timer.cancel(false));
+        }
+        race(newGet(url), projection, metrics, result, requests, inFlight);
+        return result;
+    }
+    
+    private void race(HttpGet get, HubspotResponseProjection projection,
+        HubspotOperationMetrics metrics, CompletableFuture<JSONObject> result,
+        List<HttpGet> requests, AtomicInteger inFlight) {
+        
+        requests.add(get);
+        execute(get, projection, metrics).whenComplete((output, e) -> {
+            int remaining = inFlight.decrementAndGet();
+            if (e == null) {
+                if (result.complete(output)) {
+                    requests.stream().filter(request -> request != get)
+                        .forEach(HttpGet::abort);
+                }
+            } else if (remaining == 0) {
+                result.completeExceptionally(e);
+            }
+        });
     }
         
     public JSONObject executeRequest (HttpRequestBase http) throws BridgeError{
-        JSONObject output;      
-        // System time used to measure the request/response time
-        long start = System.currentTimeMillis();
+        return executeRequest(http, null);
+    }
+    
+    public JSONObject executeRequest (HttpRequestBase http,
+        HubspotResponseProjection projection) throws BridgeError{
+        
+        return join(executeRequestAsync(http, projection));
+    }
+    
+    /**
+     * Send the request without waiting for the response.  Waiting for the 
+     * rate limit and retrying throttled or unavailable responses is part of 
+     * the returned future.
+     * 
+     * @param http
+     * @param projection may be null
+     * @return the response, completed exceptionally with a BridgeError if the 
+     *   request failed
+     */
+    public CompletableFuture<JSONObject> executeRequestAsync (HttpRequestBase http,
+        HubspotResponseProjection projection) {
+        
+        return execute(http, projection, HubspotMetrics.current());
+    }
+    
+    private CompletableFuture<JSONObject> execute(HttpRequestBase http,
+        HubspotResponseProjection projection, HubspotOperationMetrics metrics) {
+        
+        boolean search = http.getURI().getPath().endsWith("/search");
+        if (http.getConfig() == null) {
+            http.setConfig(timeouts.forOperation(
+                metrics == null ? null : metrics.getOperation()));
+        }
+        
+        CompletableFuture<JSONObject> result = new CompletableFuture<>();
+        attempt(http, projection, search, metrics, 0).whenComplete((output, e) -> {
+            if (e == null) {
+                result.complete(output);
+            } else {
+                result.completeExceptionally(toBridgeError(e));
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Join an identical request that is in flight or send the request.  The
+     * projection is part of the key because it decides what the response 
+     * holds.
+     */
+    private CompletableFuture<JSONObject> share(String method, String request,
+        HubspotResponseProjection projection, 
+        Supplier<CompletableFuture<JSONObject>> send) {
+        
+        HubspotSingleFlight<String, JSONObject> flights = singleFlight;
+        if (flights == null) {
+            return send.get();
+        }
+        String key = String.join(" ", method, request, 
+            projection == null ? "" : projection.getKey());
+        return flights.execute(key, send);
+    }
+    
+    private CompletableFuture<JSONObject> attempt(HttpRequestBase http,
+        HubspotResponseProjection projection, boolean search,
+        HubspotOperationMetrics metrics, int attempt) {
+        
+        // Wait for the rate limit to allow the request.
+        CompletableFuture<Void> due;
+        try {
+            due = delay(rateLimiter.reserve(search));
+        } catch (BridgeError e) {
+            return failed(e);
+        }
+        
+        return due.thenCompose(ignored -> {
+            HubspotCircuitBreaker breaker = circuitBreaker;
+            if (breaker != null && !breaker.tryAcquire()) {
+                return failed(new BridgeError("HubSpot is failing or slow, "
+                    + "requests are not sent while the circuit is open."));
+            }
+            // System time used to measure the request/response time
+            long start = System.currentTimeMillis();
+            long startNanos = System.nanoTime();
+            CompletableFuture<CloseableHttpResponse> sent;
+            try {
+                sent = send(http);
+            } catch (RuntimeException e) {
+                // The outcome is still recorded, a half open circuit waits
+                // for the outcome of every probe it lets through.
+                sent = new CompletableFuture<>();
+                sent.completeExceptionally(e);
+            }
+            return sent.whenComplete((response, e) -> {
+                if (breaker != null) {
+                    breaker.record(System.nanoTime() - startNanos, 
+                        isFailure(http, response, e));
+                }
+            }).thenApply(response -> {
+                LOGGER.debug("Recieved response from \"{}\" in {}ms.",
+                    http.getURI(),
+                    System.currentTimeMillis()-start);
+                return response;
+            });
+        }).thenCompose(response -> 
+            handleResponse(http, projection, search, metrics, attempt, response));
+    }
+    
+    private CompletableFuture<JSONObject> handleResponse(HttpRequestBase http,
+        HubspotResponseProjection projection, boolean search,
+        HubspotOperationMetrics metrics, int attempt, 
+        CloseableHttpResponse httpResponse) {
         
         try (
-            CloseableHttpClient client = HttpClients.createDefault()
+            CloseableHttpResponse response = httpResponse
         ) {
-            HttpResponse response;
-            
-            response = client.execute(http);
-            LOGGER.debug("Recieved response from \"{}\" in {}ms.",
-                http.getURI(),
-                System.currentTimeMillis()-start);
-
             int responseCode = response.getStatusLine().getStatusCode();
             LOGGER.trace("Request response code: " + responseCode);
-            
+            rateLimiter.update(response);
+            if (metrics != null) {
+                metrics.recordHttpResponse(responseCode);
+            }
+
             HttpEntity entity = response.getEntity();
-            
-            // Confirm that response is a JSON object
-            output = parseResponse(EntityUtils.toString(entity));
-            
+
+            // Throttled and unavailable responses are retried after a 
+            // backoff.  Consuming the entity releases the connection back
+            // to the pool.
+            if (rateLimiter.isRetryable(responseCode, attempt)
+                && !isDailyLimit(response)) {
+
+                long backoff = rateLimiter.getBackoffMillis(response, attempt);
+                LOGGER.debug("Retrying \"{}\" in {}ms after a {} response.",
+                    http.getURI(), backoff, responseCode);
+                EntityUtils.consume(entity);
+                return delay(backoff).thenCompose(ignored -> 
+                    attempt(http, projection, search, metrics, attempt + 1));
+            }
+
+            // Confirm that response is a JSON object.  Reading the entity 
+            // fully releases the connection back to the pool.
+            JSONObject output = parseResponse(entity, projection, metrics);
+
             // Handle all other failed repsonses
             if (responseCode >= 400) {
                 handleFailedReqeust(responseCode);
             }
+            return CompletableFuture.completedFuture(output);
+        } catch (BridgeError e) {
+            return failed(e);
+        } catch (IOException e) {
+            return failed(new BridgeError(
+                "Unable to make a connection to the Hubspot service server.", e));
         }
-        catch (IOException e) {
-            throw new BridgeError(
-                "Unable to make a connection to the Hubspot service server.", e);
+    }
+    
+    /**
+     * A request HubSpot could not answer.  The slower of two hedged requests
+     * is aborted and is not a failure.
+     */
+    private static boolean isFailure(HttpRequestBase http, 
+        CloseableHttpResponse response, Throwable e) {
+        
+        if (e != null) {
+            return !http.isAborted();
+        }
+        int responseCode = response.getStatusLine().getStatusCode();
+        return responseCode == 429 || responseCode >= 500;
+    }
+    
+    /**
+     * Send the request over the transport.
+     * 
+     * @param http
+     * @return
+     */
+    protected CompletableFuture<CloseableHttpResponse> send(HttpRequestBase http) {
+        return transport.execute(http);
+    }
+    
+    /**
+     * A future that completes after the delay.  A blocking transport waits on
+     * the calling thread so that the request is still sent by that thread.
+     */
+    private CompletableFuture<Void> delay(long millis) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (millis <= 0) {
+            future.complete(null);
+        } else if (!transport.isAsync()) {
+            LOGGER.debug("Waiting {}ms to send the request.", millis);
+            try {
+                rateLimiter.sleep(millis);
+                future.complete(null);
+            } catch (BridgeError e) {
+                future.completeExceptionally(e);
+            }
+        } else {
+            DELAYS.schedule(() -> future.complete(null), millis,
+                TimeUnit.MILLISECONDS);
         }
+        return future;
+    }
+    
+    /**
+     * Wait for a response.
+     */
+    private static JSONObject join(CompletableFuture<JSONObject> future)
+        throws BridgeError {
         
-        return output;
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting for the response.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)e.getCause();
+            }
+            throw toBridgeError(e.getCause());
+        }
+    }
+    
+    private static BridgeError toBridgeError(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException)
+            && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof BridgeError) {
+            return (BridgeError)e;
+        }
+        if (e instanceof IOException) {
+            return new BridgeError(
+                "Unable to make a connection to the Hubspot service server.", e);
+        }
+        return new BridgeError("An unexpected error has occured ", e);
+    }
+    
+    private static <T> CompletableFuture<T> failed(BridgeError e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+    
+    /**
+     * The daily limit will not reset for hours so there is no point in 
+     * retrying a request that was rejected by it.
+     */
+    private boolean isDailyLimit(CloseableHttpResponse response) {
+        Header remaining = 
+            response.getFirstHeader("X-HubSpot-RateLimit-Daily-Remaining");
+        return remaining != null && "0".equals(remaining.getValue().trim());
     }
     
     private void handleFailedReqeust (int responseCode) throws BridgeError {
@@ -112,18 +665,45 @@ public class HubspotApiHelper {
                 throw new BridgeError("404: Page not found");
             case 405:
                 throw new BridgeError("405: Method Not Allowed");
+            case 429:
+                throw new BridgeError("429: Too Many Requests");
             case 500:
                 throw new BridgeError("500 Internal Server Error");
+            case 502:
+                throw new BridgeError("502: Bad Gateway");
+            case 503:
+                throw new BridgeError("503: Service Unavailable");
             default:
                 throw new BridgeError("Unexpected response from server");
         }
     }
         
-    private JSONObject parseResponse(String output) throws BridgeError{
+    /**
+     * Parse the response directly from the entity stream without buffering
+     * the body as a String.
+     */
+    private JSONObject parseResponse(HttpEntity entity,
+        HubspotResponseProjection projection, HubspotOperationMetrics metrics) 
+        throws BridgeError{
         
         JSONObject responseObj = new JSONObject();
-        try {
-            responseObj = (JSONObject)JSONValue.parseWithException(output);
+        if (entity == null) {
+            return responseObj;
+        }
+        
+        Charset charset = ContentType.getOrDefault(entity).getCharset();
+        CountingInputStream content = null;
+        try (
+            Reader reader = new InputStreamReader(
+                content = new CountingInputStream(entity.getContent()),
+                charset == null ? StandardCharsets.UTF_8 : charset)
+        ) {
+            Object parsed = projection == null 
+                ? new JSONParser().parse(reader) 
+                : projection.parse(reader);
+            if (parsed != null) {
+                responseObj = (JSONObject)parsed;
+            }
             // A message in the response means that the request failded with a 400
             if(responseObj.containsKey("message")) {
                 throw new BridgeError(String.format("The server responded with: "
@@ -134,10 +714,53 @@ public class HubspotApiHelper {
             LOGGER.error("There was a parse exception with the response", e);
         } catch (BridgeError e) {
             throw e;
+        } catch (IOException e) {
+            throw new BridgeError(
+                "Unable to read the response from the Hubspot service server.", e);
         } catch (Exception e) {
             throw new BridgeError("An unexpected error has occured ", e);
+        } finally {
+            if (metrics != null && content != null) {
+                metrics.recordBytesReceived(content.count);
+            }
         }
         
         return responseObj;
     }
+    
+    /**
+     * Counts the bytes of a response as they are read.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+        
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+        
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
 }
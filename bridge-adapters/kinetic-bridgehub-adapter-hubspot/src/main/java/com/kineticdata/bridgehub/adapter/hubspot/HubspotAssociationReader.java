@@ -0,0 +1,240 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves associations between objects and reads the associated objects with
+ * batch requests.
+ *
+ * Associations are read with POST /crm/v4/associations/{from}/{to}/batch/read
+ * and the associated objects with POST /crm/v3/objects/{to}/batch/read.  The
+ * ids are split into batches of at most 100 and the batches are sent in
+ * parallel, so the objects associated with 40 companies take two round trips
+ * instead of one request per object.
+ */
+public class HubspotAssociationReader {
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(HubspotAssociationReader.class);
+
+    public static final int MAX_BATCH_SIZE = HubspotBatchReader.MAX_BATCH_SIZE;
+    // Associations per page when an object has more than fit in a batch read.
+    private static final int ASSOCIATION_PAGE_SIZE = 500;
+
+    private final HubspotApiHelper apiHelper;
+    private final Executor executor;
+
+    /**
+     * @param apiHelper
+     * @param executor runs the batches in parallel when the api helper's
+     *   transport blocks
+     */
+    public HubspotAssociationReader(HubspotApiHelper apiHelper, Executor executor) {
+        this.apiHelper = apiHelper;
+        this.executor = executor;
+    }
+
+    /**
+     * Get the ids of the objects associated with each object.
+     *
+     * @param fromType object type of the ids, ie. companies
+     * @param toType associated object type, ie. contacts
+     * @param fromIds
+     * @return the associated ids by id, in the order of the ids
+     * @throws BridgeError
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, List<String>> readAssociations(String fromType,
+        String toType, Collection<String> fromIds) throws BridgeError {
+
+        String path = String.format("/crm/v4/associations/%s/%s/batch/read",
+            fromType, toType);
+        List<CompletableFuture<JSONObject>> futures = new ArrayList<>();
+        for (List<String> batch : partition(fromIds)) {
+            futures.add(post(path, inputs(batch)));
+        }
+
+        Map<String, List<String>> associations = new LinkedHashMap<>();
+        fromIds.forEach(id -> associations.put(id, new ArrayList<>()));
+        Map<String, String> nextPages = new HashMap<>();
+        for (JSONObject response : joinAll(futures)) {
+            for (JSONObject result : getResults(response)) {
+                String id = String.valueOf(((JSONObject)result.get("from")).get("id"));
+                List<String> toIds = associations.computeIfAbsent(id,
+                    key -> new ArrayList<>());
+                addToIds(toIds, (JSONArray)result.get("to"));
+                String after = getAfter(result);
+                if (after != null) {
+                    nextPages.put(id, after);
+                }
+            }
+        }
+
+        // Objects with more associations than fit in a batch read are paged
+        // individually.
+        for (Map.Entry<String, String> nextPage : nextPages.entrySet()) {
+            String after = nextPage.getValue();
+            while (after != null) {
+                JSONObject page = apiHelper.executeRequest(String.format(
+                    "/crm/v4/objects/%s/%s/associations/%s?limit=%d&after=%s",
+                    fromType, nextPage.getKey(), toType, ASSOCIATION_PAGE_SIZE,
+                    after));
+                addToIds(associations.get(nextPage.getKey()),
+                    (JSONArray)page.get("results"));
+                after = getAfter(page);
+            }
+        }
+        return associations;
+    }
+
+    /**
+     * Read objects by id.
+     *
+     * @param objectType
+     * @param ids
+     * @param properties properties to return, the HubSpot defaults if empty
+     * @return the objects by id, objects that do not exist are left out
+     * @throws BridgeError
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, JSONObject> readObjects(String objectType,
+        Collection<String> ids, List<String> properties) throws BridgeError {
+
+        String path = String.format("/crm/v3/objects/%s/batch/read", objectType);
+        List<CompletableFuture<JSONObject>> futures = new ArrayList<>();
+        for (List<String> batch : partition(ids)) {
+            JSONObject body = inputs(batch);
+            if (!properties.isEmpty()) {
+                JSONArray propertyArray = new JSONArray();
+                propertyArray.addAll(properties);
+                body.put("properties", propertyArray);
+            }
+            futures.add(post(path, body));
+        }
+
+        Map<String, JSONObject> objects = new HashMap<>();
+        for (JSONObject response : joinAll(futures)) {
+            for (JSONObject result : getResults(response)) {
+                objects.put(String.valueOf(result.get("id")), result);
+            }
+        }
+        LOGGER.debug("Read {} of {} {} in {} batches.", objects.size(), ids.size(),
+            objectType, futures.size());
+        return objects;
+    }
+
+    /**
+     * Send a batch without waiting for it.  An async transport sends it
+     * directly, a blocking transport sends it on the executor.
+     */
+    private CompletableFuture<JSONObject> post(String path, JSONObject body) {
+        if (apiHelper.isAsync()) {
+            return apiHelper.executeRequestAsync(path, body, null);
+        }
+        CompletableFuture<JSONObject> future = new CompletableFuture<>();
+        executor.execute(HubspotMetrics.propagate(() -> {
+            try {
+                future.complete(apiHelper.executeRequest(path, body));
+            } catch (BridgeError | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }));
+        return future;
+    }
+
+    private static List<JSONObject> joinAll(List<CompletableFuture<JSONObject>> futures)
+        throws BridgeError {
+
+        List<JSONObject> responses = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<JSONObject> future : futures) {
+                responses.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting for a batch read.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BridgeError) {
+                throw (BridgeError)e.getCause();
+            }
+            throw new BridgeError("There was an issue with the batch read.",
+                e.getCause());
+        }
+        return responses;
+    }
+
+    private static List<List<String>> partition(Collection<String> ids) {
+        List<List<String>> batches = new ArrayList<>();
+        List<String> batch = new ArrayList<>();
+        Set<String> unique = new LinkedHashSet<>(ids);
+        for (String id : unique) {
+            batch.add(id);
+            if (batch.size() == MAX_BATCH_SIZE) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject inputs(List<String> ids) {
+        JSONArray inputs = new JSONArray();
+        ids.forEach(id -> {
+            JSONObject input = new JSONObject();
+            input.put("id", id);
+            inputs.add(input);
+        });
+        JSONObject body = new JSONObject();
+        body.put("inputs", inputs);
+        return body;
+    }
+
+    private static List<JSONObject> getResults(JSONObject response) {
+        List<JSONObject> results = new ArrayList<>();
+        Object resultArray = response.get("results");
+        if (resultArray instanceof JSONArray) {
+            for (Object result : (JSONArray)resultArray) {
+                results.add((JSONObject)result);
+            }
+        }
+        return results;
+    }
+
+    private static void addToIds(List<String> toIds, JSONArray to) {
+        if (to == null) {
+            return;
+        }
+        for (Object association : to) {
+            toIds.add(String.valueOf(((JSONObject)association).get("toObjectId")));
+        }
+    }
+
+    private static String getAfter(JSONObject object) {
+        Object paging = object.get("paging");
+        if (paging instanceof Map) {
+            Object next = ((Map)paging).get("next");
+            if (next instanceof Map && ((Map)next).get("after") != null) {
+                return String.valueOf(((Map)next).get("after"));
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,235 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.HttpVersion;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.ProtocolVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Non-blocking transport over the Apache HttpClient 5 async client.
+ *
+ * HTTP/2 is negotiated with TLS ALPN so concurrent requests to HubSpot are
+ * multiplexed over a few connections instead of one connection and one
+ * thread per request.  Servers that do not support HTTP/2 are sent pooled
+ * HTTP/1.1 requests.  Responses are buffered by the I/O threads and handed to
+ * a separate executor so that parsing never holds up the I/O threads.
+ */
+public class HubspotAsyncTransport implements HubspotTransport {
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+
+    private final PoolingAsyncClientConnectionManager connectionManager;
+    private final CloseableHttpAsyncClient client;
+    private final ExecutorService callbackExecutor;
+    private final long keepAliveMillis;
+
+    /**
+     * @param maxConnections total number of pooled connections
+     * @param maxConnectionsPerRoute pooled connections to a single host
+     * @param keepAliveMillis how long an idle connection is kept alive when
+     *   the server does not send a Keep-Alive timeout
+     * @param idleTimeoutMillis idle connections older than this are evicted
+     */
+    public HubspotAsyncTransport(int maxConnections, int maxConnectionsPerRoute,
+        long keepAliveMillis, long idleTimeoutMillis) {
+
+        this.keepAliveMillis = keepAliveMillis;
+        connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(maxConnections)
+            .setMaxConnPerRoute(maxConnectionsPerRoute)
+            .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+            .build();
+
+        client = HttpAsyncClients.custom()
+            .setConnectionManager(connectionManager)
+            .setVersionPolicy(HttpVersionPolicy.NEGOTIATE)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setDefaultKeepAlive(keepAliveMillis, TimeUnit.MILLISECONDS)
+                .build())
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.ofMilliseconds(idleTimeoutMillis))
+            .build();
+        client.start();
+
+        callbackExecutor = Executors.newCachedThreadPool(
+            HubspotAdapter.daemonThreadFactory("hubspot-async-"));
+    }
+
+    @Override
+    public CompletableFuture<CloseableHttpResponse> execute(HttpRequestBase request) {
+        CompletableFuture<CloseableHttpResponse> future = new CompletableFuture<>();
+
+        SimpleHttpRequest simpleRequest;
+        try {
+            simpleRequest = toSimpleRequest(request);
+            if (request.getConfig() != null) {
+                simpleRequest.setConfig(toRequestConfig(request.getConfig()));
+            }
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        Future<SimpleHttpResponse> response = 
+            client.execute(simpleRequest, new FutureCallback<SimpleHttpResponse>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                complete(future, () -> future.complete(toResponse(response)));
+            }
+
+            @Override
+            public void failed(Exception e) {
+                complete(future, () -> future.completeExceptionally(
+                    e instanceof IOException ? e : new IOException(e)));
+            }
+
+            @Override
+            public void cancelled() {
+                complete(future, () -> future.completeExceptionally(
+                    new IOException("The request was cancelled.")));
+            }
+        });
+        // Aborting the request, ie. the slower of two hedged requests, 
+        // cancels the exchange.
+        request.setCancellable(() -> response.cancel(true));
+        return future;
+    }
+
+    /**
+     * Complete the future off the I/O thread.  If the transport is closing
+     * the future is completed on the calling thread instead.
+     */
+    private void complete(CompletableFuture<CloseableHttpResponse> future,
+        Runnable completion) {
+
+        try {
+            callbackExecutor.execute(completion);
+        } catch (RejectedExecutionException e) {
+            completion.run();
+        }
+    }
+
+    @Override
+    public boolean isAsync() {
+        return true;
+    }
+
+    @Override
+    public PoolStats getPoolStats() {
+        org.apache.hc.core5.pool.PoolStats stats = connectionManager.getTotalStats();
+        return new PoolStats(stats.getLeased(), stats.getPending(),
+            stats.getAvailable(), stats.getMax());
+    }
+
+    @Override
+    public void close() {
+        client.close(CloseMode.GRACEFUL);
+        callbackExecutor.shutdown();
+    }
+
+    /**
+     * Convert the timeouts of a request.  The socket timeout is the response
+     * timeout of the async client.
+     */
+    private RequestConfig toRequestConfig(
+        org.apache.http.client.config.RequestConfig config) {
+
+        RequestConfig.Builder builder = RequestConfig.custom()
+            .setDefaultKeepAlive(keepAliveMillis, TimeUnit.MILLISECONDS);
+        if (config.getConnectTimeout() > 0) {
+            builder.setConnectTimeout(Timeout.ofMilliseconds(config.getConnectTimeout()));
+        }
+        if (config.getConnectionRequestTimeout() > 0) {
+            builder.setConnectionRequestTimeout(
+                Timeout.ofMilliseconds(config.getConnectionRequestTimeout()));
+        }
+        if (config.getSocketTimeout() > 0) {
+            builder.setResponseTimeout(Timeout.ofMilliseconds(config.getSocketTimeout()));
+        }
+        return builder.build();
+    }
+
+    private static SimpleHttpRequest toSimpleRequest(HttpRequestBase request)
+        throws IOException {
+
+        SimpleHttpRequest simpleRequest =
+            SimpleHttpRequest.create(request.getMethod(), request.getURI());
+        for (Header header : request.getAllHeaders()) {
+            // The content type is sent with the body.
+            if (!"Content-Type".equalsIgnoreCase(header.getName())) {
+                simpleRequest.addHeader(header.getName(), header.getValue());
+            }
+        }
+
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest)request).getEntity();
+            if (entity != null) {
+                Header contentType = request.getFirstHeader("Content-Type");
+                simpleRequest.setBody(EntityUtils.toByteArray(entity),
+                    org.apache.hc.core5.http.ContentType.parse(contentType == null
+                        ? "application/json" : contentType.getValue()));
+            }
+        }
+        return simpleRequest;
+    }
+
+    private static CloseableHttpResponse toResponse(SimpleHttpResponse response) {
+        ProtocolVersion version = HttpVersion.HTTP_2.equals(response.getVersion())
+            ? HTTP_2 : org.apache.http.HttpVersion.HTTP_1_1;
+        BufferedResponse bufferedResponse = new BufferedResponse(version,
+            response.getCode(), response.getReasonPhrase());
+
+        for (org.apache.hc.core5.http.Header header : response.getHeaders()) {
+            bufferedResponse.addHeader(header.getName(), header.getValue());
+        }
+
+        byte[] body = response.getBodyBytes();
+        if (body != null) {
+            org.apache.hc.core5.http.ContentType contentType = response.getContentType();
+            bufferedResponse.setEntity(new ByteArrayEntity(body, contentType == null
+                ? ContentType.APPLICATION_JSON : ContentType.parse(contentType.toString())));
+        }
+        return bufferedResponse;
+    }
+
+    /**
+     * A response that has been read fully so there is nothing to release.
+     */
+    private static class BufferedResponse extends BasicHttpResponse
+        implements CloseableHttpResponse {
+
+        BufferedResponse(ProtocolVersion version, int code, String reason) {
+            super(version, code, reason);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
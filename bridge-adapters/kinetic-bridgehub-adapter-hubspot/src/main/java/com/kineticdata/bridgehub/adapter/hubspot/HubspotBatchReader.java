@@ -0,0 +1,187 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces concurrent lookups by id into HubSpot batch read requests.
+ *
+ * Lookups for the same object type and properties that arrive within the
+ * batch window are collected and sent as a single
+ * POST /crm/v3/objects/{type}/batch/read.  A batch is sent early once it
+ * reaches the batch size.  Each caller waits for its own object.
+ */
+public class HubspotBatchReader implements AutoCloseable {
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(HubspotBatchReader.class);
+
+    /** HubSpot accepts at most 100 inputs per batch read. */
+    public static final int MAX_BATCH_SIZE = 100;
+
+    private final HubspotApiHelper apiHelper;
+    private final long windowMillis;
+    private final int batchSize;
+
+    private final Map<String, Batch> pending = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService executor;
+
+    /**
+     * @param apiHelper
+     * @param windowMillis how long the first lookup of a batch waits for more
+     * @param batchSize number of ids that causes a batch to be sent early
+     */
+    public HubspotBatchReader(HubspotApiHelper apiHelper, long windowMillis,
+        int batchSize) {
+
+        this.apiHelper = apiHelper;
+        this.windowMillis = windowMillis;
+        this.batchSize = Math.max(1, Math.min(batchSize, MAX_BATCH_SIZE));
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(
+            HubspotAdapter.daemonThreadFactory("hubspot-batch-timer-"));
+        this.executor = Executors.newCachedThreadPool(
+            HubspotAdapter.daemonThreadFactory("hubspot-batch-"));
+    }
+
+    /**
+     * Read an object by id.
+     *
+     * @param objectType HubSpot object type, ie. contacts
+     * @param id
+     * @param properties properties to return, the HubSpot defaults if empty
+     * @return the object or null if it does not exist
+     * @throws BridgeError
+     */
+    public JSONObject read(String objectType, String id, List<String> properties)
+        throws BridgeError {
+
+        String key = objectType + "|" + String.join(",", properties);
+        CompletableFuture<JSONObject> future;
+        Batch full = null;
+
+        synchronized (pending) {
+            Batch batch = pending.get(key);
+            if (batch == null) {
+                batch = new Batch(objectType, properties);
+                pending.put(key, batch);
+                Batch scheduled = batch;
+                scheduler.schedule(() -> dispatch(key, scheduled), windowMillis,
+                    TimeUnit.MILLISECONDS);
+            }
+            future = batch.add(id);
+            if (batch.size() >= batchSize) {
+                pending.remove(key);
+                full = batch;
+            }
+        }
+
+        // A full batch is sent by the caller that filled it.
+        if (full != null) {
+            full.execute();
+        }
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting for a batch read.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BridgeError) {
+                throw (BridgeError)e.getCause();
+            }
+            throw new BridgeError("There was an issue with the batch read.",
+                e.getCause());
+        }
+    }
+
+    private void dispatch(String key, Batch batch) {
+        synchronized (pending) {
+            // The batch may already have been sent because it was full.
+            if (!pending.remove(key, batch)) {
+                return;
+            }
+        }
+        executor.execute(batch.task);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        executor.shutdown();
+    }
+
+    /**
+     * The ids waiting to be read for an object type and set of properties.
+     */
+    private class Batch {
+        private final String objectType;
+        private final List<String> properties;
+        private final Map<String, CompletableFuture<JSONObject>> waiters =
+            new LinkedHashMap<>();
+        // The batch is counted in the metrics of the lookup that started it.
+        private final Runnable task = HubspotMetrics.propagate(this::execute);
+
+        Batch(String objectType, List<String> properties) {
+            this.objectType = objectType;
+            this.properties = properties;
+        }
+
+        CompletableFuture<JSONObject> add(String id) {
+            return waiters.computeIfAbsent(id, k -> new CompletableFuture<>());
+        }
+
+        int size() {
+            return waiters.size();
+        }
+
+        @SuppressWarnings("unchecked")
+        void execute() {
+            JSONArray inputs = new JSONArray();
+            waiters.keySet().forEach(id -> {
+                JSONObject input = new JSONObject();
+                input.put("id", id);
+                inputs.add(input);
+            });
+
+            JSONObject body = new JSONObject();
+            body.put("inputs", inputs);
+            if (!properties.isEmpty()) {
+                JSONArray propertyArray = new JSONArray();
+                propertyArray.addAll(properties);
+                body.put("properties", propertyArray);
+            }
+
+            LOGGER.debug("Reading {} {} in one batch.", waiters.size(), objectType);
+            try {
+                JSONObject response = apiHelper.executeRequest(
+                    String.format("/crm/v3/objects/%s/batch/read", objectType),
+                    body);
+
+                Map<String, JSONObject> results = new HashMap<>();
+                Object resultArray = response.get("results");
+                if (resultArray instanceof JSONArray) {
+                    for (Object result : (JSONArray)resultArray) {
+                        JSONObject object = (JSONObject)result;
+                        results.put(String.valueOf(object.get("id")), object);
+                    }
+                }
+                waiters.forEach((id, future) -> future.complete(results.get(id)));
+            } catch (BridgeError | RuntimeException e) {
+                waiters.values().forEach(future -> future.completeExceptionally(e));
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds the number of concurrent bridge requests per structure.
+ *
+ * When HubSpot is slow for one structure, ie. searches of a large object
+ * type, only that structure's permits are held by waiting requests.  Requests
+ * for other structures, and the bridgehub threads serving other adapters,
+ * are not queued behind them.  A request that can not get a permit within the
+ * max wait fails instead of waiting.
+ */
+public class HubspotBulkhead {
+
+    private final int maxConcurrent;
+    private final long maxWaitMillis;
+    private final ConcurrentMap<String, Semaphore> permits =
+        new ConcurrentHashMap<>();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param maxConcurrent requests per structure that run at the same time
+     * @param maxWaitMillis longest a request waits for a permit
+     */
+    public HubspotBulkhead(int maxConcurrent, long maxWaitMillis) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Run a request once the structure has a free permit.
+     *
+     * @param <T>
+     * @param structure
+     * @param request
+     * @return the result of the request
+     * @throws BridgeError if the structure is still full after the max wait
+     */
+    public <T> T execute(String structure, HubspotCache.Loader<T> request)
+        throws BridgeError {
+
+        Semaphore semaphore = permits.computeIfAbsent(structure,
+            key -> new Semaphore(maxConcurrent));
+        try {
+            if (!semaphore.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                throw new BridgeError(String.format("Too many concurrent %s "
+                    + "requests, at most %d are sent to HubSpot at a time.",
+                    structure, maxConcurrent));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting to send the request.", e);
+        }
+        try {
+            return request.load();
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * @return the number of requests that failed because their structure was
+     *   full
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,372 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+/**
+ * A size bounded cache with a time to live per entry.
+ *
+ * Entries are spread across independently locked segments so that concurrent
+ * bridge requests only contend when they hash to the same segment.  Each
+ * segment evicts its least recently used entries once its share of the total
+ * weight is exceeded.  Weight is defined by the Weigher passed to the cache,
+ * ie. an approximate number of bytes or simply 1 per entry.  An entry that
+ * weighs more than a segment's share is not kept, rather than evicting every
+ * other entry of its segment.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class HubspotCache<K, V> {
+
+    /**
+     * Calculates the weight of an entry.
+     */
+    @FunctionalInterface
+    public static interface Weigher<K, V> {
+        long weigh(K key, V value);
+    }
+
+    /**
+     * Loads a value on a cache miss.
+     */
+    @FunctionalInterface
+    public static interface Loader<V> {
+        V load() throws BridgeError;
+    }
+
+    private static final int DEFAULT_SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final Weigher<K, V> weigher;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public HubspotCache(long maxWeight, Weigher<K, V> weigher) {
+        this(maxWeight, DEFAULT_SEGMENTS, weigher);
+    }
+
+    @SuppressWarnings("unchecked")
+    public HubspotCache(long maxWeight, int segmentCount, Weigher<K, V> weigher) {
+        this.weigher = weigher;
+        this.segments = new Segment[segmentCount];
+        // Every segment gets an equal share of the weight, with room for at
+        // least one entry.
+        long segmentWeight = Math.max(1, maxWeight / segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(segmentWeight);
+        }
+    }
+
+    /**
+     * Get the cached value or null if there is no live entry for the key.
+     *
+     * @param key
+     * @return
+     */
+    public V get(K key) {
+        V value = segmentFor(key).get(key, System.nanoTime());
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Get the cached value or load it and cache the result.  Loading happens
+     * outside of any lock so a slow load does not block other keys.
+     *
+     * @param key
+     * @param ttlMillis
+     * @param loader
+     * @return
+     * @throws BridgeError
+     */
+    public V get(K key, long ttlMillis, Loader<V> loader) throws BridgeError {
+        V value = get(key);
+        if (value == null) {
+            value = loader.load();
+            put(key, value, ttlMillis);
+        }
+        return value;
+    }
+
+    public void put(K key, V value, long ttlMillis) {
+        if (value == null || ttlMillis <= 0) {
+            return;
+        }
+        long weight = weigher.weigh(key, value);
+        long expiresAt = System.nanoTime() + ttlMillis * 1000000L;
+        evictions.add(segmentFor(key).put(key, value, weight, expiresAt));
+    }
+
+    /**
+     * Cache the value unless there is a live entry for the key, atomically so
+     * that concurrent callers share one value.
+     *
+     * @param key
+     * @param value
+     * @param ttlMillis
+     * @return the cached value, or the value if it was not cached
+     */
+    public V putIfAbsent(K key, V value, long ttlMillis) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            V existing = segment.get(key, System.nanoTime());
+            if (existing != null) {
+                return existing;
+            }
+            put(key, value, ttlMillis);
+            return value;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        segmentFor(key).remove(key);
+    }
+
+    /**
+     * Remove every entry whose key matches the predicate.
+     *
+     * @param predicate
+     */
+    public void invalidateAll(Predicate<K> predicate) {
+        invalidateAll((key, value) -> predicate.test(key));
+    }
+
+    /**
+     * Remove every entry whose key and value match the predicate.
+     *
+     * @param predicate
+     */
+    public void invalidateAll(BiPredicate<K, V> predicate) {
+        for (Segment<K, V> segment : segments) {
+            segment.removeIf(predicate);
+        }
+    }
+
+    public void invalidateAll() {
+        invalidateAll(key -> true);
+    }
+
+    /**
+     * Replace the value of every entry whose key matches the predicate.  The
+     * entries keep their time to live.  An update that returns null removes
+     * the entry.
+     *
+     * @param predicate
+     * @param updater
+     */
+    public void updateAll(Predicate<K> predicate, BiFunction<K, V, V> updater) {
+        for (Segment<K, V> segment : segments) {
+            segment.updateIf(predicate, updater, weigher);
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment<K, V> segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long weight() {
+        long weight = 0;
+        for (Segment<K, V> segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d, weight=%d, hits=%d, misses=%d, "
+            + "evictions=%d", size(), weight(), getHitCount(), getMissCount(),
+            getEvictionCount());
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        // Spread the high bits so that similar keys land in different segments.
+        hash ^= (hash >>> 16);
+        return segments[(hash & 0x7fffffff) % segments.length];
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long weight;
+        final long expiresAt;
+
+        Entry(V value, long weight, long expiresAt) {
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * An access ordered map guarded by its own lock.
+     */
+    private static class Segment<K, V> {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<K, Entry<V>> map =
+            new LinkedHashMap<>(16, 0.75f, true);
+        private final long maxWeight;
+        private long weight;
+
+        Segment(long maxWeight) {
+            this.maxWeight = maxWeight;
+        }
+
+        V get(K key, long now) {
+            lock.lock();
+            try {
+                Entry<V> entry = map.get(key);
+                if (entry == null) {
+                    return null;
+                }
+                if (entry.expiresAt - now <= 0) {
+                    map.remove(key);
+                    weight -= entry.weight;
+                    return null;
+                }
+                return entry.value;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return the number of entries evicted to make room
+         */
+        int put(K key, V value, long entryWeight, long expiresAt) {
+            lock.lock();
+            try {
+                if (entryWeight > maxWeight) {
+                    // The stale entry must not outlive the value replacing it.
+                    Entry<V> previous = map.remove(key);
+                    if (previous != null) {
+                        weight -= previous.weight;
+                    }
+                    return 0;
+                }
+                Entry<V> previous = map.put(key,
+                    new Entry<>(value, entryWeight, expiresAt));
+                if (previous != null) {
+                    weight -= previous.weight;
+                }
+                weight += entryWeight;
+
+                int evicted = 0;
+                Iterator<Map.Entry<K, Entry<V>>> iterator =
+                    map.entrySet().iterator();
+                // Least recently used entries are first in the iteration order.
+                while (weight > maxWeight && iterator.hasNext()) {
+                    Map.Entry<K, Entry<V>> eldest = iterator.next();
+                    iterator.remove();
+                    weight -= eldest.getValue().weight;
+                    evicted++;
+                }
+                return evicted;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(K key) {
+            lock.lock();
+            try {
+                Entry<V> entry = map.remove(key);
+                if (entry != null) {
+                    weight -= entry.weight;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void removeIf(BiPredicate<K, V> predicate) {
+            lock.lock();
+            try {
+                Iterator<Map.Entry<K, Entry<V>>> iterator =
+                    map.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<K, Entry<V>> entry = iterator.next();
+                    if (predicate.test(entry.getKey(), entry.getValue().value)) {
+                        iterator.remove();
+                        weight -= entry.getValue().weight;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void updateIf(Predicate<K> predicate, BiFunction<K, V, V> updater,
+            Weigher<K, V> weigher) {
+
+            lock.lock();
+            try {
+                for (Map.Entry<K, Entry<V>> entry : map.entrySet()) {
+                    if (predicate.test(entry.getKey())) {
+                        Entry<V> previous = entry.getValue();
+                        V value = updater.apply(entry.getKey(), previous.value);
+                        long entryWeight = value == null
+                            ? 0 : weigher.weigh(entry.getKey(), value);
+                        weight += entryWeight - previous.weight;
+                        entry.setValue(value == null ? null
+                            : new Entry<>(value, entryWeight, previous.expiresAt));
+                    }
+                }
+                map.values().removeIf(entry -> entry == null);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return map.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long weight() {
+            lock.lock();
+            try {
+                return weight;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops sending requests to HubSpot while it is failing or slow.
+ *
+ * The outcomes of the last requests are kept in a sliding window.  When the
+ * window has enough requests and the percentage that failed, or that took
+ * longer than the slow call duration, reaches its threshold the circuit opens
+ * and requests fail immediately instead of holding a bridgehub thread.  After
+ * the open duration a few probe requests are let through (half open); the
+ * circuit closes if they all succeed and opens again if any of them fails.
+ * If the probes have not all reported within another open duration, ie. a
+ * probe was never sent, new probes are let through.
+ *
+ * A failure is a request that could not be sent or timed out, or a 429 or 5xx
+ * response.  Other error responses, ie. a 404, mean HubSpot is working.
+ */
+public class HubspotCircuitBreaker {
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(HubspotCircuitBreaker.class);
+
+    public static final int DEFAULT_WINDOW_SIZE = 50;
+    public static final int DEFAULT_MIN_CALLS = 20;
+    public static final int DEFAULT_PROBES = 3;
+    public static final long DEFAULT_SLOW_CALL_MILLIS = 10000;
+    public static final long DEFAULT_OPEN_MILLIS = 30000;
+
+    public static enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final double failureRate;
+    private final double slowCallRate;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int minCalls;
+    private final int probes;
+
+    // Ring of the last outcomes, guarded by this.
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private long probingAt;
+    private int probesStarted;
+    private int probesSucceeded;
+    private long rejected;
+
+    /**
+     * @param failureRate percentage of failed requests that opens the circuit,
+     *   0 to ignore failures
+     * @param slowCallRate percentage of slow requests that opens the circuit,
+     *   0 to ignore slow requests
+     * @param slowCallMillis requests that take longer than this are slow
+     * @param openMillis how long the circuit stays open before probing
+     */
+    public HubspotCircuitBreaker(double failureRate, double slowCallRate,
+        long slowCallMillis, long openMillis) {
+
+        this(failureRate, slowCallRate, slowCallMillis, openMillis,
+            DEFAULT_WINDOW_SIZE, DEFAULT_MIN_CALLS, DEFAULT_PROBES);
+    }
+
+    public HubspotCircuitBreaker(double failureRate, double slowCallRate,
+        long slowCallMillis, long openMillis, int windowSize, int minCalls,
+        int probes) {
+
+        this.failureRate = failureRate;
+        this.slowCallRate = slowCallRate;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.minCalls = Math.min(minCalls, windowSize);
+        this.probes = probes;
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+    }
+
+    /**
+     * Ask to send a request.  Every permitted request must be followed by a
+     * call to record.
+     *
+     * @return false if the circuit is open and the request must not be sent
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.nanoTime();
+        if (state == State.OPEN && now - openedAt >= openNanos) {
+            LOGGER.info("Probing HubSpot after the circuit was open for {}ms.",
+                TimeUnit.NANOSECONDS.toMillis(openNanos));
+            startProbing(now);
+        } else if (state == State.HALF_OPEN && probesStarted >= probes
+            && now - probingAt >= openNanos) {
+            LOGGER.warn("Probing HubSpot again because {} probes did not report"
+                + " within {}ms.", probesStarted - probesSucceeded,
+                TimeUnit.NANOSECONDS.toMillis(openNanos));
+            startProbing(now);
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && probesStarted < probes) {
+            probesStarted++;
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    /**
+     * Record the outcome of a permitted request.
+     *
+     * @param nanos how long the request took
+     * @param failure true if HubSpot failed the request
+     */
+    public synchronized void record(long nanos, boolean failure) {
+        boolean isSlow = nanos > slowCallNanos;
+        if (state == State.HALF_OPEN) {
+            if (failure || isSlow) {
+                open("a probe request " + (failure ? "failed" : "was slow"));
+            } else if (++probesSucceeded >= probes) {
+                LOGGER.info("Closing the circuit after {} successful probes.",
+                    probesSucceeded);
+                state = State.CLOSED;
+                clear();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // A request sent before the circuit opened.
+            return;
+        }
+
+        if (calls == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            calls++;
+        }
+        failed[next] = failure;
+        slow[next] = isSlow;
+        failures += failure ? 1 : 0;
+        slowCalls += isSlow ? 1 : 0;
+        next = (next + 1) % failed.length;
+
+        if (calls >= minCalls) {
+            if (failureRate > 0 && failures * 100.0 / calls >= failureRate) {
+                open(String.format("%d of the last %d requests failed",
+                    failures, calls));
+            } else if (slowCallRate > 0
+                && slowCalls * 100.0 / calls >= slowCallRate) {
+                open(String.format("%d of the last %d requests were slow",
+                    slowCalls, calls));
+            }
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return true if the circuit is open or only letting probes through
+     */
+    public synchronized boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
+    /**
+     * @return the number of requests that were not sent because the circuit
+     *   was open
+     */
+    public synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    private void startProbing(long now) {
+        state = State.HALF_OPEN;
+        probingAt = now;
+        probesStarted = 0;
+        probesSucceeded = 0;
+    }
+
+    private void open(String reason) {
+        LOGGER.warn("Opening the circuit for {}ms because {}.",
+            TimeUnit.NANOSECONDS.toMillis(openNanos), reason);
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        clear();
+    }
+
+    private void clear() {
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+}
@@ -0,0 +1,104 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Blocking HTTP/1.1 transport over a pooled Apache HttpClient 4 client.
+ * 
+ * Connections to HubSpot are kept alive and reused instead of paying for a 
+ * new TCP and TLS handshake on every bridge request.  Each request in flight
+ * holds a thread and a connection.
+ */
+public class HubspotClassicTransport implements HubspotTransport {
+    private static final Logger LOGGER = 
+        LoggerFactory.getLogger(HubspotClassicTransport.class);
+    
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient client;
+    
+    /**
+     * @param maxConnections total number of pooled connections
+     * @param maxConnectionsPerRoute pooled connections to a single host
+     * @param keepAliveMillis how long an idle connection is kept alive when
+     *   the server does not send a Keep-Alive timeout
+     * @param idleTimeoutMillis idle connections older than this are evicted
+     *   from the pool by a background thread
+     */
+    public HubspotClassicTransport(int maxConnections, int maxConnectionsPerRoute,
+        long keepAliveMillis, long idleTimeoutMillis) {
+        
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        // Stale connections are checked before reuse once they have been idle
+        // for a short period rather than on every lease.
+        connectionManager.setValidateAfterInactivity(2000);
+        
+        client = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setKeepAliveStrategy(keepAliveStrategy(keepAliveMillis))
+            .evictExpiredConnections()
+            .evictIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS)
+            .build();
+    }
+    
+    /**
+     * Use the Keep-Alive header sent by the server if there is one, otherwise 
+     * fall back to the configured keep alive time.
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy(
+        long keepAliveMillis) {
+        
+        return (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE
+                .getKeepAliveDuration(response, context);
+            return duration > 0 ? duration : keepAliveMillis;
+        };
+    }
+    
+    /**
+     * Send the request on the calling thread.  The returned future is 
+     * already complete.
+     */
+    @Override
+    public CompletableFuture<CloseableHttpResponse> execute(HttpRequestBase request) {
+        CompletableFuture<CloseableHttpResponse> future = new CompletableFuture<>();
+        try {
+            future.complete(client.execute(request));
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+    
+    @Override
+    public boolean isAsync() {
+        return false;
+    }
+    
+    @Override
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+    
+    @Override
+    public void close() {
+        try {
+            client.close();
+        } catch (IOException e) {
+            LOGGER.warn("There was an issue closing the http client", e);
+        }
+    }
+}
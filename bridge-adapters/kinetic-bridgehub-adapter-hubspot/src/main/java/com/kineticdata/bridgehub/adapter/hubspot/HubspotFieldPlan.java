@@ -0,0 +1,153 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.JsonPathException;
+import com.jayway.jsonpath.PathNotFoundException;
+import com.kineticdata.bridgehub.adapter.Record;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A compiled plan for extracting the bridge fields from response objects.
+ *
+ * The fields are compiled once and the plan is reused for every record in a
+ * response.  Plain fields are a key lookup, dot separated JsonPath fields such
+ * as $.properties.name walk the nested maps directly and all other JsonPath
+ * fields are evaluated with a pre-compiled JsonPath.
+ */
+public class HubspotFieldPlan {
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(HubspotFieldPlan.class);
+
+    // ie. $.properties.name
+    private static final Pattern SIMPLE_PATH =
+        Pattern.compile("\\$(\\.[A-Za-z0-9_\\-]+)+");
+
+    private final List<String> fields;
+    private final Extractor[] extractors;
+
+    private HubspotFieldPlan(List<String> fields, Extractor[] extractors) {
+        this.fields = fields;
+        this.extractors = extractors;
+    }
+
+    /**
+     * Compile the fields.  Invalid JsonPath fields fail here rather than on
+     * the first record.
+     *
+     * @param fields
+     * @return
+     * @throws JsonPathException if a JsonPath field is invalid
+     */
+    public static HubspotFieldPlan compile(List<String> fields) {
+        Extractor[] extractors = new Extractor[fields.size()];
+        for (int i = 0; i < extractors.length; i++) {
+            extractors[i] = compileField(fields.get(i));
+        }
+        return new HubspotFieldPlan(fields, extractors);
+    }
+
+    public List<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Build a Record.
+     *
+     * @param jsonobj
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public Record buildRecord(JSONObject jsonobj) {
+        JSONObject obj = new JSONObject();
+        for (int i = 0; i < extractors.length; i++) {
+            obj.put(fields.get(i), extractors[i].extract(jsonobj));
+        }
+        return new Record(obj, fields);
+    }
+
+    private static Extractor compileField(String field) {
+        // either use JsonPath or just add the field value.  We're assuming
+        // all JsonPath usages will begin with $[ or $..
+        if (field.startsWith("$.") || field.startsWith("$[")) {
+            JsonPathExtractor jsonPath = new JsonPathExtractor(field);
+            if (SIMPLE_PATH.matcher(field).matches()) {
+                return new MapPathExtractor(field.substring(2).split("\\."),
+                    jsonPath);
+            }
+            return jsonPath;
+        }
+        return jsonobj -> jsonobj.get(field);
+    }
+
+    @FunctionalInterface
+    private static interface Extractor {
+        Object extract(JSONObject jsonobj);
+    }
+
+    /**
+     * Walks nested maps by key.  A missing key anywhere along the path is a
+     * null value.  If the path runs into something other than a map the
+     * JsonPath is evaluated instead so that the behavior (and any error) is
+     * the same as JsonPath.
+     */
+    private static class MapPathExtractor implements Extractor {
+        private final String[] keys;
+        private final JsonPathExtractor fallback;
+
+        MapPathExtractor(String[] keys, JsonPathExtractor fallback) {
+            this.keys = keys;
+            this.fallback = fallback;
+        }
+
+        @Override
+        public Object extract(JSONObject jsonobj) {
+            Object value = jsonobj;
+            for (String key : keys) {
+                if (!(value instanceof Map)) {
+                    return fallback.extract(jsonobj);
+                }
+                value = ((Map)value).get(key);
+                if (value == null) {
+                    return null;
+                }
+            }
+            return value;
+        }
+    }
+
+    private static class JsonPathExtractor implements Extractor {
+        private final String field;
+        private final JsonPath path;
+
+        JsonPathExtractor(String field) {
+            this.field = field;
+            this.path = JsonPath.compile(field);
+        }
+
+        @Override
+        public Object extract(JSONObject jsonobj) {
+            try {
+                return path.read(jsonobj);
+            } catch (PathNotFoundException e) {
+                // if field is a valid path but object is missing the property
+                // return null for field.  This is consistent with existing
+                // adapter behavior.
+                if (e.getMessage().startsWith("Missing property")) {
+                    LOGGER.debug(String.format("%s was not found, returning"
+                        + " null value", field), e);
+                    return null;
+                }
+                throw new JsonPathException(String.format("There was an issue"
+                    + " reading %s", field), e);
+            } catch (JsonPathException e) {
+                throw new JsonPathException(String.format("There was an issue"
+                    + " reading %s", field), e);
+            }
+        }
+    }
+}
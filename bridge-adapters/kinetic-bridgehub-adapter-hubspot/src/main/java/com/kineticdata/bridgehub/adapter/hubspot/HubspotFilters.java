@@ -0,0 +1,187 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * The filters of a qualification, compiled into a HubSpot search.
+ *
+ * Every qualification parameter that the adapter or HubSpot does not use
+ * itself is a filter on the property it is named after:
+ *
+ *   email=jane@acme.com              EQ
+ *   lifecyclestage=lead,customer     IN
+ *   createdate=2021-01-01..2021-02-01 BETWEEN
+ *   amount=1000..  and  amount=..1000 GTE and LTE
+ *   phone=                           NOT_HAS_PROPERTY
+ *   phone                            HAS_PROPERTY
+ *
+ * A backslash escapes the character after it, so name=Acme\, Inc. is an EQ
+ * and a literal backslash is written \\.
+ *
+ * The filters are ANDed in one filter group.  A query parameter is the text
+ * query of the search.
+ */
+public class HubspotFilters {
+
+    // Qualification parameters that are not filters.
+    public static final Set<String> RESERVED_PARAMETERS =
+        Collections.unmodifiableSet(new HashSet<>(Arrays.asList("id", "body",
+            "properties", "associations", "limit", "after", "archived",
+            "fetchAll", "maxRecords", "scan", "idProperty",
+            "propertiesWithHistory", "accessor")));
+
+    private static final String RANGE_SEPARATOR = "..";
+    private static final String VALUE_SEPARATOR = ",";
+
+    private final JSONArray filters = new JSONArray();
+    private String query;
+
+    /**
+     * Remove the filters, and the query, from the parameters.
+     *
+     * @param parameters the qualification parameters
+     * @return the filters that were removed
+     */
+    public static HubspotFilters extract(Map<String, String> parameters) {
+        HubspotFilters filters = new HubspotFilters();
+        Iterator<Entry<String, String>> iterator = parameters.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Entry<String, String> parameter = iterator.next();
+            if (RESERVED_PARAMETERS.contains(parameter.getKey())) {
+                continue;
+            }
+            String value = unescape(parameter.getValue());
+            if ("query".equals(parameter.getKey())) {
+                filters.query = value;
+            } else {
+                filters.filters.add(toFilter(parameter.getKey(), value));
+            }
+            iterator.remove();
+        }
+        return filters;
+    }
+
+    public boolean isEmpty() {
+        return filters.isEmpty() && query == null;
+    }
+
+    /**
+     * @param properties the unique properties of the object type
+     * @return the property and value of the filters if they are one EQ on a
+     *   unique property, null otherwise
+     */
+    public Entry<String, String> getUniqueLookup(Collection<String> properties) {
+        if (query != null || filters.size() != 1) {
+            return null;
+        }
+        JSONObject filter = (JSONObject)filters.get(0);
+        String property = (String)filter.get("propertyName");
+        if (!"EQ".equals(filter.get("operator")) || !properties.contains(property)) {
+            return null;
+        }
+        return new SimpleImmutableEntry<>(property, (String)filter.get("value"));
+    }
+
+    /**
+     * @return a search body with the filters and query
+     */
+    @SuppressWarnings("unchecked")
+    public JSONObject toBody() {
+        JSONObject body = new JSONObject();
+        if (!filters.isEmpty()) {
+            JSONObject group = new JSONObject();
+            group.put("filters", filters);
+            JSONArray groups = new JSONArray();
+            groups.add(group);
+            body.put("filterGroups", groups);
+        }
+        if (query != null) {
+            body.put("query", query);
+        }
+        return body;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject toFilter(String property, String value) {
+        JSONObject filter = new JSONObject();
+        filter.put("propertyName", property);
+        if (value == null) {
+            filter.put("operator", "HAS_PROPERTY");
+        } else if (value.isEmpty()) {
+            filter.put("operator", "NOT_HAS_PROPERTY");
+        } else if (indexOfSeparator(value, RANGE_SEPARATOR, 0) >= 0) {
+            int separator = indexOfSeparator(value, RANGE_SEPARATOR, 0);
+            String low = unescape(value.substring(0, separator).trim());
+            String high = unescape(value.substring(
+                separator + RANGE_SEPARATOR.length()).trim());
+            if (!low.isEmpty() && !high.isEmpty()) {
+                filter.put("operator", "BETWEEN");
+                filter.put("value", low);
+                filter.put("highValue", high);
+            } else {
+                filter.put("operator", low.isEmpty() ? "LTE" : "GTE");
+                filter.put("value", low.isEmpty() ? high : low);
+            }
+        } else if (indexOfSeparator(value, VALUE_SEPARATOR, 0) >= 0) {
+            JSONArray values = new JSONArray();
+            int start = 0;
+            int separator;
+            while ((separator = indexOfSeparator(value, VALUE_SEPARATOR, start)) >= 0) {
+                values.add(unescape(value.substring(start, separator).trim()));
+                start = separator + VALUE_SEPARATOR.length();
+            }
+            values.add(unescape(value.substring(start).trim()));
+            filter.put("operator", "IN");
+            filter.put("values", values);
+        } else {
+            filter.put("operator", "EQ");
+            filter.put("value", unescape(value));
+        }
+        return filter;
+    }
+
+    /**
+     * @return the index of the first separator from start that is not
+     *   escaped by a backslash, or -1
+     */
+    private static int indexOfSeparator(String value, String separator, int start) {
+        for (int i = start; i < value.length(); i++) {
+            if (value.charAt(i) == '\\') {
+                i++;
+            } else if (value.startsWith(separator, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parameter values are escaped for a JSON string by the qualification
+     * parser, the filter values are put in the body unescaped.  The escapes in
+     * the value itself are removed the same way once it has been split.
+     */
+    private static String unescape(String value) {
+        if (value == null || value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                c = value.charAt(++i);
+            }
+            unescaped.append(c);
+        }
+        return unescaped.toString();
+    }
+}
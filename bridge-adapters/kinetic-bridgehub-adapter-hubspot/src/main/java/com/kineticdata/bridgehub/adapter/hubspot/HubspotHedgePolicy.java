@@ -0,0 +1,102 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides when a GET that has not responded is sent a second time.
+ *
+ * The response times of GETs are tracked per bridge operation.  Once an
+ * operation has enough samples, a GET that has not responded within the
+ * configured percentile of its operation is hedged.  Hedges are paid for
+ * from a budget that earns a fraction of a hedge for every GET, so at most
+ * that fraction of the requests are sent twice even when HubSpot is slow
+ * for every request.
+ */
+public class HubspotHedgePolicy {
+    public static final double DEFAULT_PERCENTILE = 95;
+    // Response times needed before an operation is hedged.
+    public static final int DEFAULT_MIN_SAMPLES = 20;
+    // Hedges that can be saved up while HubSpot is fast.
+    private static final double MAX_BUDGET = 10;
+
+    private final double percentile;
+    private final double budgetRatio;
+    private final int minSamples;
+    private final ConcurrentMap<String, HubspotLatencyHistogram> latencies =
+        new ConcurrentHashMap<>();
+    private final LongAdder hedges = new LongAdder();
+    private double budget;
+
+    /**
+     * @param percentile a GET is hedged once it has taken longer than this
+     *   percentile of the response times of its operation, between 0 and 100
+     * @param budgetPercent most hedges sent per 100 GETs
+     */
+    public HubspotHedgePolicy(double percentile, double budgetPercent) {
+        this(percentile, budgetPercent, DEFAULT_MIN_SAMPLES);
+    }
+
+    public HubspotHedgePolicy(double percentile, double budgetPercent,
+        int minSamples) {
+
+        this.percentile = percentile;
+        this.budgetRatio = budgetPercent / 100;
+        this.minSamples = minSamples;
+    }
+
+    /**
+     * Record the response time of a GET and earn its share of the budget.
+     *
+     * @param operation the bridge operation, may be null
+     * @param nanos
+     */
+    public void record(String operation, long nanos) {
+        latencies.computeIfAbsent(key(operation),
+            key -> new HubspotLatencyHistogram()).record(nanos);
+        synchronized (this) {
+            budget = Math.min(MAX_BUDGET, budget + budgetRatio);
+        }
+    }
+
+    /**
+     * @param operation the bridge operation, may be null
+     * @return how long a GET waits for a response before it is hedged, -1 if
+     *   the operation does not have enough samples to be hedged
+     */
+    public long getDelayMillis(String operation) {
+        HubspotLatencyHistogram latency = latencies.get(key(operation));
+        if (latency == null || latency.getCount() < minSamples) {
+            return -1;
+        }
+        return Math.max(1, (long)Math.ceil(latency.getPercentileMillis(percentile)));
+    }
+
+    /**
+     * Spend a hedge from the budget.
+     *
+     * @return false if the budget is spent and the GET must not be hedged
+     */
+    public boolean tryAcquire() {
+        synchronized (this) {
+            if (budget < 1) {
+                return false;
+            }
+            budget -= 1;
+        }
+        hedges.increment();
+        return true;
+    }
+
+    /**
+     * @return the number of hedges sent
+     */
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    private static String key(String operation) {
+        return operation == null ? "" : operation;
+    }
+}
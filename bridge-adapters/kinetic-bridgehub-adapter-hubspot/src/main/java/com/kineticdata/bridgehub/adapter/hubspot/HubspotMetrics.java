@@ -0,0 +1,241 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The metrics of an adapter instance, published as MBeans under
+ * com.kineticdata.bridgehub.adapter.hubspot.
+ *
+ * Bridge operations are timed with record().  While an operation runs its
+ * metrics are the current metrics of the thread so that the api helper can
+ * count the HubSpot responses and bytes of the operation.  Work handed to
+ * other threads carries the current metrics with propagate().
+ *
+ * The MBeans are unregistered by close(), which the adapter calls when it is
+ * initialized again.  An adapter that is replaced without being closed can
+ * not be told, so the MBeans of metrics that were garbage collected are
+ * unregistered when the next metrics are created.
+ */
+public class HubspotMetrics implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HubspotMetrics.class);
+
+    public static final String DOMAIN = "com.kineticdata.bridgehub.adapter.hubspot";
+
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
+    private static final ThreadLocal<HubspotOperationMetrics> CURRENT =
+        new ThreadLocal<>();
+    // The registered MBeans of every instance, until they are unregistered.
+    private static final ReferenceQueue<HubspotMetrics> COLLECTED =
+        new ReferenceQueue<>();
+    private static final Set<Registrations> REGISTRATIONS =
+        ConcurrentHashMap.newKeySet();
+
+    private final String name = "hubspot-" + INSTANCES.incrementAndGet();
+    private final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    private final ConcurrentMap<String, HubspotOperationMetrics> operations =
+        new ConcurrentHashMap<>();
+    private final Set<ObjectName> registered = ConcurrentHashMap.newKeySet();
+    private ObjectName poolName;
+
+    public HubspotMetrics() {
+        unregisterCollected();
+        REGISTRATIONS.add(new Registrations(this));
+    }
+
+    /**
+     * Time a bridge operation.  The operation counts as an error if it throws.
+     *
+     * @param <T>
+     * @param structure
+     * @param operation count, retrieve or search
+     * @param loader the operation
+     * @return the result of the operation
+     * @throws BridgeError
+     */
+    public <T> T record(String structure, String operation,
+        HubspotCache.Loader<T> loader) throws BridgeError {
+
+        HubspotOperationMetrics metrics = get(structure, operation);
+        HubspotOperationMetrics previous = CURRENT.get();
+        CURRENT.set(metrics);
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = loader.load();
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(System.nanoTime() - start, failed);
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * Get the metrics of a structure and operation, registering the MBean the
+     * first time.
+     *
+     * @param structure
+     * @param operation
+     * @return
+     */
+    public HubspotOperationMetrics get(String structure, String operation) {
+        return operations.computeIfAbsent(structure + "|" + operation, key -> {
+            HubspotOperationMetrics metrics =
+                new HubspotOperationMetrics(structure, operation);
+            register(metrics, operationName(structure, operation));
+            return metrics;
+        });
+    }
+
+    /**
+     * Publish the connection pool usage of the api helper, replacing the
+     * helper of a previous initialization.
+     *
+     * @param apiHelper
+     */
+    public synchronized void registerPool(HubspotApiHelper apiHelper) {
+        unregister(poolName);
+        poolName = register(new HubspotPoolMetrics(apiHelper), String.format(
+            "%s:type=ConnectionPool,adapter=%s", DOMAIN, name));
+    }
+
+    /**
+     * @return the metrics of the bridge operation running on this thread or
+     *   null if there is none
+     */
+    public static HubspotOperationMetrics current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Wrap a task so that it runs with the current metrics of this thread.
+     *
+     * @param <T>
+     * @param task
+     * @return
+     */
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        HubspotOperationMetrics metrics = CURRENT.get();
+        return () -> {
+            HubspotOperationMetrics previous = CURRENT.get();
+            CURRENT.set(metrics);
+            try {
+                return task.call();
+            } finally {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    public static Runnable propagate(Runnable task) {
+        HubspotOperationMetrics metrics = CURRENT.get();
+        return () -> {
+            HubspotOperationMetrics previous = CURRENT.get();
+            CURRENT.set(metrics);
+            try {
+                task.run();
+            } finally {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * Unregister every MBean of the adapter instance.
+     */
+    @Override
+    public synchronized void close() {
+        poolName = null;
+        operations.clear();
+        registered.forEach(this::unregister);
+    }
+
+    /**
+     * Unregister the MBeans of the instances that were garbage collected
+     * without being closed.
+     */
+    private static void unregisterCollected() {
+        Reference<? extends HubspotMetrics> reference;
+        while ((reference = COLLECTED.poll()) != null) {
+            Registrations registrations = (Registrations)reference;
+            REGISTRATIONS.remove(registrations);
+            registrations.names.forEach(name -> unregister(registrations.server, name));
+        }
+    }
+
+    private String operationName(String structure, String operation) {
+        return String.format("%s:type=Operation,adapter=%s,structure=%s,"
+            + "operation=%s", DOMAIN, name, ObjectName.quote(structure), operation);
+    }
+
+    private ObjectName register(Object mbean, String objectName) {
+        // Metrics are still recorded if JMX is not available.
+        ObjectName registered = objectName(objectName);
+        if (registered == null) {
+            return null;
+        }
+        try {
+            server.registerMBean(mbean, registered);
+            this.registered.add(registered);
+            return registered;
+        } catch (JMException | SecurityException e) {
+            LOGGER.warn("Unable to register the {} MBean", objectName, e);
+            return null;
+        }
+    }
+
+    private void unregister(ObjectName objectName) {
+        if (objectName != null) {
+            registered.remove(objectName);
+            unregister(server, objectName);
+        }
+    }
+
+    private static void unregister(MBeanServer server, ObjectName objectName) {
+        try {
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException | SecurityException e) {
+            LOGGER.warn("Unable to unregister the {} MBean", objectName, e);
+        }
+    }
+
+    private static ObjectName objectName(String objectName) {
+        try {
+            return new ObjectName(objectName);
+        } catch (JMException e) {
+            LOGGER.warn("Invalid MBean name {}", objectName, e);
+            return null;
+        }
+    }
+
+    /**
+     * The MBeans registered by an instance, kept after the instance is
+     * collected.
+     */
+    private static class Registrations extends WeakReference<HubspotMetrics> {
+        private final MBeanServer server;
+        private final Set<ObjectName> names;
+
+        Registrations(HubspotMetrics metrics) {
+            super(metrics, COLLECTED);
+            this.server = metrics.server;
+            this.names = metrics.registered;
+        }
+    }
+}
@@ -0,0 +1,982 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local replica of HubSpot objects that answers count, retrieve and search
+ * without a request to HubSpot.
+ *
+ * Each object type is seeded with a full paged list and then kept up to date
+ * by searching for objects modified since the newest modified date already in
+ * the mirror.  Archived objects are removed by a periodic sweep of the
+ * archived list.  The objects are held in memory with secondary indexes on
+ * the configured properties and, if a directory is configured, written to a
+ * snapshot file per object type after every sync that changed something so
+ * that a restart only needs a delta sync.
+ *
+ * The mirror only answers a request when it can answer it exactly: the
+ * object type has synced within the max staleness, every filter, sort and
+ * requested property is mirrored and the paging token is its own.  Otherwise
+ * the methods return null and the request is sent to HubSpot.
+ */
+public class HubspotMirror implements AutoCloseable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HubspotMirror.class);
+
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 60000;
+    public static final long DEFAULT_MAX_STALENESS_MILLIS = 300000;
+    public static final List<String> DEFAULT_INDEXES = Arrays.asList("email", "domain");
+
+    // Paging tokens of the mirror are offsets with a prefix so that they are
+    // never mistaken for HubSpot tokens.
+    static final String TOKEN_PREFIX = "mirror-";
+
+    private static final int PAGE_SIZE = 100;
+    private static final int DEFAULT_LIMIT = 10;
+    // HubSpot search stops paging after this many results.
+    private static final int MAX_SEARCH_RESULTS = 10000;
+    // The archived list is swept every this many syncs.
+    private static final int ARCHIVED_SWEEP_SYNCS = 10;
+    private static final String SNAPSHOT_SUFFIX = ".jsonl";
+
+    // Properties HubSpot returns whether or not they are requested.
+    private static final Set<String> ALWAYS_RETURNED = new HashSet<>(Arrays.asList(
+        "hs_object_id", "createdate", "hs_lastmodifieddate", "lastmodifieddate"));
+    private static final Set<String> OPERATORS = new HashSet<>(Arrays.asList("EQ",
+        "NEQ", "IN", "NOT_IN", "HAS_PROPERTY", "NOT_HAS_PROPERTY", "GT", "GTE",
+        "LT", "LTE", "BETWEEN", "CONTAINS_TOKEN"));
+    // List parameters that the mirror can answer.
+    private static final Set<String> LIST_PARAMETERS = new HashSet<>(Arrays.asList(
+        "limit", "after", "properties"));
+
+    private final HubspotApiHelper apiHelper;
+    private final Map<String, Store> stores = new LinkedHashMap<>();
+    private final List<String> properties;
+    private final Set<String> mirroredProperties;
+    private final Path directory;
+    private final long syncIntervalMillis;
+    private final long maxStalenessMillis;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param apiHelper
+     * @param objectTypes object types to mirror, ie. companies
+     * @param properties properties to mirror, properties that an object type
+     *   does not have are ignored by HubSpot
+     * @param indexes properties with a secondary index
+     * @param directory directory of the snapshot files, null to only keep the
+     *   mirror in memory
+     * @param syncIntervalMillis time between delta syncs
+     * @param maxStalenessMillis the mirror does not answer for an object type
+     *   that has not synced within this time
+     */
+    public HubspotMirror(HubspotApiHelper apiHelper, Collection<String> objectTypes,
+        Collection<String> properties, Collection<String> indexes, Path directory,
+        long syncIntervalMillis, long maxStalenessMillis) {
+
+        this.apiHelper = apiHelper;
+        Set<String> allProperties = new LinkedHashSet<>(properties);
+        allProperties.addAll(indexes);
+        this.properties = new ArrayList<>(allProperties);
+        this.mirroredProperties = new HashSet<>(allProperties);
+        mirroredProperties.addAll(ALWAYS_RETURNED);
+        this.directory = directory;
+        this.syncIntervalMillis = syncIntervalMillis;
+        this.maxStalenessMillis = maxStalenessMillis;
+        for (String objectType : objectTypes) {
+            stores.put(objectType, new Store(objectType, indexes));
+        }
+    }
+
+    /**
+     * Load the snapshots and start syncing every object type in the
+     * background.
+     *
+     * @return this
+     */
+    public HubspotMirror start() {
+        scheduler = Executors.newScheduledThreadPool(1,
+            HubspotAdapter.daemonThreadFactory("hubspot-mirror-"));
+        for (Store store : stores.values()) {
+            if (directory != null) {
+                load(store);
+            }
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    sync(store.objectType, ++store.syncs % ARCHIVED_SWEEP_SYNCS == 0);
+                } catch (BridgeError | RuntimeException e) {
+                    LOGGER.warn("Unable to sync the {} mirror", store.objectType, e);
+                }
+            }, 0, syncIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        return this;
+    }
+
+    /**
+     * @param objectType
+     * @return true if the object type is mirrored and has synced within the
+     *   max staleness
+     */
+    public boolean isFresh(String objectType) {
+        Store store = stores.get(objectType);
+        return store != null && store.watermark != null
+            && System.currentTimeMillis() - store.syncedAt <= maxStalenessMillis;
+    }
+
+    /**
+     * Get an object by id.
+     *
+     * @param objectType
+     * @param id
+     * @param properties requested properties
+     * @return the object or null if the mirror can not answer
+     */
+    public JSONObject get(String objectType, String id, Collection<String> properties) {
+        if (!isFresh(objectType) || !mirroredProperties.containsAll(properties)) {
+            return null;
+        }
+        // An object that is not in the mirror may have been created since the
+        // last sync so HubSpot is asked.
+        JSONObject object = stores.get(objectType).objects().get(id);
+        return object == null ? null : project(object, properties);
+    }
+
+    /**
+     * Answer a list request, ie. GET /crm/v3/objects/companies?limit=100.
+     *
+     * @param objectType
+     * @param parameters query parameters of the request
+     * @return a response like HubSpot's or null if the mirror can not answer
+     */
+    @SuppressWarnings("unchecked")
+    public JSONObject list(String objectType, Map<String, String> parameters) {
+        if (!LIST_PARAMETERS.containsAll(parameters.keySet())) {
+            return null;
+        }
+        JSONObject body = new JSONObject();
+        if (parameters.containsKey("limit")) {
+            body.put("limit", parameters.get("limit"));
+        }
+        if (parameters.containsKey("after")) {
+            body.put("after", parameters.get("after"));
+        }
+        if (parameters.containsKey("properties")) {
+            JSONArray propertyArray = new JSONArray();
+            for (String property : parameters.get("properties").split(",")) {
+                propertyArray.add(property.trim());
+            }
+            body.put("properties", propertyArray);
+        }
+        JSONObject response = search(objectType, body);
+        if (response != null) {
+            response.remove("total");
+        }
+        return response;
+    }
+
+    /**
+     * Answer a search request, ie. POST /crm/v3/objects/companies/search.
+     *
+     * @param objectType
+     * @param body search request body
+     * @return a response like HubSpot's or null if the mirror can not answer
+     */
+    @SuppressWarnings("unchecked")
+    public JSONObject search(String objectType, JSONObject body) {
+        Store store = stores.get(objectType);
+        Integer offset = getOffset(body.get("after"));
+        // A page after a mirror page is answered even if the mirror has gone
+        // stale so that paging does not switch sources.
+        if (store == null || store.watermark == null || offset == null
+            || (offset == 0 && !isFresh(objectType)) || !canAnswer(body)) {
+            return null;
+        }
+
+        List<JSONObject> matches = match(store, body);
+        int limit = Math.min(PAGE_SIZE, body.get("limit") == null
+            ? DEFAULT_LIMIT : Integer.parseInt(String.valueOf(body.get("limit"))));
+        List<String> requested = toStrings(body.get("properties"));
+
+        JSONArray results = new JSONArray();
+        int end = Math.min(matches.size(), offset + limit);
+        for (int i = offset; i < end; i++) {
+            results.add(project(matches.get(i), requested));
+        }
+
+        JSONObject response = new JSONObject();
+        response.put("total", matches.size());
+        response.put("results", results);
+        if (end < matches.size()) {
+            JSONObject next = new JSONObject();
+            next.put("after", TOKEN_PREFIX + end);
+            JSONObject paging = new JSONObject();
+            paging.put("next", next);
+            response.put("paging", paging);
+        }
+        return response;
+    }
+
+    /**
+     * Count the objects matching a search request body.
+     *
+     * @param objectType
+     * @param body search request body
+     * @return the count or null if the mirror can not answer
+     */
+    public Integer count(String objectType, JSONObject body) {
+        if (!isFresh(objectType) || !canAnswer(body)) {
+            return null;
+        }
+        return match(stores.get(objectType), body).size();
+    }
+
+    /**
+     * @param objectType
+     * @return the number of mirrored objects
+     */
+    public int size(String objectType) {
+        Store store = stores.get(objectType);
+        return store == null ? 0 : store.objects().size();
+    }
+
+    /**
+     * Seed the object type or bring it up to date.
+     *
+     * @param objectType
+     * @param sweepArchived remove the objects that have been archived
+     * @throws BridgeError
+     */
+    void sync(String objectType, boolean sweepArchived) throws BridgeError {
+        Store store = stores.get(objectType);
+        synchronized (store) {
+            long started = System.currentTimeMillis();
+            boolean changed;
+            if (store.watermark == null) {
+                seed(store);
+                changed = true;
+            } else {
+                changed = syncModified(store);
+            }
+            if (sweepArchived) {
+                changed |= sweepArchived(store);
+            }
+            store.syncedAt = started;
+            if (changed && directory != null) {
+                save(store);
+            }
+            LOGGER.debug("Synced {} {} in {}ms.", store.objects().size(), objectType,
+                System.currentTimeMillis() - started);
+        }
+    }
+
+    /**
+     * Apply changes that are known ahead of the next sync, ie. from webhook
+     * events.  The changed objects are read with batch reads.
+     *
+     * @param objectType
+     * @param changedIds objects that were created or modified
+     * @param deletedIds objects that were deleted
+     * @throws BridgeError
+     */
+    @SuppressWarnings("unchecked")
+    public void apply(String objectType, Collection<String> changedIds,
+        Collection<String> deletedIds) throws BridgeError {
+
+        Store store = stores.get(objectType);
+        // Changes before the seed are part of the seed.
+        if (store == null || store.watermark == null) {
+            return;
+        }
+        synchronized (store) {
+            boolean changed = false;
+            for (String id : deletedIds) {
+                changed |= store.remove(id);
+            }
+
+            List<String> ids = new ArrayList<>(new LinkedHashSet<>(changedIds));
+            ids.removeAll(deletedIds);
+            String path = String.format("/crm/v3/objects/%s/batch/read", objectType);
+            for (int start = 0; start < ids.size(); start += PAGE_SIZE) {
+                List<String> batch = ids.subList(start,
+                    Math.min(ids.size(), start + PAGE_SIZE));
+                JSONArray inputs = new JSONArray();
+                for (String id : batch) {
+                    JSONObject input = new JSONObject();
+                    input.put("id", id);
+                    inputs.add(input);
+                }
+                JSONArray propertyArray = new JSONArray();
+                propertyArray.addAll(properties);
+                JSONObject body = new JSONObject();
+                body.put("inputs", inputs);
+                body.put("properties", propertyArray);
+
+                Set<String> missing = new HashSet<>(batch);
+                for (JSONObject object : getResults(apiHelper.executeRequest(path, body))) {
+                    changed |= store.put(object);
+                    missing.remove(String.valueOf(object.get("id")));
+                }
+                // Objects that were deleted since the event.
+                for (String id : missing) {
+                    changed |= store.remove(id);
+                }
+            }
+            if (changed && directory != null) {
+                save(store);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * SYNC
+     *--------------------------------------------------------------------------------------------*/
+
+    private void seed(Store store) throws BridgeError {
+        Map<String, JSONObject> objects = new HashMap<>();
+        String after = null;
+        do {
+            JSONObject page = apiHelper.executeRequest(listUrl(store.objectType,
+                after, false));
+            for (JSONObject object : getResults(page)) {
+                objects.put(String.valueOf(object.get("id")), object);
+            }
+            after = getAfter(page);
+        } while (after != null);
+
+        store.replaceAll(objects.values());
+        LOGGER.info("Seeded the {} mirror with {} objects.", store.objectType,
+            objects.size());
+    }
+
+    /**
+     * Search for the objects modified since the watermark, oldest first.
+     * Objects modified at the watermark are read again so that none are
+     * missed.
+     */
+    @SuppressWarnings("unchecked")
+    private boolean syncModified(Store store) throws BridgeError {
+        String modifiedProperty = getModifiedProperty(store.objectType);
+        String path = String.format("/crm/v3/objects/%s/search", store.objectType);
+        boolean changed = false;
+
+        while (true) {
+            String watermark = store.watermark;
+            int read = 0;
+            String after = null;
+            do {
+                JSONObject filter = new JSONObject();
+                filter.put("propertyName", modifiedProperty);
+                filter.put("operator", "GTE");
+                filter.put("value", watermark);
+                JSONArray filters = new JSONArray();
+                filters.add(filter);
+                JSONObject filterGroup = new JSONObject();
+                filterGroup.put("filters", filters);
+                JSONArray filterGroups = new JSONArray();
+                filterGroups.add(filterGroup);
+
+                JSONObject sort = new JSONObject();
+                sort.put("propertyName", modifiedProperty);
+                sort.put("direction", "ASCENDING");
+                JSONArray sorts = new JSONArray();
+                sorts.add(sort);
+
+                JSONArray propertyArray = new JSONArray();
+                propertyArray.addAll(properties);
+
+                JSONObject body = new JSONObject();
+                body.put("filterGroups", filterGroups);
+                body.put("sorts", sorts);
+                body.put("properties", propertyArray);
+                body.put("limit", PAGE_SIZE);
+                if (after != null) {
+                    body.put("after", after);
+                }
+
+                JSONObject page = apiHelper.executeRequest(path, body);
+                for (JSONObject object : getResults(page)) {
+                    changed |= store.put(object);
+                    read++;
+                }
+                after = getAfter(page);
+            } while (after != null && read < MAX_SEARCH_RESULTS);
+
+            if (after == null) {
+                return changed;
+            }
+            // The search stops at 10,000 results.  Search again from the
+            // newest object read, unless they all have the same modified date
+            // and only a full seed can catch up.
+            if (watermark.equals(store.watermark)) {
+                LOGGER.warn("More than {} {} were modified at {}, reseeding.",
+                    MAX_SEARCH_RESULTS, store.objectType, watermark);
+                seed(store);
+                return true;
+            }
+        }
+    }
+
+    private boolean sweepArchived(Store store) throws BridgeError {
+        boolean changed = false;
+        String after = null;
+        do {
+            JSONObject page = apiHelper.executeRequest(listUrl(store.objectType,
+                after, true));
+            for (JSONObject object : getResults(page)) {
+                changed |= store.remove(String.valueOf(object.get("id")));
+            }
+            after = getAfter(page);
+        } while (after != null);
+        return changed;
+    }
+
+    private String listUrl(String objectType, String after, boolean archived) {
+        StringBuilder url = new StringBuilder(String.format(
+            "/crm/v3/objects/%s?limit=%d", objectType, PAGE_SIZE));
+        if (archived) {
+            url.append("&archived=true");
+        } else if (!properties.isEmpty()) {
+            url.append("&properties=").append(encode(String.join(",", properties)));
+        }
+        if (after != null) {
+            url.append("&after=").append(encode(after));
+        }
+        return url.toString();
+    }
+
+    /**
+     * Contacts have their own name for the last modified date.
+     */
+    private static String getModifiedProperty(String objectType) {
+        return "contacts".equals(objectType) ? "lastmodifieddate" : "hs_lastmodifieddate";
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * SNAPSHOTS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * The snapshot is a header line with the watermark, sync time and
+     * properties followed by one object per line.
+     */
+    @SuppressWarnings("unchecked")
+    private void save(Store store) {
+        Path file = directory.resolve(store.objectType + SNAPSHOT_SUFFIX);
+        try {
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, store.objectType, ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp,
+                StandardCharsets.UTF_8)) {
+
+                JSONObject header = new JSONObject();
+                header.put("watermark", store.watermark);
+                header.put("syncedAt", store.syncedAt);
+                JSONArray propertyArray = new JSONArray();
+                propertyArray.addAll(properties);
+                header.put("properties", propertyArray);
+                writer.write(header.toJSONString());
+                writer.newLine();
+                for (JSONObject object : store.objects().values()) {
+                    writer.write(object.toJSONString());
+                    writer.newLine();
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to write the {} mirror snapshot", file, e);
+        }
+    }
+
+    /**
+     * Load the snapshot of the object type.  A snapshot of other properties
+     * is ignored and the object type is seeded.
+     */
+    private void load(Store store) {
+        Path file = directory.resolve(store.objectType + SNAPSHOT_SUFFIX);
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+        JSONParser parser = new JSONParser();
+        try (BufferedReader reader = Files.newBufferedReader(file,
+            StandardCharsets.UTF_8)) {
+
+            JSONObject header = (JSONObject)parser.parse(reader.readLine());
+            if (!properties.equals(toStrings(header.get("properties")))) {
+                LOGGER.info("The {} mirror properties changed, reseeding.", file);
+                return;
+            }
+            List<JSONObject> objects = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                objects.add((JSONObject)parser.parse(line));
+            }
+            store.replaceAll(objects);
+            store.watermark = (String)header.get("watermark");
+            store.syncedAt = ((Number)header.get("syncedAt")).longValue();
+            LOGGER.info("Loaded {} {} from the mirror snapshot.", objects.size(),
+                store.objectType);
+        } catch (IOException | ParseException | RuntimeException e) {
+            LOGGER.warn("Unable to read the {} mirror snapshot, reseeding.", file, e);
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * QUERIES
+     *--------------------------------------------------------------------------------------------*/
+
+    private boolean canAnswer(JSONObject body) {
+        Object query = body.get("query");
+        if (query != null && !String.valueOf(query).trim().isEmpty()) {
+            return false;
+        }
+        if (!mirroredProperties.containsAll(toStrings(body.get("properties")))) {
+            return false;
+        }
+        for (JSONObject group : toObjects(body.get("filterGroups"))) {
+            for (JSONObject filter : toObjects(group.get("filters"))) {
+                if (!mirroredProperties.contains((String)filter.get("propertyName"))
+                    || !OPERATORS.contains((String)filter.get("operator"))) {
+                    return false;
+                }
+            }
+        }
+        for (JSONObject sort : toObjects(body.get("sorts"))) {
+            if (!mirroredProperties.contains((String)sort.get("propertyName"))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The objects matching the filter groups, sorted.  The groups are OR'ed
+     * and the filters of a group AND'ed.
+     */
+    private List<JSONObject> match(Store store, JSONObject body) {
+        List<JSONObject> groups = toObjects(body.get("filterGroups"));
+        Predicate<JSONObject> matcher = groups.isEmpty() ? object -> true : object -> false;
+        // The indexes and objects of one reseed.
+        Contents contents = store.getContents();
+        Collection<JSONObject> candidates = new LinkedHashSet<>();
+        for (JSONObject group : groups) {
+            Predicate<JSONObject> all = object -> true;
+            for (JSONObject filter : toObjects(group.get("filters"))) {
+                all = all.and(filter(filter));
+            }
+            matcher = matcher.or(all);
+
+            // Use an index to narrow the objects of the group, a group
+            // without an indexed filter needs every object.
+            Collection<JSONObject> indexed = contents.lookup(toObjects(group.get("filters")));
+            if (indexed == null || candidates == null) {
+                candidates = null;
+            } else {
+                candidates.addAll(indexed);
+            }
+        }
+        if (candidates == null || groups.isEmpty()) {
+            candidates = contents.objects.values();
+        }
+
+        List<JSONObject> matches = new ArrayList<>();
+        for (JSONObject object : candidates) {
+            if (matcher.test(object)) {
+                matches.add(object);
+            }
+        }
+        matches.sort(comparator(toObjects(body.get("sorts"))));
+        return matches;
+    }
+
+    private static Predicate<JSONObject> filter(JSONObject filter) {
+        String property = (String)filter.get("propertyName");
+        String operator = (String)filter.get("operator");
+        String value = asString(filter.get("value"));
+        String highValue = asString(filter.get("highValue"));
+        List<String> values = toStrings(filter.get("values"));
+
+        return object -> {
+            String actual = getProperty(object, property);
+            switch (operator) {
+                case "EQ":
+                    return actual != null && actual.equalsIgnoreCase(value);
+                case "NEQ":
+                    return actual == null || !actual.equalsIgnoreCase(value);
+                case "IN":
+                    return actual != null && containsIgnoreCase(values, actual);
+                case "NOT_IN":
+                    return actual == null || !containsIgnoreCase(values, actual);
+                case "HAS_PROPERTY":
+                    return actual != null;
+                case "NOT_HAS_PROPERTY":
+                    return actual == null;
+                case "CONTAINS_TOKEN":
+                    return actual != null && actual.toLowerCase()
+                        .contains(value.replace("*", "").toLowerCase());
+                case "GT":
+                    return actual != null && compare(actual, value) > 0;
+                case "GTE":
+                    return actual != null && compare(actual, value) >= 0;
+                case "LT":
+                    return actual != null && compare(actual, value) < 0;
+                case "LTE":
+                    return actual != null && compare(actual, value) <= 0;
+                case "BETWEEN":
+                    return actual != null && compare(actual, value) >= 0
+                        && compare(actual, highValue) <= 0;
+                default:
+                    return false;
+            }
+        };
+    }
+
+    /**
+     * Sort by the sorts and then by id.
+     */
+    private static Comparator<JSONObject> comparator(List<JSONObject> sorts) {
+        Comparator<JSONObject> comparator = (a, b) -> 0;
+        for (JSONObject sort : sorts) {
+            String property = (String)sort.get("propertyName");
+            Comparator<JSONObject> next = (a, b) -> compareNullsLast(
+                getProperty(a, property), getProperty(b, property));
+            if ("DESCENDING".equals(sort.get("direction"))) {
+                next = next.reversed();
+            }
+            comparator = comparator.thenComparing(next);
+        }
+        return comparator.thenComparing((a, b) -> compare(
+            String.valueOf(a.get("id")), String.valueOf(b.get("id"))));
+    }
+
+    private static int compareNullsLast(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : 1) : -1;
+        }
+        return compare(a, b);
+    }
+
+    /**
+     * The order the adapter sorts values in, so a date can be compared with
+     * epoch milliseconds.
+     */
+    private static int compare(String a, String b) {
+        if (b == null) {
+            return 1;
+        }
+        return HubspotSortOrder.compareValues(a, b);
+    }
+
+    private static boolean containsIgnoreCase(List<String> values, String value) {
+        return values.stream().anyMatch(value::equalsIgnoreCase);
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * @return the offset of a mirror paging token, 0 if there is no token or
+     *   null if the token is HubSpot's
+     */
+    private static Integer getOffset(Object after) {
+        if (after == null || String.valueOf(after).isEmpty()) {
+            return 0;
+        }
+        String token = String.valueOf(after);
+        if (!token.startsWith(TOKEN_PREFIX)) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(token.substring(TOKEN_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Copy the object with only the requested properties, all of the
+     * mirrored properties if none are requested.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject project(JSONObject object, Collection<String> properties) {
+        JSONObject copy = new JSONObject(object);
+        if (!properties.isEmpty()) {
+            JSONObject objectProperties = (JSONObject)object.get("properties");
+            JSONObject projected = new JSONObject();
+            for (String property : properties) {
+                if (objectProperties.containsKey(property)) {
+                    projected.put(property, objectProperties.get(property));
+                }
+            }
+            for (String property : ALWAYS_RETURNED) {
+                if (objectProperties.containsKey(property)) {
+                    projected.put(property, objectProperties.get(property));
+                }
+            }
+            copy.put("properties", projected);
+        }
+        return copy;
+    }
+
+    private static String getProperty(JSONObject object, String property) {
+        Object properties = object.get("properties");
+        return properties instanceof Map
+            ? asString(((Map)properties).get(property)) : null;
+    }
+
+    private static List<JSONObject> getResults(JSONObject page) {
+        return toObjects(page.get("results"));
+    }
+
+    private static String getAfter(JSONObject page) {
+        Object paging = page.get("paging");
+        if (paging instanceof Map) {
+            Object next = ((Map)paging).get("next");
+            if (next instanceof Map && ((Map)next).get("after") != null) {
+                return String.valueOf(((Map)next).get("after"));
+            }
+        }
+        return null;
+    }
+
+    private static List<JSONObject> toObjects(Object array) {
+        List<JSONObject> objects = new ArrayList<>();
+        if (array instanceof List) {
+            for (Object object : (List)array) {
+                objects.add((JSONObject)object);
+            }
+        }
+        return objects;
+    }
+
+    private static List<String> toStrings(Object array) {
+        List<String> strings = new ArrayList<>();
+        if (array instanceof List) {
+            for (Object value : (List)array) {
+                strings.add(String.valueOf(value));
+            }
+        }
+        return strings;
+    }
+
+    private static String asString(Object value) {
+        return value == null ? null : String.valueOf(value);
+    }
+
+    private static String encode(String value) {
+        try {
+            return URLEncoder.encode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The mirrored objects of one object type and their secondary indexes.
+     * Objects are replaced, never modified, so readers can use them without
+     * locking.  A reseed builds new contents and swaps them in, so readers
+     * never see a partly filled store.
+     */
+    private static class Store {
+        private final String objectType;
+        private final String modifiedProperty;
+        private final Collection<String> indexedProperties;
+        private volatile Contents contents;
+        // Newest modified date in the mirror, null until seeded.
+        private volatile String watermark;
+        private volatile long syncedAt;
+        // Syncs run by the scheduler.
+        private int syncs;
+
+        Store(String objectType, Collection<String> indexedProperties) {
+            this.objectType = objectType;
+            this.modifiedProperty = getModifiedProperty(objectType);
+            this.indexedProperties = new ArrayList<>(indexedProperties);
+            this.contents = new Contents(this.indexedProperties);
+        }
+
+        /**
+         * @return the objects by id, readers that also use the indexes get
+         *   both from one {@link #getContents()}
+         */
+        Map<String, JSONObject> objects() {
+            return contents.objects;
+        }
+
+        Contents getContents() {
+            return contents;
+        }
+
+        /**
+         * @return true if the object is new or changed
+         */
+        synchronized boolean put(JSONObject object) {
+            JSONObject previous = contents.put(object);
+            String modified = getProperty(object, modifiedProperty);
+            if (modified != null && (watermark == null || compare(modified, watermark) > 0)) {
+                watermark = modified;
+            }
+            return previous == null || !previous.equals(object);
+        }
+
+        /**
+         * @return true if the object was mirrored
+         */
+        synchronized boolean remove(String id) {
+            return contents.remove(id) != null;
+        }
+
+        synchronized void replaceAll(Collection<JSONObject> replacements) {
+            Contents replaced = new Contents(indexedProperties);
+            // An empty object type is synced from the start of time.
+            String newest = Instant.EPOCH.toString();
+            for (JSONObject object : replacements) {
+                replaced.put(object);
+                String modified = getProperty(object, modifiedProperty);
+                if (modified != null && compare(modified, newest) > 0) {
+                    newest = modified;
+                }
+            }
+            contents = replaced;
+            watermark = newest;
+        }
+    }
+
+    /**
+     * The objects of a store by id and their ids by lower case value by
+     * indexed property.
+     */
+    private static class Contents {
+        private final Map<String, JSONObject> objects = new ConcurrentHashMap<>();
+        private final Map<String, Map<String, Set<String>>> indexes = new HashMap<>();
+
+        Contents(Collection<String> indexedProperties) {
+            for (String property : indexedProperties) {
+                indexes.put(property, new ConcurrentHashMap<>());
+            }
+        }
+
+        /**
+         * @return the object that was replaced, null if there was none
+         */
+        JSONObject put(JSONObject object) {
+            String id = String.valueOf(object.get("id"));
+            JSONObject previous = objects.put(id, object);
+            unindex(previous);
+            index(object);
+            return previous;
+        }
+
+        JSONObject remove(String id) {
+            JSONObject previous = objects.remove(id);
+            unindex(previous);
+            return previous;
+        }
+
+        /**
+         * The objects that can match a group of filters according to an
+         * index, or null if none of the filters are indexed.
+         */
+        Collection<JSONObject> lookup(List<JSONObject> filters) {
+            for (JSONObject filter : filters) {
+                String property = (String)filter.get("propertyName");
+                String operator = (String)filter.get("operator");
+                List<String> values;
+                if ("EQ".equals(operator)) {
+                    values = Collections.singletonList(asString(filter.get("value")));
+                } else if ("IN".equals(operator)) {
+                    values = toStrings(filter.get("values"));
+                } else {
+                    continue;
+                }
+
+                List<JSONObject> matches = new ArrayList<>();
+                if ("hs_object_id".equals(property)) {
+                    values.stream().map(objects::get).filter(o -> o != null)
+                        .forEach(matches::add);
+                    return matches;
+                }
+                Map<String, Set<String>> index = indexes.get(property);
+                if (index != null) {
+                    for (String value : values) {
+                        Set<String> ids = value == null ? null
+                            : index.get(value.toLowerCase());
+                        if (ids != null) {
+                            ids.stream().map(objects::get).filter(o -> o != null)
+                                .forEach(matches::add);
+                        }
+                    }
+                    return matches;
+                }
+            }
+            return null;
+        }
+
+        private void index(JSONObject object) {
+            String id = String.valueOf(object.get("id"));
+            indexes.forEach((property, index) -> {
+                String value = getProperty(object, property);
+                if (value != null) {
+                    index.computeIfAbsent(value.toLowerCase(),
+                        key -> ConcurrentHashMap.newKeySet()).add(id);
+                }
+            });
+        }
+
+        private void unindex(JSONObject object) {
+            if (object == null) {
+                return;
+            }
+            String id = String.valueOf(object.get("id"));
+            indexes.forEach((property, index) -> {
+                String value = getProperty(object, property);
+                if (value != null) {
+                    Set<String> ids = index.get(value.toLowerCase());
+                    if (ids != null) {
+                        ids.remove(id);
+                    }
+                }
+            });
+        }
+    }
+}
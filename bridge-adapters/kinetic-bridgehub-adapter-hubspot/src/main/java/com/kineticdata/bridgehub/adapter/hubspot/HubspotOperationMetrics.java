@@ -0,0 +1,135 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and counters of one structure and bridge operation, ie. Companies
+ * search.  Every method is safe to call from any thread without locking.
+ */
+public class HubspotOperationMetrics implements HubspotOperationMetricsMBean {
+    private final String structure;
+    private final String operation;
+
+    private final HubspotLatencyHistogram latency = new HubspotLatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder httpRequests = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder bytesReceived = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+
+    public HubspotOperationMetrics(String structure, String operation) {
+        this.structure = structure;
+        this.operation = operation;
+    }
+
+    /**
+     * Record a completed bridge request.
+     *
+     * @param nanos
+     * @param failed
+     */
+    public void record(long nanos, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * Record a response from HubSpot made for a bridge request.
+     *
+     * @param responseCode
+     */
+    public void recordHttpResponse(int responseCode) {
+        httpRequests.increment();
+        if (responseCode == 429) {
+            rateLimited.increment();
+        }
+    }
+
+    public void recordBytesReceived(long bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    /**
+     * Record a second request sent because the first was slow.
+     */
+    public void recordHedge() {
+        hedges.increment();
+    }
+
+    @Override
+    public String getStructure() {
+        return structure;
+    }
+
+    @Override
+    public String getOperation() {
+        return operation;
+    }
+
+    @Override
+    public long getRequestCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getHttpRequestCount() {
+        return httpRequests.sum();
+    }
+
+    @Override
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.getMeanMillis();
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latency.getPercentileMillis(50);
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latency.getPercentileMillis(99);
+    }
+
+    @Override
+    public double getP999Millis() {
+        return latency.getPercentileMillis(99.9);
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.getMaxMillis();
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        errors.reset();
+        httpRequests.reset();
+        rateLimited.reset();
+        bytesReceived.reset();
+        hedges.reset();
+    }
+}
@@ -0,0 +1,21 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+/**
+ * JMX view of the metrics of one structure and bridge operation.
+ */
+public interface HubspotOperationMetricsMBean {
+    String getStructure();
+    String getOperation();
+    long getRequestCount();
+    long getErrorCount();
+    long getHttpRequestCount();
+    long getRateLimitedCount();
+    long getBytesReceived();
+    long getHedgeCount();
+    double getMeanMillis();
+    double getP50Millis();
+    double getP99Millis();
+    double getP999Millis();
+    double getMaxMillis();
+    void reset();
+}
@@ -0,0 +1,122 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Remembers the paging tokens of list and search requests by the offset of
+ * the record each token starts at.
+ *
+ * HubSpot only pages forward from a token, so a request for the page at an
+ * offset would have to page through every record before it.  With the index
+ * the request resumes from the nearest known token before the offset.  The
+ * tokens are recorded as requests page through the results, so jumping back
+ * and forth between pages that were seen costs one HubSpot request.
+ *
+ * Offsets drift as objects are created and archived, so the tokens of a
+ * query expire a fixed time after its first token was recorded.
+ */
+public class HubspotPageIndex {
+    // Tokens kept per query.  The deepest tokens are dropped first.
+    public static final int DEFAULT_MAX_TOKENS = 1000;
+
+    private final HubspotCache<String, Tokens> queries;
+    private final long ttlMillis;
+    private final int maxTokens;
+
+    /**
+     * @param maxQueries number of queries that tokens are kept for
+     * @param ttlMillis how long the tokens of a query are kept
+     */
+    public HubspotPageIndex(int maxQueries, long ttlMillis) {
+        this(maxQueries, ttlMillis, DEFAULT_MAX_TOKENS);
+    }
+
+    public HubspotPageIndex(int maxQueries, long ttlMillis, int maxTokens) {
+        this.queries = new HubspotCache<>(maxQueries, (key, value) -> 1);
+        this.ttlMillis = ttlMillis;
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * Record the token of the page that starts at the offset.
+     *
+     * @param query the normalized request without its paging, ie. the path
+     *   and search body
+     * @param offset
+     * @param token
+     */
+    public void record(String query, int offset, String token) {
+        if (offset <= 0 || token == null || token.isEmpty()) {
+            return;
+        }
+        Tokens tokens = queries.get(query);
+        if (tokens == null) {
+            // Concurrent first pages of a query record into the same tokens.
+            tokens = queries.putIfAbsent(query, new Tokens(), ttlMillis);
+        }
+        tokens.put(offset, token, maxTokens);
+    }
+
+    /**
+     * @param query
+     * @param offset
+     * @return the known token with the greatest offset that is not past the
+     *   offset, the offset 0 with a null token if there is none
+     */
+    public Entry<Integer, String> floor(String query, int offset) {
+        Tokens tokens = queries.get(query);
+        Entry<Integer, String> entry = tokens == null ? null
+            : tokens.floor(offset);
+        return entry != null ? entry : new SimpleImmutableEntry<>(0, null);
+    }
+
+    /**
+     * @param query
+     * @param token
+     * @return the offset the token starts at, -1 if it is not known
+     */
+    public int getOffset(String query, String token) {
+        Tokens tokens = queries.get(query);
+        return tokens == null ? -1 : tokens.getOffset(token);
+    }
+
+    public void invalidateAll() {
+        queries.invalidateAll();
+    }
+
+    public long size() {
+        return queries.size();
+    }
+
+    /**
+     * The tokens of one query.
+     */
+    private static class Tokens {
+        private final TreeMap<Integer, String> byOffset = new TreeMap<>();
+        private final Map<String, Integer> byToken = new HashMap<>();
+
+        synchronized void put(int offset, String token, int maxTokens) {
+            String previous = byOffset.put(offset, token);
+            if (previous != null) {
+                byToken.remove(previous);
+            }
+            byToken.put(token, offset);
+            while (byOffset.size() > maxTokens) {
+                byToken.remove(byOffset.pollLastEntry().getValue());
+            }
+        }
+
+        synchronized Entry<Integer, String> floor(int offset) {
+            return byOffset.floorEntry(offset);
+        }
+
+        synchronized int getOffset(String token) {
+            Integer offset = byToken.get(token);
+            return offset == null ? -1 : offset;
+        }
+    }
+}
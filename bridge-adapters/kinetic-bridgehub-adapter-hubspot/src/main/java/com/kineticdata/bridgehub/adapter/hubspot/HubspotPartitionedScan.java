@@ -0,0 +1,329 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads every object that matches a search, past the 10,000 results that
+ * HubSpot pages a search to.
+ *
+ * The search is split into disjoint hs_object_id ranges that are searched in
+ * parallel, each sorted by id.  A range with more matches than a search can
+ * page to is split again, the others are paged through.  Since the ranges are
+ * disjoint their pages, in range order, are the matches in id order.  An
+ * object that is returned twice, ie. because it changed while its range was
+ * paged, is only kept once.
+ *
+ * The searches go through the api helper so they share the adapter's search
+ * rate limit with every other request.
+ */
+public class HubspotPartitionedScan {
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(HubspotPartitionedScan.class);
+
+    // Most results HubSpot pages to for one search.
+    public static final int SEARCH_LIMIT = 10000;
+    public static final int DEFAULT_PARALLELISM = 4;
+    private static final int PAGE_SIZE = 100;
+    private static final String ID_PROPERTY = "hs_object_id";
+    // HubSpot's limits on the filters of a search.
+    public static final int MAX_FILTERS_PER_GROUP = 6;
+    public static final int MAX_FILTERS = 18;
+    // Filters a range adds to each group.
+    private static final int RANGE_FILTERS = 2;
+
+    /** Sends a search body. */
+    public static interface Searcher {
+        JSONObject search(JSONObject body) throws BridgeError;
+    }
+
+    private final Searcher searcher;
+    private final int parallelism;
+    private final long maxRecords;
+    private final int partitionLimit;
+    private final LongAdder searches = new LongAdder();
+
+    /**
+     * @param searcher
+     * @param parallelism ranges searched at the same time
+     * @param maxRecords the scan fails if more objects match
+     */
+    public HubspotPartitionedScan(Searcher searcher, int parallelism,
+        long maxRecords) {
+
+        this(searcher, parallelism, maxRecords, SEARCH_LIMIT);
+    }
+
+    /**
+     * @param partitionLimit most matches of a range that is paged through
+     *   rather than split, at most the search limit
+     */
+    public HubspotPartitionedScan(Searcher searcher, int parallelism,
+        long maxRecords, int partitionLimit) {
+
+        this.searcher = searcher;
+        this.parallelism = Math.max(1, parallelism);
+        this.maxRecords = maxRecords;
+        this.partitionLimit = Math.min(SEARCH_LIMIT, partitionLimit);
+    }
+
+    /**
+     * @param body the search, its sorts, paging and limit are replaced
+     * @return the matching objects in id order
+     * @throws BridgeError if a search fails, more than the max records match
+     *   or the range filters would exceed HubSpot's filter limits
+     */
+    public List<JSONObject> scan(JSONObject body) throws BridgeError {
+        checkFilterLimits(body);
+        JSONObject first = search(page(body, -1, -1, "ASCENDING", 1, null));
+        long total = getTotal(first);
+        if (total == 0) {
+            return Collections.emptyList();
+        }
+        if (total > maxRecords) {
+            throw new BridgeError(String.format("The scan matches %d records, "
+                + "more than the %d allowed.", total, maxRecords));
+        }
+        long min = getId(getResults(first).get(0));
+        long max = getId(getResults(search(page(body, -1, -1, "DESCENDING", 1,
+            null))).get(0));
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+            HubspotAdapter.daemonThreadFactory("hubspot-scan-"));
+        Queue<Future<?>> tasks = new ConcurrentLinkedQueue<>();
+        Map<Long, List<JSONObject>> partitions = new ConcurrentSkipListMap<>();
+        try {
+            split(body, min, max + 1, parallelism, executor, tasks, partitions);
+            // A range submits its sub-ranges before it completes, so they are
+            // queued by the time it is waited for.
+            Future<?> task;
+            while ((task = tasks.poll()) != null) {
+                await(task);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<JSONObject> objects = new ArrayList<>((int)total);
+        Set<Object> ids = new HashSet<>();
+        partitions.values().forEach(partition -> partition.stream()
+            .filter(object -> ids.add(object.get("id")))
+            .forEach(objects::add));
+        LOGGER.debug("Scanned {} objects in {} partitions with {} searches.",
+            objects.size(), partitions.size(), searches.sum());
+        return objects;
+    }
+
+    /**
+     * @return the number of searches sent by scans
+     */
+    public long getSearchCount() {
+        return searches.sum();
+    }
+
+    /**
+     * Split the ids from low (inclusive) to high (exclusive) into ranges of
+     * about equal width and search them.
+     */
+    private void split(JSONObject body, long low, long high, int pieces,
+        ExecutorService executor, Queue<Future<?>> tasks,
+        Map<Long, List<JSONObject>> partitions) {
+
+        long width = Math.max(1, (high - low + pieces - 1) / pieces);
+        for (long start = low; start < high; start += width) {
+            long end = Math.min(high, start + width);
+            long rangeLow = start;
+            tasks.add(executor.submit(HubspotMetrics.propagate(() -> {
+                scanRange(body, rangeLow, end, executor, tasks, partitions);
+                return null;
+            })));
+        }
+    }
+
+    private void scanRange(JSONObject body, long low, long high,
+        ExecutorService executor, Queue<Future<?>> tasks,
+        Map<Long, List<JSONObject>> partitions) throws BridgeError {
+
+        JSONObject response = search(page(body, low, high, "ASCENDING",
+            PAGE_SIZE, null));
+        long total = getTotal(response);
+        if (total > partitionLimit && high - low > 1) {
+            // Split into ranges that are expected to have half the limit.
+            int pieces = (int)Math.min(high - low,
+                Math.max(2, (total * 2 + partitionLimit - 1) / partitionLimit));
+            LOGGER.trace("Splitting ids {} to {} with {} matches into {} ranges.",
+                low, high, total, pieces);
+            split(body, low, high, pieces, executor, tasks, partitions);
+            return;
+        }
+
+        List<JSONObject> objects = new ArrayList<>((int)Math.min(total, partitionLimit));
+        objects.addAll(getResults(response));
+        String after = getNextPage(response);
+        while (!after.isEmpty()) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new BridgeError("Interrupted while scanning.");
+            }
+            response = search(page(body, low, high, "ASCENDING", PAGE_SIZE, after));
+            objects.addAll(getResults(response));
+            after = getNextPage(response);
+        }
+        partitions.put(low, objects);
+    }
+
+    private JSONObject search(JSONObject body) throws BridgeError {
+        searches.increment();
+        return searcher.search(body);
+    }
+
+    /**
+     * A page of the search sorted by id, limited to the ids from low
+     * (inclusive) to high (exclusive) unless low is -1.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject page(JSONObject body, long low, long high,
+        String direction, int limit, String after) {
+
+        JSONObject page = (JSONObject)body.clone();
+        page.remove("after");
+        if (after != null) {
+            page.put("after", after);
+        }
+        page.put("limit", limit);
+
+        JSONObject sort = new JSONObject();
+        sort.put("propertyName", ID_PROPERTY);
+        sort.put("direction", direction);
+        JSONArray sorts = new JSONArray();
+        sorts.add(sort);
+        page.put("sorts", sorts);
+
+        if (low >= 0) {
+            // Every group must be in the range, so the range is added to each.
+            JSONArray groups = new JSONArray();
+            Object bodyGroups = body.get("filterGroups");
+            if (bodyGroups instanceof List && !((List)bodyGroups).isEmpty()) {
+                for (Object bodyGroup : (List)bodyGroups) {
+                    JSONObject group = new JSONObject((Map)bodyGroup);
+                    JSONArray filters = new JSONArray();
+                    Object groupFilters = group.get("filters");
+                    if (groupFilters instanceof List) {
+                        filters.addAll((List)groupFilters);
+                    }
+                    group.put("filters", filters);
+                    groups.add(group);
+                }
+            } else {
+                groups.add(new JSONObject());
+                ((JSONObject)groups.get(0)).put("filters", new JSONArray());
+            }
+            for (Object group : groups) {
+                JSONArray filters = (JSONArray)((JSONObject)group).get("filters");
+                filters.add(filter("GTE", low));
+                filters.add(filter("LT", high));
+            }
+            page.put("filterGroups", groups);
+        }
+        return page;
+    }
+
+    /**
+     * The range filters are added to every filter group, which has to stay in
+     * the limits on the filters of a group and of a search.
+     */
+    private static void checkFilterLimits(JSONObject body) throws BridgeError {
+        Object groups = body.get("filterGroups");
+        int filters = RANGE_FILTERS;
+        if (groups instanceof List && !((List)groups).isEmpty()) {
+            filters = 0;
+            for (Object group : (List)groups) {
+                Object groupFilters = group instanceof Map
+                    ? ((Map)group).get("filters") : null;
+                int groupSize = RANGE_FILTERS + (groupFilters instanceof List
+                    ? ((List)groupFilters).size() : 0);
+                if (groupSize > MAX_FILTERS_PER_GROUP) {
+                    throw new BridgeError(String.format("A scan adds %d filters "
+                        + "to each filter group, so a group can have at most %d "
+                        + "filters but one has %d.", RANGE_FILTERS,
+                        MAX_FILTERS_PER_GROUP - RANGE_FILTERS,
+                        groupSize - RANGE_FILTERS));
+                }
+                filters += groupSize;
+            }
+        }
+        if (filters > MAX_FILTERS) {
+            throw new BridgeError(String.format("A scan adds %d filters to each "
+                + "filter group, which makes %d filters, more than the %d HubSpot"
+                + " allows in a search.", RANGE_FILTERS, filters, MAX_FILTERS));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject filter(String operator, long value) {
+        JSONObject filter = new JSONObject();
+        filter.put("propertyName", ID_PROPERTY);
+        filter.put("operator", operator);
+        filter.put("value", String.valueOf(value));
+        return filter;
+    }
+
+    private static long getTotal(JSONObject response) throws BridgeError {
+        Object total = response.get("total");
+        if (!(total instanceof Number)) {
+            throw new BridgeError("The search response did not have a total.");
+        }
+        return ((Number)total).longValue();
+    }
+
+    private static List<JSONObject> getResults(JSONObject response) {
+        Object results = response.get("results");
+        return results instanceof List ? (List<JSONObject>)results
+            : Collections.emptyList();
+    }
+
+    private static long getId(JSONObject object) throws BridgeError {
+        try {
+            return Long.parseLong(String.valueOf(object.get("id")));
+        } catch (NumberFormatException e) {
+            throw new BridgeError("Unable to scan objects without numeric ids.", e);
+        }
+    }
+
+    private static String getNextPage(JSONObject response) {
+        Object paging = response.get("paging");
+        Object next = paging instanceof Map ? ((Map)paging).get("next") : null;
+        Object after = next instanceof Map ? ((Map)next).get("after") : null;
+        return after == null ? "" : after.toString();
+    }
+
+    private static void await(Future<?> task) throws BridgeError {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while scanning.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BridgeError) {
+                throw (BridgeError)e.getCause();
+            }
+            throw new BridgeError("There was an issue scanning.", e.getCause());
+        }
+    }
+}
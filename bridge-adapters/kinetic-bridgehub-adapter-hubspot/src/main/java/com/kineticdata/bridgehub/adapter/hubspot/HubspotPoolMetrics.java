@@ -0,0 +1,40 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Connection pool usage of an api helper.
+ */
+public class HubspotPoolMetrics implements HubspotPoolMetricsMBean {
+    private final HubspotApiHelper apiHelper;
+
+    public HubspotPoolMetrics(HubspotApiHelper apiHelper) {
+        this.apiHelper = apiHelper;
+    }
+
+    @Override
+    public int getLeased() {
+        return apiHelper.getPoolStats().getLeased();
+    }
+
+    @Override
+    public int getAvailable() {
+        return apiHelper.getPoolStats().getAvailable();
+    }
+
+    @Override
+    public int getPending() {
+        return apiHelper.getPoolStats().getPending();
+    }
+
+    @Override
+    public int getMax() {
+        return apiHelper.getPoolStats().getMax();
+    }
+
+    @Override
+    public double getSaturation() {
+        PoolStats stats = apiHelper.getPoolStats();
+        return stats.getMax() == 0 ? 0 : (double)stats.getLeased() / stats.getMax();
+    }
+}
@@ -0,0 +1,13 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+/**
+ * JMX view of the HubSpot connection pool.
+ */
+public interface HubspotPoolMetricsMBean {
+    int getLeased();
+    int getAvailable();
+    int getPending();
+    int getMax();
+    /** Leased connections as a fraction of the pool size. */
+    double getSaturation();
+}
@@ -4,6 +4,7 @@ import com.kineticdata.bridgehub.adapter.BridgeError;
 import com.kineticdata.bridgehub.adapter.QualificationParser;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
 import org.slf4j.LoggerFactory;
 
 /**
@@ -13,6 +14,9 @@ public class HubspotQualificationParser extends QualificationParser {
      /** Defines the logger */
     protected static final org.slf4j.Logger logger 
         = LoggerFactory.getLogger(HubspotAdapter.class);
+    
+    // Split on & only when it is followed by another key=value pair.
+    private static final Pattern QUERY_SEPARATOR = Pattern.compile("&(?=[^&]*?=)");
 
     protected Map<String, String> getParameters (String queryString)
         throws BridgeError {
@@ -21,7 +25,7 @@ public class HubspotQualificationParser extends QualificationParser {
 
         // Return empyt map if no query was provided from reqeust.
         if (!queryString.isEmpty()) {
-            String[] queries = queryString.split("&(?=[^&]*?=)");
+            String[] queries = QUERY_SEPARATOR.split(queryString);
             for (String query : queries) {
                 // Split the query on the = to determine the field/value key-pair. 
                 // Anything before the first = is considered to be the field and 
@@ -0,0 +1,239 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Schedules requests against the HubSpot rate limits.
+ *
+ * HubSpot limits the number of requests per 10 second interval and has a
+ * stricter per second limit for the search endpoints.  Each limit is tracked
+ * with a token bucket.  Callers reserve a token and wait until the reservation
+ * is due instead of failing, so bursts are smoothed into slightly higher
+ * latency.  The buckets are adjusted using the X-HubSpot-RateLimit-* headers
+ * returned by HubSpot because other integrations may share the same limits.
+ *
+ * The limiter also decides when and how long to wait before retrying a
+ * throttled (429) or unavailable (502, 503) response.
+ */
+public class HubspotRateLimiter {
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(HubspotRateLimiter.class);
+
+    public static final int DEFAULT_BURST_LIMIT = 100;
+    public static final long DEFAULT_BURST_INTERVAL_MILLIS = 10000;
+    public static final int DEFAULT_SEARCH_LIMIT = 4;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 30000;
+
+    private static final long BACKOFF_BASE_MILLIS = 500;
+    private static final long BACKOFF_MAX_MILLIS = 30000;
+
+    private final TokenBucket burstBucket;
+    private final TokenBucket searchBucket;
+    private final int maxRetries;
+    private final long maxWaitNanos;
+
+    public HubspotRateLimiter() {
+        this(DEFAULT_BURST_LIMIT, DEFAULT_BURST_INTERVAL_MILLIS,
+            DEFAULT_SEARCH_LIMIT, DEFAULT_MAX_RETRIES, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * @param burstLimit requests allowed per burst interval
+     * @param burstIntervalMillis
+     * @param searchLimit search requests allowed per second
+     * @param maxRetries retries of a throttled or unavailable response
+     * @param maxWaitMillis longest a caller will wait for a token
+     */
+    public HubspotRateLimiter(int burstLimit, long burstIntervalMillis,
+        int searchLimit, int maxRetries, long maxWaitMillis) {
+
+        this.burstBucket = new TokenBucket(burstLimit, burstIntervalMillis);
+        this.searchBucket = new TokenBucket(searchLimit, 1000);
+        this.maxRetries = maxRetries;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Block until the request may be sent.
+     *
+     * @param search true if the request is made to a search endpoint
+     * @throws BridgeError if the wait would exceed the maximum wait
+     */
+    public void acquire(boolean search) throws BridgeError {
+        long waitMillis = reserve(search);
+        if (waitMillis > 0) {
+            LOGGER.debug("Waiting {}ms for the HubSpot rate limit.", waitMillis);
+            sleep(waitMillis);
+        }
+    }
+
+    /**
+     * Reserve a token without waiting for it.  The request may be sent once
+     * the returned time has passed.
+     *
+     * @param search true if the request is made to a search endpoint
+     * @return milliseconds until the reservation is due
+     * @throws BridgeError if the wait would exceed the maximum wait
+     */
+    public long reserve(boolean search) throws BridgeError {
+        long waitNanos = burstBucket.reserve(maxWaitNanos);
+        if (search && waitNanos >= 0) {
+            long searchWaitNanos = searchBucket.reserve(maxWaitNanos);
+            if (searchWaitNanos < 0) {
+                // Give back the burst reservation that will not be used.
+                burstBucket.release();
+            }
+            waitNanos = searchWaitNanos < 0 ? -1
+                : Math.max(waitNanos, searchWaitNanos);
+        }
+
+        if (waitNanos < 0) {
+            throw new BridgeError("429: The HubSpot rate limit was reached and"
+                + " the request could not be scheduled.");
+        }
+        // Round up so that the request is not sent before it is due.
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos + 999999);
+    }
+
+    /**
+     * Adjust the burst bucket using the rate limit headers on a response.
+     *
+     * @param response
+     */
+    public void update(HttpResponse response) {
+        Long max = getLongHeader(response, "X-HubSpot-RateLimit-Max");
+        Long interval = getLongHeader(response,
+            "X-HubSpot-RateLimit-Interval-Milliseconds");
+        Long remaining = getLongHeader(response, "X-HubSpot-RateLimit-Remaining");
+
+        if (max != null && interval != null) {
+            burstBucket.resize(max, interval);
+        }
+        if (remaining != null) {
+            burstBucket.limitTo(remaining);
+        }
+
+        Long dailyRemaining = getLongHeader(response,
+            "X-HubSpot-RateLimit-Daily-Remaining");
+        if (dailyRemaining != null && dailyRemaining == 0) {
+            LOGGER.warn("The HubSpot daily rate limit has been reached.");
+        }
+    }
+
+    public boolean isRetryable(int responseCode, int attempt) {
+        return attempt < maxRetries && (responseCode == 429
+            || responseCode == 502 || responseCode == 503);
+    }
+
+    /**
+     * Get the time to wait before the next attempt.  Uses exponential backoff
+     * with jitter but never less than the Retry-After header.
+     *
+     * @param response
+     * @param attempt zero based attempt that failed
+     * @return
+     */
+    public long getBackoffMillis(HttpResponse response, int attempt) {
+        long ceiling = Math.min(BACKOFF_MAX_MILLIS,
+            BACKOFF_BASE_MILLIS << Math.min(attempt, 16));
+        long backoff = ThreadLocalRandom.current().nextLong(ceiling / 2,
+            ceiling + 1);
+
+        Long retryAfter = getLongHeader(response, "Retry-After");
+        if (retryAfter != null) {
+            backoff = Math.max(backoff, retryAfter * 1000);
+        }
+
+        return backoff;
+    }
+
+    public void sleep(long millis) throws BridgeError {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BridgeError("Interrupted while waiting to send the request.",
+                e);
+        }
+    }
+
+    private static Long getLongHeader(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        if (header != null) {
+            try {
+                return Long.valueOf(header.getValue().trim());
+            } catch (NumberFormatException e) {
+                LOGGER.trace("Ignoring invalid {} header: {}", name,
+                    header.getValue());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A token bucket that hands out reservations.  Tokens may go negative, in
+     * which case the caller has to wait until the bucket has refilled to its
+     * place in line.
+     */
+    private static class TokenBucket {
+        private double capacity;
+        private double tokensPerNano;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(long capacity, long intervalMillis) {
+            this.capacity = capacity;
+            this.tokensPerNano = capacity
+                / (double)TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+            this.tokens = capacity;
+            this.lastRefill = System.nanoTime();
+        }
+
+        /**
+         * @return nanos to wait before the reserved token is available or -1
+         *   if that would be longer than maxWaitNanos.
+         */
+        synchronized long reserve(long maxWaitNanos) {
+            refill();
+            long waitNanos = tokens >= 1 ? 0
+                : (long)Math.ceil((1 - tokens) / tokensPerNano);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            tokens -= 1;
+            return waitNanos;
+        }
+
+        synchronized void release() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        synchronized void resize(long newCapacity, long intervalMillis) {
+            if (newCapacity != capacity) {
+                refill();
+                capacity = newCapacity;
+                tokensPerNano = newCapacity
+                    / (double)TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+                tokens = Math.min(tokens, capacity);
+            }
+        }
+
+        synchronized void limitTo(long remaining) {
+            refill();
+            tokens = Math.min(tokens, remaining);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ParseException;
+
+/**
+ * The parts of a bridge request that only depend on the structure, the
+ * qualification and the fields.
+ *
+ * Bridge qualifications are a small set of templates so the plan is built
+ * once and cached.  At request time only the <%=parameter["..."]%> values of
+ * the parameterized qualification parameters need to be filled in.
+ *
+ * The plan also holds the HubSpot properties and associations that the
+ * fields reference so that every request only asks HubSpot for those.
+ */
+public class HubspotRequestPlan {
+    private static final String PARAMETER_TAG = "<%=";
+    
+    // The key after "properties" or "associations" in a simple key or 
+    // JsonPath field, ie. properties.name, properties["name"], 
+    // $.properties.name or $['properties']['name'].
+    private static final String REFERENCE = "(?:^|[.\\[])\\s*['\"]?%s['\"]?\\s*\\]?"
+        + "(?:\\.([\\w\\-]+)|\\[\\s*['\"]([^'\"]+)['\"]\\s*\\])";
+    private static final Pattern PROPERTY_REFERENCE = 
+        Pattern.compile(String.format(REFERENCE, "properties"));
+    private static final Pattern ASSOCIATION_REFERENCE = 
+        Pattern.compile(String.format(REFERENCE, "associations"));
+
+    private final List<String> structureList;
+    private final AdapterMapping mapping;
+    private final Map<String, String> parameters;
+    private final Set<String> parameterizedKeys;
+    private final JSONObject body;
+    private final List<String> properties;
+    private final List<String> associations;
+
+    /**
+     * @param structureList
+     * @param mapping
+     * @param parameters the tokenized qualification with parameter tags
+     * @param properties HubSpot properties referenced by the fields
+     */
+    public HubspotRequestPlan(List<String> structureList, AdapterMapping mapping,
+        Map<String, String> parameters, List<String> properties) {
+
+        this(structureList, mapping, parameters, properties, Collections.emptyList());
+    }
+
+    /**
+     * @param structureList
+     * @param mapping
+     * @param parameters the tokenized qualification with parameter tags
+     * @param properties HubSpot properties referenced by the fields
+     * @param associations HubSpot associations referenced by the fields
+     */
+    public HubspotRequestPlan(List<String> structureList, AdapterMapping mapping,
+        Map<String, String> parameters, List<String> properties,
+        List<String> associations) {
+
+        this.structureList = Collections.unmodifiableList(structureList);
+        this.mapping = mapping;
+        this.parameters = Collections.unmodifiableMap(parameters);
+        this.properties = Collections.unmodifiableList(properties);
+        this.associations = Collections.unmodifiableList(associations);
+
+        Set<String> keys = new HashSet<>();
+        parameters.forEach((key, value) -> {
+            if (value != null && value.contains(PARAMETER_TAG)) {
+                keys.add(key);
+            }
+        });
+        this.parameterizedKeys = Collections.unmodifiableSet(keys);
+
+        // A search body without parameters is the same for every request.
+        JSONObject staticBody = null;
+        String template = parameters.get("body");
+        if (template != null && !parameterizedKeys.contains("body")) {
+            try {
+                staticBody = (JSONObject)JSONValue.parseWithException(template);
+            } catch (ParseException | ClassCastException e) {
+                // Reported when the body is used by a request.
+            }
+        }
+        this.body = staticBody;
+    }
+
+    public List<String> getStructureList() {
+        return structureList;
+    }
+
+    public AdapterMapping getMapping() {
+        return mapping;
+    }
+
+    public List<String> getProperties() {
+        return properties;
+    }
+
+    public List<String> getAssociations() {
+        return associations;
+    }
+
+    /**
+     * Get the HubSpot properties referenced by bridge fields.
+     *
+     * @param fields
+     * @return the property names in field order without duplicates
+     */
+    public static List<String> getPropertyNames(List<String> fields) {
+        return getReferences(PROPERTY_REFERENCE, fields);
+    }
+
+    /**
+     * Get the HubSpot associations referenced by bridge fields, ie. tickets
+     * for $.associations.tickets.results.
+     *
+     * @param fields
+     * @return the object types in field order without duplicates
+     */
+    public static List<String> getAssociationNames(List<String> fields) {
+        return getReferences(ASSOCIATION_REFERENCE, fields);
+    }
+
+    private static List<String> getReferences(Pattern pattern, List<String> fields) {
+        Set<String> names = new LinkedHashSet<>();
+        for (String field : fields) {
+            Matcher matcher = pattern.matcher(field);
+            if (matcher.find()) {
+                names.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Get a mutable copy of the qualification parameters with the parameter
+     * tags replaced by the request's parameter values.
+     *
+     * @param parser
+     * @param requestParameters
+     * @return
+     * @throws BridgeError
+     */
+    public Map<String, String> getParameters(HubspotQualificationParser parser,
+        Map<String, String> requestParameters) throws BridgeError {
+
+        Map<String, String> values = new HashMap<>(parameters);
+        for (String key : parameterizedKeys) {
+            values.put(key, parser.parse(values.get(key), requestParameters));
+        }
+        return values;
+    }
+
+    /**
+     * Get a copy of the search body.  The copy is shallow; callers only add
+     * or replace top level keys.
+     *
+     * @param parameters the request's parameters
+     * @return
+     * @throws BridgeError if the body is not valid JSON
+     */
+    public JSONObject getBody(Map<String, String> parameters) throws BridgeError {
+        if (body != null) {
+            return (JSONObject)body.clone();
+        }
+        try {
+            return (JSONObject)JSONValue.parseWithException(parameters.get("body"));
+        } catch (ParseException | ClassCastException e){
+            throw new BridgeError("'body' parameter was not valid JSON", e);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Describes the parts of a HubSpot response that need to be materialized.
+ *
+ * The response is parsed as a stream of events and values are only built for
+ * the accessor array, the paging information and the fields that were
+ * requested on the bridge request.  Everything else in the response (ie. large
+ * associations or unrequested properties) is read past without creating any
+ * objects.
+ */
+public class HubspotResponseProjection {
+
+    // Top level keys that are always kept because the adapter or the api
+    // helper reads them.
+    private static final String[] RESPONSE_KEYS =
+        {"paging", "total", "message", "id"};
+
+    private final Node root;
+    // Projections with the same key materialize the same values.
+    private final String key;
+
+    private HubspotResponseProjection(Node root, String key) {
+        this.root = root;
+        this.key = key;
+    }
+
+    /**
+     * Build a projection for a response that either has the records in an
+     * array under the accessor or is a single record.
+     *
+     * @param accessor
+     * @param fields bridge fields, simple keys or JsonPath expressions
+     * @return
+     */
+    public static HubspotResponseProjection forFields(String accessor,
+        List<String> fields) {
+
+        Node record = new Node();
+        fields.forEach(field -> addField(record, field));
+
+        Node root = new Node();
+        // A single object response is the record itself.
+        root.merge(record);
+        if (accessor != null && !accessor.isEmpty()) {
+            root.children.put(accessor, record);
+        }
+        for (String key : RESPONSE_KEYS) {
+            root.children.put(key, Node.ALL);
+        }
+
+        return new HubspotResponseProjection(root,
+            accessor + "|" + String.join(",", fields));
+    }
+
+    /**
+     * @return a key that is equal for projections of the same accessor and
+     *   fields
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Parse the response keeping only the projected values.
+     *
+     * @param reader
+     * @return the projected value, usually a JSONObject
+     * @throws IOException
+     * @throws ParseException
+     */
+    public Object parse(Reader reader) throws IOException, ParseException {
+        Handler handler = new Handler(root);
+        new JSONParser().parse(reader, handler);
+        return handler.result;
+    }
+
+    /**
+     * Add the path of a field to the record node.  Simple keys and dot
+     * separated JsonPath expressions are projected exactly.  Once a JsonPath
+     * expression uses anything else (wildcards, filters, brackets) the value
+     * at that point is kept whole.
+     */
+    private static void addField(Node record, String field) {
+        if (!field.startsWith("$")) {
+            record.children.put(field, Node.ALL);
+            return;
+        }
+
+        Node node = record;
+        String[] segments = field.substring(1).split("\\.", -1);
+        // The path starts with "$." so the first segment is empty.
+        for (int i = 1; i < segments.length; i++) {
+            String segment = segments[i];
+            if (node.all) {
+                return;
+            }
+            if (segment.isEmpty() || !isSimpleSegment(segment)) {
+                String key = simplePrefix(segment);
+                if (key.isEmpty()) {
+                    node.all = true;
+                } else {
+                    node.children.put(key, Node.ALL);
+                }
+                return;
+            }
+            if (i == segments.length - 1) {
+                node.children.put(segment, Node.ALL);
+            } else {
+                Node child = node.children.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+        }
+
+        // Anything that is not a "$.a.b" style path, ie. "$[0]", is kept whole.
+        if (segments.length < 2) {
+            node.all = true;
+        }
+    }
+
+    private static boolean isSimpleSegment(String segment) {
+        for (char c : segment.toCharArray()) {
+            if (!Character.isLetterOrDigit(c) && c != '_' && c != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String simplePrefix(String segment) {
+        int i = 0;
+        while (i < segment.length() && (Character.isLetterOrDigit(segment.charAt(i))
+            || segment.charAt(i) == '_' || segment.charAt(i) == '-')) {
+            i++;
+        }
+        return segment.substring(0, i);
+    }
+
+    /**
+     * A node in the projection tree.  Array elements share the node of the
+     * array.
+     */
+    private static class Node {
+        static final Node ALL = new Node(true);
+
+        final Map<String, Node> children = new HashMap<>();
+        boolean all;
+
+        Node() {
+        }
+
+        Node(boolean all) {
+            this.all = all;
+        }
+
+        Node child(String key) {
+            return all ? ALL : children.get(key);
+        }
+
+        void merge(Node other) {
+            if (other.all) {
+                all = true;
+            }
+            other.children.forEach((key, node) -> {
+                Node existing = children.get(key);
+                if (existing == null || node.all) {
+                    children.put(key, node);
+                } else if (!existing.all) {
+                    Node merged = new Node();
+                    merged.merge(existing);
+                    merged.merge(node);
+                    children.put(key, merged);
+                }
+            });
+        }
+    }
+
+    /**
+     * A container that is being built.  Skipped containers have no value and
+     * every value nested in them is skipped as well.
+     */
+    private static class Frame {
+        final Object container;
+        final Node node;
+        String key;
+        Node entryNode;
+
+        Frame(Object container, Node node) {
+            this.container = container;
+            this.node = node;
+        }
+    }
+
+    private static class Handler implements ContentHandler {
+        private final Node root;
+        private final Deque<Frame> stack = new ArrayDeque<>();
+        private Object result;
+
+        Handler(Node root) {
+            this.root = root;
+        }
+
+        /**
+         * Get the projection of the value that is about to be parsed, null
+         * if the value is not needed.
+         */
+        private Node nextNode() {
+            Frame top = stack.peek();
+            if (top == null) {
+                return root;
+            }
+            if (top.container == null) {
+                return null;
+            }
+            return top.container instanceof JSONArray ? top.node : top.entryNode;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void addValue(Object value) {
+            Frame top = stack.peek();
+            if (top == null) {
+                result = value;
+            } else if (top.container instanceof JSONArray) {
+                ((JSONArray)top.container).add(value);
+            } else {
+                ((JSONObject)top.container).put(top.key, value);
+            }
+        }
+
+        @Override
+        public void startJSON() {
+        }
+
+        @Override
+        public void endJSON() {
+        }
+
+        @Override
+        public boolean startObject() {
+            Node node = nextNode();
+            stack.push(new Frame(node == null ? null : new JSONObject(), node));
+            return true;
+        }
+
+        @Override
+        public boolean endObject() {
+            Frame frame = stack.pop();
+            if (frame.container != null) {
+                addValue(frame.container);
+            }
+            return true;
+        }
+
+        @Override
+        public boolean startObjectEntry(String key) {
+            Frame top = stack.peek();
+            top.key = key;
+            top.entryNode = top.container == null ? null : top.node.child(key);
+            return true;
+        }
+
+        @Override
+        public boolean endObjectEntry() {
+            Frame top = stack.peek();
+            top.key = null;
+            top.entryNode = null;
+            return true;
+        }
+
+        @Override
+        public boolean startArray() {
+            Node node = nextNode();
+            stack.push(new Frame(node == null ? null : new JSONArray(), node));
+            return true;
+        }
+
+        @Override
+        public boolean endArray() {
+            return endObject();
+        }
+
+        @Override
+        public boolean primitive(Object value) {
+            if (nextNode() != null) {
+                addValue(value);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Shares one in-flight call between concurrent callers with the same key.
+ *
+ * The first caller for a key starts the call and every caller that arrives
+ * before it completes receives the same future, so they all get its result or
+ * its error.  The key is released as soon as the call completes; nothing is
+ * kept afterwards, so a later caller always starts a new call.  The shared
+ * result must be treated as read only by the callers.
+ *
+ * @param <K> key of the call, ie. the method, url and body of a request
+ * @param <V> result of the call
+ */
+public class HubspotSingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> calls =
+        new ConcurrentHashMap<>();
+    private final LongAdder shared = new LongAdder();
+
+    /**
+     * Join the in-flight call for the key or start it.
+     *
+     * @param key
+     * @param call starts the call, only invoked when no call for the key is in
+     *   flight
+     * @return the result of the call
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = calls.putIfAbsent(key, flight);
+        if (existing != null) {
+            shared.increment();
+            return existing;
+        }
+
+        CompletableFuture<V> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+        }
+        result.whenComplete((value, e) -> {
+            // Release the key before completing so callers woken by the result
+            // that ask again start a new call.
+            calls.remove(key, flight);
+            if (e == null) {
+                flight.complete(value);
+            } else {
+                flight.completeExceptionally(e);
+            }
+        });
+        return flight;
+    }
+
+    /**
+     * @return the number of calls that were in flight
+     */
+    public int size() {
+        return calls.size();
+    }
+
+    /**
+     * @return the number of callers that joined a call started by another
+     *   caller instead of starting their own
+     */
+    public long getSharedCount() {
+        return shared.sum();
+    }
+}
@@ -0,0 +1,206 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+
+/**
+ * The order metadata of a bridge request as HubSpot property sort keys.
+ *
+ * HubSpot's search endpoint only sorts on one property, so the first key is
+ * sent to HubSpot and the adapter compares the objects on every key.  Numbers
+ * and datetimes, as epoch milliseconds, are compared as numbers and sort
+ * before other values, which are compared as text.  HubSpot compares string properties as text even if they
+ * hold numbers, so the orders only agree on number and date properties.
+ * Objects without a value sort after the others in ascending order and
+ * before them in descending order.
+ */
+public class HubspotSortOrder {
+    // The property of an object's id.
+    private static final String ID_PROPERTY = "hs_object_id";
+
+    private final List<String> properties;
+    private final List<Boolean> ascending;
+
+    /**
+     * @param items direction (ASC or DESC) by field, in order of precedence.
+     *   A field is a property name or a JsonPath to a property, ie.
+     *   $.properties.name.
+     */
+    public HubspotSortOrder(Map<String, String> items) {
+        List<String> properties = new ArrayList<>();
+        List<Boolean> ascending = new ArrayList<>();
+        items.forEach((field, direction) -> {
+            properties.add(toProperty(field));
+            ascending.add(!"DESC".equalsIgnoreCase(String.valueOf(direction).trim()));
+        });
+        this.properties = Collections.unmodifiableList(properties);
+        this.ascending = Collections.unmodifiableList(ascending);
+    }
+
+    /**
+     * @return the number of sort keys
+     */
+    public int size() {
+        return properties.size();
+    }
+
+    /**
+     * @return the properties sorted on, in order of precedence
+     */
+    public List<String> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return the HubSpot search sorts, ie. [{"propertyName":"name",
+     *   "direction":"ASCENDING"}], of the first key.  The id of an object is
+     *   sorted on as hs_object_id.
+     */
+    @SuppressWarnings("unchecked")
+    public JSONArray getFirstSort() {
+        JSONObject sort = new JSONObject();
+        sort.put("propertyName", getFirstProperty());
+        sort.put("direction", isFirstAscending() ? "ASCENDING" : "DESCENDING");
+        JSONArray sorts = new JSONArray();
+        sorts.add(sort);
+        return sorts;
+    }
+
+    /**
+     * @return the HubSpot property of the first key
+     */
+    public String getFirstProperty() {
+        return "id".equals(properties.get(0)) ? ID_PROPERTY : properties.get(0);
+    }
+
+    public boolean isFirstAscending() {
+        return ascending.get(0);
+    }
+
+    /**
+     * @return the order of HubSpot objects on every key
+     */
+    public Comparator<JSONObject> comparator() {
+        return comparator(properties.size());
+    }
+
+    /**
+     * @param keys number of keys, from the first, to compare on
+     * @return the order of HubSpot objects on the keys
+     */
+    public Comparator<JSONObject> comparator(int keys) {
+        Comparator<JSONObject> comparator = (a, b) -> 0;
+        for (int i = 0; i < keys; i++) {
+            String property = properties.get(i);
+            Comparator<JSONObject> key = (a, b) -> compare(
+                getValue(a, property), getValue(b, property));
+            comparator = comparator.thenComparing(ascending.get(i)
+                ? key : key.reversed());
+        }
+        return comparator;
+    }
+
+    /**
+     * The property of an order field, ie. name for $.properties.name.
+     */
+    private static String toProperty(String field) {
+        String property = field.trim();
+        for (String prefix : new String[] {"$.properties.", "properties."}) {
+            if (property.startsWith(prefix)) {
+                return property.substring(prefix.length());
+            }
+        }
+        return property;
+    }
+
+    /**
+     * The value of a property of an object, or of a top level key such as id
+     * or createdAt.
+     */
+    private static Object getValue(JSONObject object, String property) {
+        Object properties = object.get("properties");
+        if (properties instanceof Map && ((Map)properties).containsKey(property)) {
+            return ((Map)properties).get(property);
+        }
+        return object.get(property);
+    }
+
+    private static int compare(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : 1) : -1;
+        }
+        return compareValues(a.toString(), b.toString());
+    }
+
+    /**
+     * The order of property values.  A number, or a datetime as its epoch
+     * milliseconds, sorts before any text and is compared as a number.  Text
+     * is compared ignoring case, and then by case.  Every value has one key so
+     * the order is transitive whatever values are mixed.
+     */
+    static int compareValues(String a, String b) {
+        BigDecimal numberA = toNumeric(a);
+        BigDecimal numberB = toNumeric(b);
+        if (numberA != null || numberB != null) {
+            if (numberA == null || numberB == null) {
+                return numberA == null ? 1 : -1;
+            }
+            return numberA.compareTo(numberB);
+        }
+        int compared = a.compareToIgnoreCase(b);
+        return compared != 0 ? compared : a.compareTo(b);
+    }
+
+    /**
+     * @return the number, or the epoch milliseconds of a datetime, of a
+     *   value, null if it is text
+     */
+    private static BigDecimal toNumeric(String text) {
+        BigDecimal number = toNumber(text);
+        if (number == null) {
+            Instant instant = toInstant(text);
+            if (instant != null) {
+                number = BigDecimal.valueOf(instant.toEpochMilli());
+            }
+        }
+        return number;
+    }
+
+    /**
+     * A datetime value, ie. 2021-09-01T12:00:00.000Z, whose text does not
+     * sort by time when only some values have milliseconds.
+     */
+    private static Instant toInstant(String text) {
+        if (text.length() < 20 || text.charAt(10) != 'T') {
+            return null;
+        }
+        try {
+            return Instant.parse(text);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * A decimal number.  Text ending in a letter, ie. 1d, NaN or Infinity, is
+     * not a number.
+     */
+    private static BigDecimal toNumber(String text) {
+        if (text.isEmpty() || !(Character.isDigit(text.charAt(text.length() - 1)))) {
+            return null;
+        }
+        try {
+            return new BigDecimal(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The structures of an adapter instance and the mappings they route to.
+ *
+ * The registry is built once when the adapter is initialized, from the built
+ * in structures, the configured object types and the custom objects read from
+ * the schemas api, and is never modified afterwards.  Lookups read a plain
+ * map without locking so routing a request costs nothing under concurrency.
+ */
+public class HubspotStructureRegistry {
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(HubspotStructureRegistry.class);
+
+    private static final String SCHEMAS_PATH = "/crm/v3/schemas";
+
+    private final Map<String, AdapterMapping> mappings;
+    private final Map<String, AdapterMapping> objectTypes;
+
+    /**
+     * @param mappings mappings by structure; later mappings for a structure
+     *   replace earlier ones
+     */
+    public HubspotStructureRegistry(Collection<AdapterMapping> mappings) {
+        Map<String, AdapterMapping> byStructure = new LinkedHashMap<>();
+        Map<String, AdapterMapping> byObjectType = new HashMap<>();
+        for (AdapterMapping mapping : mappings) {
+            byStructure.put(mapping.getStructure(), mapping);
+        }
+        for (AdapterMapping mapping : byStructure.values()) {
+            if (mapping.getObjectType() != null) {
+                byObjectType.putIfAbsent(mapping.getObjectType(), mapping);
+            }
+        }
+        this.mappings = Collections.unmodifiableMap(byStructure);
+        this.objectTypes = Collections.unmodifiableMap(byObjectType);
+    }
+
+    /**
+     * @param structure
+     * @return the mapping of the structure, null if there is none
+     */
+    public AdapterMapping get(String structure) {
+        return mappings.get(structure);
+    }
+
+    /**
+     * @param objectType
+     * @return the first mapping of the object type, null if there is none
+     */
+    public AdapterMapping getByObjectType(String objectType) {
+        return objectTypes.get(objectType);
+    }
+
+    public boolean contains(String structure) {
+        return mappings.containsKey(structure);
+    }
+
+    /**
+     * @return the mappings by structure, in the order they were registered
+     */
+    public Map<String, AdapterMapping> getMappings() {
+        return mappings;
+    }
+
+    /**
+     * Parse a list of Structure=objectType pairs, ie.
+     * Deals=deals,Pets=2-1234567.
+     *
+     * @param name the property the value is from
+     * @param value
+     * @return the mappings of the pairs
+     * @throws BridgeError
+     */
+    public static List<AdapterMapping> parseObjectTypes(String name, String value)
+        throws BridgeError {
+
+        List<AdapterMapping> mappings = new ArrayList<>();
+        if (value == null || value.trim().isEmpty()) {
+            return mappings;
+        }
+        for (String pair : value.split(",")) {
+            String[] segments = pair.split("=", 2);
+            if (segments.length != 2 || segments[0].trim().isEmpty()
+                || !segments[1].trim().matches("[\\w\\-]+")) {
+
+                throw new BridgeError(String.format("The '%s' property must be"
+                    + " a list of Structure=objectType pairs but was '%s'.",
+                    name, value));
+            }
+            mappings.add(AdapterMapping.forObjectType(segments[0].trim(),
+                segments[1].trim()));
+        }
+        return mappings;
+    }
+
+    /**
+     * Read the custom object schemas of the HubSpot account.  Each custom
+     * object is mapped to a structure named after its plural label and
+     * routed by its object type id.
+     *
+     * @param apiHelper
+     * @return the mappings of the custom objects
+     * @throws BridgeError
+     */
+    public static List<AdapterMapping> discoverCustomObjects(
+        HubspotApiHelper apiHelper) throws BridgeError {
+
+        List<AdapterMapping> mappings = new ArrayList<>();
+        Object results = apiHelper.executeRequest(SCHEMAS_PATH).get("results");
+        if (!(results instanceof JSONArray)) {
+            return mappings;
+        }
+        for (Object result : (JSONArray)results) {
+            JSONObject schema = (JSONObject)result;
+            Object objectTypeId = schema.get("objectTypeId");
+            if (objectTypeId == null) {
+                continue;
+            }
+            Object labels = schema.get("labels");
+            Object plural = labels instanceof Map ? ((Map)labels).get("plural") : null;
+            String structure = String.valueOf(plural != null ? plural
+                : schema.get("name"));
+            LOGGER.debug("Discovered the {} custom object {}.", structure,
+                objectTypeId);
+            mappings.add(AdapterMapping.forObjectType(structure,
+                String.valueOf(objectTypeId)));
+        }
+        return mappings;
+    }
+}
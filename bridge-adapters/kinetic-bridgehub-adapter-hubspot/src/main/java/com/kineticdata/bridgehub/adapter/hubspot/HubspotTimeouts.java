@@ -0,0 +1,68 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.http.client.config.RequestConfig;
+
+/**
+ * Timeouts of the requests sent to HubSpot.
+ *
+ * The connect timeout limits establishing a connection, the connection
+ * request timeout limits waiting for a pooled connection and the socket
+ * timeout limits the time between two packets of a response.  The socket
+ * timeout can be set per bridge operation, ie. a shorter timeout for retrieve
+ * than for a search that pages through many results.
+ */
+public class HubspotTimeouts {
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_CONNECTION_REQUEST_TIMEOUT_MILLIS = 10000;
+    public static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 30000;
+
+    private final RequestConfig defaultConfig;
+    private final Map<String, RequestConfig> operationConfigs = new HashMap<>();
+
+    public HubspotTimeouts() {
+        this(DEFAULT_CONNECT_TIMEOUT_MILLIS,
+            DEFAULT_CONNECTION_REQUEST_TIMEOUT_MILLIS,
+            DEFAULT_SOCKET_TIMEOUT_MILLIS, new HashMap<>());
+    }
+
+    /**
+     * @param connectTimeoutMillis
+     * @param connectionRequestTimeoutMillis
+     * @param socketTimeoutMillis socket timeout of requests that are not made
+     *   for one of the operations
+     * @param operationSocketTimeouts socket timeout in milliseconds by bridge
+     *   operation, ie. count, retrieve or search
+     */
+    public HubspotTimeouts(int connectTimeoutMillis,
+        int connectionRequestTimeoutMillis, int socketTimeoutMillis,
+        Map<String, Integer> operationSocketTimeouts) {
+
+        defaultConfig = config(connectTimeoutMillis,
+            connectionRequestTimeoutMillis, socketTimeoutMillis);
+        operationSocketTimeouts.forEach((operation, socketTimeout) ->
+            operationConfigs.put(operation, config(connectTimeoutMillis,
+                connectionRequestTimeoutMillis, socketTimeout)));
+    }
+
+    /**
+     * @param operation the bridge operation the request is made for, may be
+     *   null
+     * @return the timeouts of a request made for the operation
+     */
+    public RequestConfig forOperation(String operation) {
+        return operation == null ? defaultConfig
+            : operationConfigs.getOrDefault(operation, defaultConfig);
+    }
+
+    private static RequestConfig config(int connectTimeout,
+        int connectionRequestTimeout, int socketTimeout) {
+
+        return RequestConfig.custom()
+            .setConnectTimeout(connectTimeout)
+            .setConnectionRequestTimeout(connectionRequestTimeout)
+            .setSocketTimeout(socketTimeout)
+            .build();
+    }
+}
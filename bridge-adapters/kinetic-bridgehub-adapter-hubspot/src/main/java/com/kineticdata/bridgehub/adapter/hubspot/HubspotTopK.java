@@ -0,0 +1,98 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the first k values of a stream in sort order without holding the
+ * rest of the stream.
+ *
+ * The kept values are in a heap with the last of them at the head, so a value
+ * that sorts after it is rejected and a value that sorts before it replaces
+ * it.  Values that are equal keep the order they were offered in.
+ *
+ * @param <T> value type
+ */
+public class HubspotTopK<T> {
+
+    private final int k;
+    private final Comparator<Ranked<T>> order;
+    private final PriorityQueue<Ranked<T>> heap;
+    private long sequence;
+
+    /**
+     * @param k number of values to keep
+     * @param order sort order of the values
+     */
+    public HubspotTopK(int k, Comparator<? super T> order) {
+        this.k = k;
+        this.order = Comparator.<Ranked<T>, T>comparing(ranked -> ranked.value, order)
+            .thenComparingLong(ranked -> ranked.sequence);
+        this.heap = new PriorityQueue<>(Math.max(1, Math.min(k, 1024)),
+            this.order.reversed());
+    }
+
+    /**
+     * @param value
+     * @return true if the value is one of the first k so far
+     */
+    public boolean offer(T value) {
+        if (k <= 0) {
+            return false;
+        }
+        Ranked<T> ranked = new Ranked<>(value, sequence++);
+        if (heap.size() < k) {
+            heap.add(ranked);
+            return true;
+        }
+        if (order.compare(ranked, heap.peek()) >= 0) {
+            return false;
+        }
+        heap.poll();
+        heap.add(ranked);
+        return true;
+    }
+
+    /**
+     * @return true if k values are kept, so a value that sorts after the last
+     *   of them is rejected
+     */
+    public boolean isFull() {
+        return k > 0 && heap.size() >= k;
+    }
+
+    /**
+     * @return the last of the kept values, null if there are none
+     */
+    public T getLast() {
+        Ranked<T> last = heap.peek();
+        return last == null ? null : last.value;
+    }
+
+    public int size() {
+        return heap.size();
+    }
+
+    /**
+     * @return the kept values in sort order
+     */
+    public List<T> toList() {
+        List<Ranked<T>> ranked = new ArrayList<>(heap);
+        ranked.sort(order);
+        List<T> values = new ArrayList<>(ranked.size());
+        ranked.forEach(value -> values.add(value.value));
+        return values;
+    }
+
+    private static class Ranked<T> {
+        private final T value;
+        private final long sequence;
+
+        Ranked(T value, long sequence) {
+            this.value = value;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.util.concurrent.CompletableFuture;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Sends the requests of an api helper to HubSpot.
+ */
+public interface HubspotTransport extends AutoCloseable {
+
+    /**
+     * Send a request.  The caller must consume the entity of the response or
+     * close it to release the connection.
+     *
+     * @param request
+     * @return the response, completed exceptionally with an IOException if
+     *   the request could not be sent
+     */
+    CompletableFuture<CloseableHttpResponse> execute(HttpRequestBase request);
+
+    /**
+     * @return true if execute returns before the response is received, false
+     *   if it blocks the calling thread
+     */
+    boolean isAsync();
+
+    /**
+     * @return the leased, available and pending connections of the pool
+     */
+    PoolStats getPoolStats();
+
+    /**
+     * Release the connections and threads of the transport.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,481 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Receives the payloads of HubSpot webhook subscriptions.
+ *
+ * Every request must carry a valid v1, v2 or v3 HubSpot signature made with
+ * the client secret of the app.  The events are acknowledged right away and
+ * handed to the handler in batches, once per batch window, so that a burst
+ * of events for the same objects is applied together.
+ *
+ * The receiver listens on the loopback interface unless it is given a bind
+ * address, and rejects bodies larger than its max body size with a 413
+ * without reading more than the max.
+ */
+public class HubspotWebhookReceiver implements AutoCloseable {
+    private static final Logger LOGGER =
+        LoggerFactory.getLogger(HubspotWebhookReceiver.class);
+
+    public static final String DEFAULT_PATH = "/hubspot/webhooks";
+    public static final long DEFAULT_BATCH_WINDOW_MILLIS = 500;
+    // HubSpot sends at most 100 events, a few hundred bytes each, a request.
+    public static final int DEFAULT_MAX_BODY_BYTES = 1024 * 1024;
+    // v3 signatures older than this are rejected to prevent replays.
+    private static final long MAX_TIMESTAMP_AGE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private static final Map<String, String> OBJECT_TYPES = new HashMap<>();
+    static {
+        OBJECT_TYPES.put("contact", "contacts");
+        OBJECT_TYPES.put("company", "companies");
+        OBJECT_TYPES.put("deal", "deals");
+        OBJECT_TYPES.put("ticket", "tickets");
+        OBJECT_TYPES.put("product", "products");
+        OBJECT_TYPES.put("line_item", "line_items");
+        // Object type ids of the generic object.* subscriptions.
+        OBJECT_TYPES.put("0-1", "contacts");
+        OBJECT_TYPES.put("0-2", "companies");
+        OBJECT_TYPES.put("0-3", "deals");
+        OBJECT_TYPES.put("0-5", "tickets");
+        OBJECT_TYPES.put("0-7", "products");
+        OBJECT_TYPES.put("0-8", "line_items");
+    }
+
+    /** The changes the receiver passes on. */
+    public enum EventType {
+        CREATION, PROPERTY_CHANGE, DELETION, MERGE
+    }
+
+    /** A webhook event. */
+    public static class Event {
+        private final String objectType;
+        private final String objectId;
+        private final EventType type;
+        private final String propertyName;
+        private final String propertyValue;
+        private final List<String> mergedObjectIds;
+
+        Event(String objectType, String objectId, EventType type,
+            String propertyName, String propertyValue, List<String> mergedObjectIds) {
+
+            this.objectType = objectType;
+            this.objectId = objectId;
+            this.type = type;
+            this.propertyName = propertyName;
+            this.propertyValue = propertyValue;
+            this.mergedObjectIds = mergedObjectIds;
+        }
+
+        /** ie. companies */
+        public String getObjectType() {
+            return objectType;
+        }
+
+        /** The object, for a merge the object that was merged into. */
+        public String getObjectId() {
+            return objectId;
+        }
+
+        public EventType getType() {
+            return type;
+        }
+
+        /** The changed property of a PROPERTY_CHANGE. */
+        public String getPropertyName() {
+            return propertyName;
+        }
+
+        public String getPropertyValue() {
+            return propertyValue;
+        }
+
+        /** The objects that no longer exist after a MERGE. */
+        public List<String> getMergedObjectIds() {
+            return mergedObjectIds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s %s", type, objectType, objectId);
+        }
+    }
+
+    private final String bindAddress;
+    private final int port;
+    private final String path;
+    private final String clientSecret;
+    private final String url;
+    private final long batchWindowMillis;
+    private final int maxBodyBytes;
+    private final Consumer<List<Event>> handler;
+    private final ConcurrentLinkedQueue<Event> queue = new ConcurrentLinkedQueue<>();
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private ScheduledExecutorService flusher;
+
+    /**
+     * @param bindAddress address to listen on, null for the loopback address
+     * @param port port to listen on, 0 for any free port
+     * @param path path HubSpot posts to
+     * @param clientSecret client secret of the HubSpot app
+     * @param url url configured in HubSpot, used by v2 and v3 signatures.  If
+     *   null the url is built from the Host header and the request path.
+     * @param batchWindowMillis time events are collected before they are
+     *   handled
+     * @param maxBodyBytes largest request body that is accepted
+     * @param handler handles a batch of events
+     */
+    public HubspotWebhookReceiver(String bindAddress, int port, String path,
+        String clientSecret, String url, long batchWindowMillis, int maxBodyBytes,
+        Consumer<List<Event>> handler) {
+
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.path = path;
+        this.clientSecret = clientSecret;
+        this.url = url;
+        this.batchWindowMillis = batchWindowMillis;
+        this.maxBodyBytes = maxBodyBytes;
+        this.handler = handler;
+    }
+
+    /**
+     * Start listening.
+     *
+     * @return this
+     * @throws IOException if the address can not be bound
+     */
+    public HubspotWebhookReceiver start() throws IOException {
+        server = HttpServer.create(bindAddress == null
+            ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+            : new InetSocketAddress(bindAddress, port), 0);
+        executor = Executors.newFixedThreadPool(4,
+            HubspotAdapter.daemonThreadFactory("hubspot-webhook-"));
+        server.setExecutor(executor);
+        server.createContext(path, this::handle);
+        server.start();
+
+        flusher = Executors.newSingleThreadScheduledExecutor(
+            HubspotAdapter.daemonThreadFactory("hubspot-webhook-flush-"));
+        flusher.scheduleWithFixedDelay(this::flush, batchWindowMillis,
+            batchWindowMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * @return the port the receiver listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * @return the address the receiver listens on
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Hand the queued events to the handler.
+     */
+    void flush() {
+        List<Event> events = new ArrayList<>();
+        Event event;
+        while ((event = queue.poll()) != null) {
+            events.add(event);
+        }
+        if (events.isEmpty()) {
+            return;
+        }
+        try {
+            handler.accept(events);
+            LOGGER.debug("Handled {} webhook events.", events.size());
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to handle {} webhook events", events.size(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            flusher.shutdownNow();
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * REQUEST HANDLING
+     *--------------------------------------------------------------------------------------------*/
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = readBody(exchange, maxBodyBytes);
+            if (body == null) {
+                LOGGER.warn("Rejected a webhook request larger than {} bytes.",
+                    maxBodyBytes);
+                // The rest of the body is not read, so the connection can not
+                // be used for another request.
+                exchange.getResponseHeaders().set("Connection", "close");
+                exchange.sendResponseHeaders(413, -1);
+                return;
+            }
+            if (!isValidSignature(exchange, new String(body, StandardCharsets.UTF_8))) {
+                LOGGER.warn("Rejected a webhook request with an invalid signature.");
+                exchange.sendResponseHeaders(401, -1);
+                return;
+            }
+
+            List<Event> events;
+            try {
+                events = parseEvents(new String(body, StandardCharsets.UTF_8));
+            } catch (ParseException | ClassCastException e) {
+                LOGGER.warn("Rejected a webhook request that was not a list of events.", e);
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+            queue.addAll(events);
+            exchange.sendResponseHeaders(204, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Check the X-HubSpot-Signature-v3 header, or the X-HubSpot-Signature
+     * header of the version in X-HubSpot-Signature-Version.
+     */
+    private boolean isValidSignature(HttpExchange exchange, String body) {
+        String method = exchange.getRequestMethod();
+        String requestUrl = getRequestUrl(exchange);
+
+        String v3 = exchange.getRequestHeaders().getFirst("X-HubSpot-Signature-v3");
+        if (v3 != null) {
+            String timestamp = exchange.getRequestHeaders()
+                .getFirst("X-HubSpot-Request-Timestamp");
+            try {
+                if (timestamp == null || Math.abs(System.currentTimeMillis()
+                    - Long.parseLong(timestamp)) > MAX_TIMESTAMP_AGE_MILLIS) {
+                    return false;
+                }
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            return isEqual(v3, signV3(clientSecret, method, requestUrl, body,
+                timestamp));
+        }
+
+        String signature = exchange.getRequestHeaders().getFirst("X-HubSpot-Signature");
+        if (signature == null) {
+            return false;
+        }
+        String version = exchange.getRequestHeaders()
+            .getFirst("X-HubSpot-Signature-Version");
+        if (version == null || "v1".equals(version)) {
+            return isEqual(signature.toLowerCase(), signV1(clientSecret, body));
+        } else if ("v2".equals(version)) {
+            return isEqual(signature.toLowerCase(),
+                signV2(clientSecret, method, requestUrl, body));
+        }
+        return false;
+    }
+
+    private String getRequestUrl(HttpExchange exchange) {
+        String query = exchange.getRequestURI().getRawQuery();
+        String base = url != null ? url : "http://"
+            + exchange.getRequestHeaders().getFirst("Host")
+            + exchange.getRequestURI().getRawPath();
+        return query == null ? base : base + "?" + query;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * SIGNATURES
+     *--------------------------------------------------------------------------------------------*/
+
+    /** Hex SHA-256 of the client secret and the body. */
+    static String signV1(String clientSecret, String body) {
+        return sha256Hex(clientSecret + body);
+    }
+
+    /** Hex SHA-256 of the client secret, method, url and body. */
+    static String signV2(String clientSecret, String method, String url, String body) {
+        return sha256Hex(clientSecret + method + url + body);
+    }
+
+    /** Base64 HMAC SHA-256 of the method, url, body and timestamp. */
+    static String signV3(String clientSecret, String method, String url, String body,
+        String timestamp) {
+
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(clientSecret.getBytes(StandardCharsets.UTF_8),
+                "HmacSHA256"));
+            return Base64.getEncoder().encodeToString(mac.doFinal(
+                (method + url + body + timestamp).getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String sha256Hex(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Compare in constant time. */
+    private static boolean isEqual(String a, String b) {
+        return MessageDigest.isEqual(a.getBytes(StandardCharsets.UTF_8),
+            b.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * EVENTS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Parse a payload into events.  Events of unknown object types and
+     * subscription types, ie. associationChange, are skipped.
+     */
+    static List<Event> parseEvents(String payload) throws ParseException {
+        List<Event> events = new ArrayList<>();
+        for (Object item : (JSONArray)new JSONParser().parse(payload)) {
+            Event event = parseEvent((JSONObject)item);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    private static Event parseEvent(JSONObject event) {
+        // ie. contact.propertyChange or object.creation
+        String[] subscription = String.valueOf(event.get("subscriptionType")).split("\\.", 2);
+        if (subscription.length != 2) {
+            return null;
+        }
+        String objectType = getObjectType("object".equals(subscription[0])
+            ? String.valueOf(event.get("objectTypeId")) : subscription[0]);
+        if (objectType == null) {
+            return null;
+        }
+        String objectId = asString(event.get("objectId"));
+
+        switch (subscription[1]) {
+            case "creation":
+            case "restore":
+                return new Event(objectType, objectId, EventType.CREATION, null,
+                    null, Collections.emptyList());
+            case "propertyChange":
+                return new Event(objectType, objectId, EventType.PROPERTY_CHANGE,
+                    asString(event.get("propertyName")),
+                    asString(event.get("propertyValue")), Collections.emptyList());
+            case "deletion":
+            case "privacyDeletion":
+                return new Event(objectType, objectId, EventType.DELETION, null,
+                    null, Collections.emptyList());
+            case "merge":
+                List<String> mergedObjectIds = new ArrayList<>();
+                Object merged = event.get("mergedObjectIds");
+                if (merged instanceof List) {
+                    for (Object id : (List)merged) {
+                        mergedObjectIds.add(String.valueOf(id));
+                    }
+                }
+                Object primary = event.get("newObjectId") != null
+                    ? event.get("newObjectId") : event.get("primaryObjectId");
+                String primaryId = primary != null ? String.valueOf(primary) : objectId;
+                mergedObjectIds.remove(primaryId);
+                return new Event(objectType, primaryId, EventType.MERGE, null, null,
+                    mergedObjectIds);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @param subscriptionType the object of a subscription or an object type id
+     * @return the object type of the path of the objects, null if the objects
+     *   are not bridged
+     */
+    private static String getObjectType(String subscriptionType) {
+        // Custom objects are routed by their object type id, ie. 2-1234567.
+        return subscriptionType.startsWith("2-") 
+            ? subscriptionType : OBJECT_TYPES.get(subscriptionType);
+    }
+
+    private static String asString(Object value) {
+        return value == null ? null : String.valueOf(value);
+    }
+
+    /**
+     * @return the body, or null if it is larger than the max
+     */
+    private static byte[] readBody(HttpExchange exchange, int maxBytes)
+        throws IOException {
+
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            if (length != null && Long.parseLong(length.trim()) > maxBytes) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        // A chunked body has no length, so it is read up to one byte past the
+        // max.
+        InputStream input = exchange.getRequestBody();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = input.read(buffer, 0,
+            Math.min(buffer.length, maxBytes + 1 - output.size()))) > 0) {
+            output.write(buffer, 0, read);
+        }
+        return output.size() > maxBytes ? null : output.toByteArray();
+    }
+}
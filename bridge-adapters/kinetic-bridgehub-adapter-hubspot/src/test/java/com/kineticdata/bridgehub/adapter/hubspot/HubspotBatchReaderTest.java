@@ -0,0 +1,109 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.json.simple.JSONObject;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.After;
+import org.junit.Test;
+
+public class HubspotBatchReaderTest {
+    private HubspotStubServer server;
+    private HubspotApiHelper apiHelper;
+    private HubspotBatchReader reader;
+
+    @After
+    public void tearDown() {
+        if (reader != null) {
+            reader.close();
+        }
+        if (apiHelper != null) {
+            apiHelper.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private void start(int records, long windowMillis, int batchSize) throws Exception {
+        server = new HubspotStubServer(records).start();
+        apiHelper = new HubspotApiHelper(server.getBaseUrl(), "test",
+            new HubspotClassicTransport(10, 10, 30000, 60000));
+        reader = new HubspotBatchReader(apiHelper, windowMillis, batchSize);
+    }
+
+    /**
+     * Read the contacts at the same time.
+     */
+    private List<JSONObject> readAll(List<String> ids) throws Exception {
+        List<Callable<JSONObject>> reads = new ArrayList<>();
+        for (String id : ids) {
+            reads.add(() -> reader.read("contacts", id,
+                Collections.singletonList("firstname")));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(ids.size());
+        try {
+            List<JSONObject> objects = new ArrayList<>();
+            for (Future<JSONObject> future : executor.invokeAll(reads)) {
+                objects.add(future.get());
+            }
+            return objects;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<String> ids(int from, int to) {
+        List<String> ids = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            ids.add(String.valueOf(i));
+        }
+        return ids;
+    }
+
+    private static String getFirstname(JSONObject object) {
+        return (String)((JSONObject)object.get("properties")).get("firstname");
+    }
+
+    @Test
+    public void test_concurrent_reads_are_one_batch() throws Exception {
+        start(50, 500, 100);
+
+        List<JSONObject> objects = readAll(ids(1, 20));
+        assertEquals(1, server.getRequestCount());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(String.valueOf(i + 1), objects.get(i).get("id"));
+            assertEquals("First" + (i + 1), getFirstname(objects.get(i)));
+        }
+    }
+
+    @Test
+    public void test_missing_ids_are_null() throws Exception {
+        start(50, 500, 100);
+
+        List<JSONObject> objects = readAll(Arrays.asList("5", "9999", "7"));
+        assertEquals(1, server.getRequestCount());
+        assertEquals("First5", getFirstname(objects.get(0)));
+        assertNull(objects.get(1));
+        assertEquals("First7", getFirstname(objects.get(2)));
+    }
+
+    @Test
+    public void test_batches_are_split_at_the_max() throws Exception {
+        // The batch size is capped at the 100 inputs HubSpot accepts.
+        start(200, 500, 500);
+
+        List<JSONObject> objects = readAll(ids(1, 150));
+        assertEquals(2, server.getRequestCount());
+        for (int i = 0; i < 150; i++) {
+            assertEquals(String.valueOf(i + 1), objects.get(i).get("id"));
+        }
+    }
+}
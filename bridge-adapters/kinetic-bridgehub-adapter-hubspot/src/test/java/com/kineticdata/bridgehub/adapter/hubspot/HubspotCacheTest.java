@@ -0,0 +1,125 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+public class HubspotCacheTest {
+
+    @Test
+    public void test_read_through() throws BridgeError {
+        HubspotCache<String, String> cache =
+            new HubspotCache<>(100, 1, (key, value) -> 1);
+        AtomicInteger loads = new AtomicInteger();
+
+        assertEquals("foo", cache.get("a", 60000, () -> {
+            loads.incrementAndGet();
+            return "foo";
+        }));
+        assertEquals("foo", cache.get("a", 60000, () -> {
+            loads.incrementAndGet();
+            return "bar";
+        }));
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void test_expiration() throws Exception {
+        HubspotCache<String, String> cache =
+            new HubspotCache<>(100, 1, (key, value) -> 1);
+
+        cache.put("a", "foo", 1);
+        Thread.sleep(5);
+
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void test_lru_eviction() {
+        HubspotCache<String, String> cache =
+            new HubspotCache<>(2, 1, (key, value) -> 1);
+
+        cache.put("a", "foo", 60000);
+        cache.put("b", "bar", 60000);
+        // Touch a so that b is the least recently used entry.
+        cache.get("a");
+        cache.put("c", "baz", 60000);
+
+        assertEquals("foo", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("baz", cache.get("c"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void test_oversized_entries_are_not_kept() {
+        HubspotCache<String, String> cache =
+            new HubspotCache<>(10, 1, (key, value) -> value.length());
+
+        cache.put("a", "foo", 60000);
+        cache.put("b", "bar", 60000);
+        // Heavier than the cache, so it is not kept and evicts nothing.
+        cache.put("c", "abcdefghijk", 60000);
+        assertNull(cache.get("c"));
+        assertEquals("foo", cache.get("a"));
+        assertEquals("bar", cache.get("b"));
+        assertEquals(0, cache.getEvictionCount());
+
+        // A replaced entry is removed rather than left stale.
+        cache.put("a", "abcdefghijk", 60000);
+        assertNull(cache.get("a"));
+        assertEquals(3, cache.weight());
+    }
+
+    @Test
+    public void test_put_if_absent_is_atomic() throws Exception {
+        HubspotCache<String, Object> cache =
+            new HubspotCache<>(100, (key, value) -> 1);
+        List<Callable<Object>> puts = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            puts.add(() -> cache.putIfAbsent("a", new Object(), 60000));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            // Every caller gets the one value that was cached.
+            Set<Object> values = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Future<Object> future : executor.invokeAll(puts)) {
+                values.add(future.get());
+            }
+            assertEquals(1, values.size());
+            assertSame(cache.get("a"), values.iterator().next());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_invalidate() {
+        HubspotCache<String, String> cache =
+            new HubspotCache<>(100, (key, value) -> 1);
+
+        cache.put("Contacts|1", "foo", 60000);
+        cache.put("Contacts|2", "bar", 60000);
+        cache.put("Companies|1", "baz", 60000);
+        cache.invalidateAll(key -> key.startsWith("Contacts|"));
+
+        assertEquals(1, cache.size());
+        assertEquals("baz", cache.get("Companies|1"));
+    }
+}
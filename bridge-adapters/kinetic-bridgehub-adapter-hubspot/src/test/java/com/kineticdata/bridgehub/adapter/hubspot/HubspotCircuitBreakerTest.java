@@ -0,0 +1,81 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.concurrent.CompletableFuture;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class HubspotCircuitBreakerTest {
+
+    /**
+     * Open a breaker that opens for 100ms after 2 failures and lets 1 probe
+     * through.
+     */
+    private static HubspotCircuitBreaker open() {
+        HubspotCircuitBreaker breaker = new HubspotCircuitBreaker(50, 0, 10000,
+            100, 4, 2, 1);
+        breaker.record(0, true);
+        breaker.record(0, true);
+        assertEquals(HubspotCircuitBreaker.State.OPEN, breaker.getState());
+        return breaker;
+    }
+
+    @Test
+    public void test_unreported_probes_are_replaced() throws Exception {
+        HubspotCircuitBreaker breaker = open();
+        Thread.sleep(150);
+        // The probe never records its outcome.
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(HubspotCircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        Thread.sleep(150);
+        assertTrue(breaker.tryAcquire());
+        breaker.record(0, false);
+        assertEquals(HubspotCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void test_probe_that_is_not_sent_is_recorded() throws Exception {
+        boolean[] broken = {true};
+        try (HubspotStubServer server = new HubspotStubServer(10).start();
+            HubspotApiHelper apiHelper = new HubspotApiHelper(server.getBaseUrl(),
+                "test", new HubspotClassicTransport(10, 10, 30000, 60000)) {
+
+                @Override
+                protected CompletableFuture<CloseableHttpResponse> send(
+                    HttpRequestBase http) {
+
+                    if (broken[0]) {
+                        throw new IllegalStateException("The transport is closed.");
+                    }
+                    return super.send(http);
+                }
+            }) {
+
+            HubspotCircuitBreaker breaker = open();
+            apiHelper.setCircuitBreaker(breaker);
+            Thread.sleep(150);
+
+            // The probe fails before it is sent, which opens the circuit again.
+            BridgeError error = null;
+            try {
+                apiHelper.executeRequest("/crm/v3/objects/companies/1");
+            } catch (BridgeError e) {
+                error = e;
+            }
+            assertNotNull(error);
+            assertEquals(HubspotCircuitBreaker.State.OPEN, breaker.getState());
+
+            broken[0] = false;
+            Thread.sleep(150);
+            apiHelper.executeRequest("/crm/v3/objects/companies/1");
+            assertEquals(HubspotCircuitBreaker.State.CLOSED, breaker.getState());
+        }
+    }
+}
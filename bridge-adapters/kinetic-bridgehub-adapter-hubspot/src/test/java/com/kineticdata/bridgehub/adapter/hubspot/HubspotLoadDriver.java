@@ -0,0 +1,300 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends count, retrieve and search bridge requests to the adapter from many
+ * threads and reports the throughput and latency percentiles of each.
+ *
+ * Unless a baseUrl is given the adapter is pointed at an embedded
+ * HubspotStubServer.  Arguments are name=value pairs:
+ *
+ *   threads=200 seconds=30 warmup=5 mix=count:1,retrieve:4,search:2
+ *   records=1000 latency=50 jitter=50 errorRate=0.01
+ *   rateLimit=1000 searchRateLimit=40 baseUrl=https://api.hubapi.com apiKey=...
+ *
+ * Any other name is passed to the adapter as a property, ie.
+ * "Batch Window (ms)=5".
+ *
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *   -Dexec.mainClass=com.kineticdata.bridgehub.adapter.hubspot.HubspotLoadDriver
+ *   -Dexec.args="threads=200 seconds=30"
+ */
+public class HubspotLoadDriver {
+    private static final String[] OPERATIONS = {"count", "retrieve", "search"};
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("threads", "200");
+        options.put("seconds", "30");
+        options.put("warmup", "5");
+        options.put("mix", "count:1,retrieve:4,search:2");
+        options.put("records", String.valueOf(HubspotStubServer.DEFAULT_RECORDS));
+        options.put("latency", "50");
+        options.put("jitter", "50");
+        options.put("errorRate", "0");
+        options.put("rateLimit", "1000");
+        options.put("searchRateLimit", "40");
+        options.put("apiKey", "load-test");
+        Map<String, String> adapterProperties = new HashMap<>();
+        for (String arg : args) {
+            int index = arg.indexOf('=');
+            if (index < 0) {
+                throw new IllegalArgumentException("Expected name=value but was " + arg);
+            }
+            String name = arg.substring(0, index);
+            if (options.containsKey(name) || "baseUrl".equals(name)) {
+                options.put(name, arg.substring(index + 1));
+            } else {
+                adapterProperties.put(name, arg.substring(index + 1));
+            }
+        }
+
+        int threads = Integer.parseInt(options.get("threads"));
+        int records = Integer.parseInt(options.get("records"));
+        String[] schedule = schedule(options.get("mix"));
+
+        HubspotStubServer server = null;
+        String baseUrl = options.get("baseUrl");
+        if (baseUrl == null) {
+            server = new HubspotStubServer(records)
+                .setLatency(Long.parseLong(options.get("latency")),
+                    Long.parseLong(options.get("jitter")))
+                .setErrorRate(Double.parseDouble(options.get("errorRate")))
+                .setRateLimit(Integer.parseInt(options.get("rateLimit")))
+                .setSearchRateLimit(Integer.parseInt(options.get("searchRateLimit")))
+                .setThreads(Math.max(threads, 16))
+                .start();
+            baseUrl = server.getBaseUrl();
+        }
+
+        HubspotAdapter adapter = new HubspotAdapter();
+        adapterProperties.put(HubspotAdapter.Properties.PROPERTY_API_KEY,
+            options.get("apiKey"));
+        adapterProperties.put(HubspotAdapter.Properties.PROPERTY_API_BASE_URL, baseUrl);
+        // Enough connections that the pool is not the bottleneck unless asked.
+        adapterProperties.putIfAbsent(HubspotAdapter.Properties.PROPERTY_MAX_CONNECTIONS,
+            String.valueOf(threads));
+        adapterProperties.putIfAbsent(
+            HubspotAdapter.Properties.PROPERTY_MAX_CONNECTIONS_PER_ROUTE,
+            String.valueOf(threads));
+        adapter.setProperties(adapterProperties);
+        adapter.initialize();
+
+        System.out.printf("Running %d threads against %s for %ss after a %ss warmup%n",
+            threads, baseUrl, options.get("seconds"), options.get("warmup"));
+
+        long warmupNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("warmup")));
+        long runNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(options.get("seconds")));
+        long measureStart = System.nanoTime() + warmupNanos;
+        long end = measureStart + runNanos;
+
+        List<Worker> workers = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            Worker worker = new Worker(adapter, schedule, records, measureStart, end, done);
+            workers.add(worker);
+            Thread thread = new Thread(worker, "hubspot-load-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+
+        report(workers, TimeUnit.NANOSECONDS.toSeconds(runNanos));
+        if (server != null) {
+            System.out.printf("Stub server: %d requests, %d rate limited, %d injected"
+                + " errors%n", server.getRequestCount(), server.getRateLimitedCount(),
+                server.getInjectedErrorCount());
+            server.close();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Expand the weighted mix into the sequence of operations a worker picks
+     * from, ie. count:1,search:2 becomes [count, search, search].
+     */
+    private static String[] schedule(String mix) {
+        List<String> schedule = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (!Arrays.asList(OPERATIONS).contains(parts[0])) {
+                throw new IllegalArgumentException("Unknown operation " + parts[0]);
+            }
+            int weight = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+            for (int i = 0; i < weight; i++) {
+                schedule.add(parts[0]);
+            }
+        }
+        return schedule.toArray(new String[0]);
+    }
+
+    private static void report(List<Worker> workers, long seconds) {
+        System.out.printf("%-10s %10s %8s %10s %9s %9s %9s %9s%n", "operation",
+            "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            Latencies merged = new Latencies();
+            long errors = 0;
+            for (Worker worker : workers) {
+                merged.addAll(worker.latencies[op]);
+                errors += worker.errors[op];
+            }
+            if (merged.size == 0 && errors == 0) {
+                continue;
+            }
+            long[] sorted = Arrays.copyOf(merged.values, merged.size);
+            Arrays.sort(sorted);
+            System.out.printf("%-10s %10d %8d %10.1f %9.1f %9.1f %9.1f %9.1f%n",
+                OPERATIONS[op], sorted.length, errors,
+                (double)sorted.length / seconds,
+                millis(percentile(sorted, 0.50)), millis(percentile(sorted, 0.99)),
+                millis(percentile(sorted, 0.999)),
+                millis(sorted.length == 0 ? 0 : sorted[sorted.length - 1]));
+        }
+        for (Worker worker : workers) {
+            if (worker.firstError != null) {
+                System.out.println("First error: " + worker.firstError);
+                break;
+            }
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int)Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    /**
+     * Sends requests until the end time.  Latencies are only recorded once the
+     * warmup is over.
+     */
+    private static class Worker implements Runnable {
+        private final HubspotAdapter adapter;
+        private final String[] schedule;
+        private final int records;
+        private final long measureStart;
+        private final long end;
+        private final CountDownLatch done;
+
+        final Latencies[] latencies = new Latencies[OPERATIONS.length];
+        final long[] errors = new long[OPERATIONS.length];
+        String firstError;
+
+        Worker(HubspotAdapter adapter, String[] schedule, int records,
+            long measureStart, long end, CountDownLatch done) {
+
+            this.adapter = adapter;
+            this.schedule = schedule;
+            this.records = records;
+            this.measureStart = measureStart;
+            this.end = end;
+            this.done = done;
+            for (int i = 0; i < latencies.length; i++) {
+                latencies[i] = new Latencies();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (long start = System.nanoTime(); start < end; start = System.nanoTime()) {
+                    String operation = schedule[random.nextInt(schedule.length)];
+                    int op = Arrays.asList(OPERATIONS).indexOf(operation);
+                    boolean failed = false;
+                    try {
+                        execute(operation, random);
+                    } catch (BridgeError | RuntimeException e) {
+                        failed = true;
+                        if (firstError == null) {
+                            firstError = operation + ": " + e;
+                        }
+                    }
+                    long finish = System.nanoTime();
+                    if (start >= measureStart && finish <= end) {
+                        if (failed) {
+                            errors[op]++;
+                        } else {
+                            latencies[op].add(finish - start);
+                        }
+                    }
+                }
+            } finally {
+                done.countDown();
+            }
+        }
+
+        private void execute(String operation, ThreadLocalRandom random)
+            throws BridgeError {
+
+            BridgeRequest request = new BridgeRequest();
+            Map<String, String> parameters = new HashMap<>();
+            switch (operation) {
+                case "count":
+                    request.setStructure("Companies");
+                    request.setFields(Arrays.asList("id"));
+                    request.setQuery("body={\"filterGroups\":[{\"filters\":[{"
+                        + "\"propertyName\":\"industry\",\"operator\":\"EQ\","
+                        + "\"value\":\"<%=parameter[\"Industry\"]%>\"}]}]}");
+                    parameters.put("Industry", "INDUSTRY_" + random.nextInt(7));
+                    request.setParameters(parameters);
+                    adapter.count(request);
+                    break;
+                case "retrieve":
+                    request.setStructure("Contacts");
+                    request.setFields(Arrays.asList("id", "$.properties.email"));
+                    request.setQuery("id=<%=parameter[\"Id\"]%>");
+                    parameters.put("Id", String.valueOf(1 + random.nextInt(records)));
+                    request.setParameters(parameters);
+                    adapter.retrieve(request);
+                    break;
+                default:
+                    request.setStructure("Tickets");
+                    request.setFields(Arrays.asList("id", "$.properties.subject",
+                        "$.properties.hs_ticket_priority"));
+                    request.setQuery("limit=100");
+                    request.setParameters(parameters);
+                    adapter.search(request);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * A growable array of latencies in nanoseconds owned by one thread.
+     */
+    private static class Latencies {
+        long[] values = new long[1024];
+        int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void addAll(Latencies other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.values[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class HubspotMetricsTest {
+
+    @Test
+    public void test_histogram_percentiles() {
+        HubspotLatencyHistogram histogram = new HubspotLatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500, histogram.getPercentileMillis(50), 500 * 0.04);
+        assertEquals(990, histogram.getPercentileMillis(99), 990 * 0.04);
+        assertEquals(1000, histogram.getMaxMillis(), 0.001);
+        assertEquals(500.5, histogram.getMeanMillis(), 0.001);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileMillis(99), 0);
+    }
+
+    @Test
+    public void test_operation_mbeans() throws Exception {
+        try (HubspotStubServer server = new HubspotStubServer(10).start()) {
+            Map<String, String> properties = new HashMap<>();
+            properties.put(HubspotAdapter.Properties.PROPERTY_API_KEY, "test");
+            properties.put(HubspotAdapter.Properties.PROPERTY_API_BASE_URL,
+                server.getBaseUrl());
+            HubspotAdapter adapter = new HubspotAdapter();
+            adapter.setProperties(properties);
+            adapter.initialize();
+
+            BridgeRequest request = new BridgeRequest();
+            request.setStructure("Contacts");
+            request.setFields(Arrays.asList("id"));
+            request.setQuery("id=1");
+            adapter.retrieve(request);
+            request.setQuery("id=404");
+            try {
+                adapter.retrieve(request);
+            } catch (BridgeError e) {
+                // Counted as an error
+            }
+
+            HubspotOperationMetrics metrics =
+                adapter.getMetrics().get("Contacts", "retrieve");
+            assertEquals(2, metrics.getRequestCount());
+            assertEquals(1, metrics.getErrorCount());
+            assertEquals(2, metrics.getHttpRequestCount());
+            assertTrue(metrics.getBytesReceived() > 0);
+
+            MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1, mbeans.queryNames(new ObjectName(HubspotMetrics.DOMAIN
+                + ":type=Operation,structure=\"Contacts\",operation=retrieve,*"),
+                null).size());
+
+            adapter.getMetrics().close();
+            assertEquals(0, mbeans.queryNames(new ObjectName(HubspotMetrics.DOMAIN
+                + ":type=Operation,structure=\"Contacts\",operation=retrieve,*"),
+                null).size());
+        }
+    }
+
+    @Test
+    public void test_mbeans_are_released() throws Exception {
+        try (HubspotStubServer server = new HubspotStubServer(10).start()) {
+            Map<String, String> properties = new HashMap<>();
+            properties.put(HubspotAdapter.Properties.PROPERTY_API_KEY, "test");
+            properties.put(HubspotAdapter.Properties.PROPERTY_API_BASE_URL,
+                server.getBaseUrl());
+            HubspotAdapter adapter = new HubspotAdapter();
+            adapter.setProperties(properties);
+            adapter.initialize();
+            BridgeRequest request = new BridgeRequest();
+            request.setStructure("Tickets");
+            request.setFields(Arrays.asList("id"));
+            request.setQuery("id=1");
+            adapter.retrieve(request);
+
+            MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+            ObjectName tickets = new ObjectName(HubspotMetrics.DOMAIN
+                + ":type=Operation,structure=\"Tickets\",*");
+            assertEquals(1, mbeans.queryNames(tickets, null).size());
+
+            // Initializing again releases the MBeans of the previous setup.
+            adapter.initialize();
+            assertEquals(0, mbeans.queryNames(tickets, null).size());
+            adapter.retrieve(request);
+            assertEquals(1, mbeans.queryNames(tickets, null).size());
+
+            // An adapter that is dropped without being closed is released
+            // once it is collected.
+            adapter = null;
+            for (int i = 0; i < 50 && !mbeans.queryNames(tickets, null).isEmpty(); i++) {
+                System.gc();
+                Thread.sleep(20);
+                new HubspotMetrics().close();
+            }
+            assertEquals(0, mbeans.queryNames(tickets, null).size());
+        }
+    }
+}
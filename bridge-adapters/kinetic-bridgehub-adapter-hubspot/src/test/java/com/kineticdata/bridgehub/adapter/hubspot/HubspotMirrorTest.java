@@ -0,0 +1,151 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class HubspotMirrorTest {
+
+    private HubspotAdapter startAdapter(HubspotStubServer server, Path directory)
+        throws Exception {
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put(HubspotAdapter.Properties.PROPERTY_API_KEY, "test");
+        properties.put(HubspotAdapter.Properties.PROPERTY_API_BASE_URL,
+            server.getBaseUrl());
+        properties.put(HubspotAdapter.Properties.PROPERTY_MIRROR_STRUCTURES,
+            "Companies");
+        properties.put(HubspotAdapter.Properties.PROPERTY_MIRROR_PROPERTIES,
+            "name,industry");
+        properties.put(HubspotAdapter.Properties.PROPERTY_MIRROR_DIRECTORY,
+            directory.toString());
+        properties.put(HubspotAdapter.Properties.PROPERTY_MIRROR_SYNC_INTERVAL,
+            "3600");
+        HubspotAdapter adapter = new HubspotAdapter();
+        adapter.setProperties(properties);
+        adapter.initialize();
+        return adapter;
+    }
+
+    @Test
+    public void test_mirror_answers_without_hubspot() throws Exception {
+        Path directory = Files.createTempDirectory("hubspot-mirror");
+        try (HubspotStubServer server = new HubspotStubServer(250).start()) {
+            HubspotAdapter adapter = startAdapter(server, directory);
+            HubspotMirror mirror = adapter.getMirror();
+            // Wait for the seed started by initialize.
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!mirror.isFresh("companies") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(250, mirror.size("companies"));
+
+            long requests = server.getRequestCount();
+            BridgeRequest request = new BridgeRequest();
+            request.setStructure("Companies");
+            request.setFields(Arrays.asList("id", "$.properties.name"));
+            request.setQuery("body={\"filterGroups\":[{\"filters\":[{\"propertyName\":"
+                + "\"industry\",\"operator\":\"EQ\",\"value\":\"INDUSTRY_0\"}]}]}");
+            assertEquals(Integer.valueOf(35), adapter.count(request).getValue());
+            assertEquals(35, adapter.search(request).getRecords().size());
+
+            // Uses the domain index.
+            request.setQuery("body={\"filterGroups\":[{\"filters\":[{\"propertyName\":"
+                + "\"domain\",\"operator\":\"EQ\",\"value\":\"Company42.example.com\"}]}]}");
+            RecordList records = adapter.search(request);
+            assertEquals(1, records.getRecords().size());
+            assertEquals("Company 42", records.getRecords().get(0)
+                .getValue("$.properties.name"));
+
+            request.setQuery("fetchAll=true&limit=100");
+            assertEquals(250, adapter.search(request).getRecords().size());
+
+            request.setQuery("id=42");
+            assertEquals("Company 42", adapter.retrieve(request)
+                .getValue("$.properties.name"));
+            assertEquals(requests, server.getRequestCount());
+
+            // Filters on properties that are not mirrored go to HubSpot.
+            request.setQuery("body={\"filterGroups\":[{\"filters\":[{\"propertyName\":"
+                + "\"numberofemployees\",\"operator\":\"GT\",\"value\":\"2400\"}]}]}");
+            assertEquals(Integer.valueOf(10), adapter.count(request).getValue());
+            assertEquals(requests + 1, server.getRequestCount());
+
+            server.update("companies", "42", "name", "Renamed");
+            server.archive("companies", "7");
+            mirror.sync("companies", true);
+            request.setQuery("id=42");
+            assertEquals("Renamed", adapter.retrieve(request)
+                .getValue("$.properties.name"));
+            assertEquals(249, mirror.size("companies"));
+
+            // A restart loads the snapshot and is fresh without a seed.
+            HubspotAdapter restarted = startAdapter(server, directory);
+            assertTrue(restarted.getMirror().isFresh("companies"));
+            assertEquals(249, restarted.getMirror().size("companies"));
+            restarted.getMirror().close();
+            mirror.close();
+        }
+    }
+
+    @Test
+    public void test_mirror_sorts_mixed_values() throws Exception {
+        Path directory = Files.createTempDirectory("hubspot-mirror");
+        try (HubspotStubServer server = new HubspotStubServer(250).start()) {
+            HubspotAdapter adapter = startAdapter(server, directory);
+            HubspotMirror mirror = adapter.getMirror();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (!mirror.isFresh("companies") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            // Names that are numbers, text starting with digits and text, in
+            // an order that has no pattern.
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < 250; i++) {
+                String[] kinds = {String.valueOf(i % 37), (i % 23) + "e",
+                    (i % 11) + "M", "Acme " + (i % 7), "NaN", "1d", "Infinity"};
+                names.add(kinds[i % kinds.length]);
+            }
+            Collections.shuffle(names, new Random(42));
+            for (int i = 0; i < 250; i++) {
+                server.update("companies", String.valueOf(i + 1), "name", names.get(i));
+            }
+            mirror.sync("companies", true);
+
+            JSONObject response = mirror.search("companies", (JSONObject)JSONValue.parse(
+                "{\"sorts\":[{\"propertyName\":\"name\",\"direction\":\"ASCENDING\"}],"
+                + "\"properties\":[\"name\"],\"limit\":100}"));
+            List<String> sorted = new ArrayList<>();
+            for (Object result : (List<?>)response.get("results")) {
+                sorted.add((String)((Map<?, ?>)((Map<?, ?>)result).get("properties"))
+                    .get("name"));
+            }
+            // The 36 numbers come first, in numeric order, then the text.
+            assertEquals(100, sorted.size());
+            for (int i = 0; i < sorted.size(); i++) {
+                assertEquals(sorted.get(i), i < 36, sorted.get(i).matches("\\d+"));
+                if (i > 0 && i < 36) {
+                    assertTrue(sorted.get(i - 1) + " " + sorted.get(i),
+                        Integer.parseInt(sorted.get(i - 1)) <= Integer.parseInt(sorted.get(i)));
+                }
+            }
+            assertEquals("0", sorted.get(0));
+            assertEquals("0e", sorted.get(36));
+            mirror.close();
+        }
+    }
+}
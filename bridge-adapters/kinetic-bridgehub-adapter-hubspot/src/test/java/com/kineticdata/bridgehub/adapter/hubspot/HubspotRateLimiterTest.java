@@ -0,0 +1,111 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class HubspotRateLimiterTest {
+
+    @Test
+    public void test_tokens_refill() throws Exception {
+        // 5 requests a second, a token every 200ms.
+        HubspotRateLimiter limiter = new HubspotRateLimiter(5, 1000, 100, 3, 10000);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.reserve(false));
+        }
+        long wait = limiter.reserve(false);
+        assertTrue(wait > 150 && wait <= 201);
+
+        // The reservation took the next token, the one after it is due 200ms
+        // later.
+        Thread.sleep(450);
+        assertEquals(0, limiter.reserve(false));
+    }
+
+    @Test
+    public void test_search_limit() throws Exception {
+        HubspotRateLimiter limiter = new HubspotRateLimiter(100, 10000, 2, 3, 10000);
+        assertEquals(0, limiter.reserve(true));
+        assertEquals(0, limiter.reserve(true));
+        long wait = limiter.reserve(true);
+        assertTrue(wait > 450 && wait <= 501);
+
+        // Other requests only use the burst limit.
+        assertEquals(0, limiter.reserve(false));
+    }
+
+    @Test
+    public void test_max_wait() throws Exception {
+        HubspotRateLimiter limiter = new HubspotRateLimiter(2, 10000, 1, 3, 100);
+        assertEquals(0, limiter.reserve(true));
+
+        BridgeError error = null;
+        try {
+            limiter.reserve(true);
+        } catch (BridgeError e) {
+            error = e;
+        }
+        assertNotNull(error);
+
+        // The rejected search gave its burst token back.
+        assertEquals(0, limiter.reserve(false));
+        error = null;
+        try {
+            limiter.reserve(false);
+        } catch (BridgeError e) {
+            error = e;
+        }
+        assertNotNull(error);
+    }
+
+    @Test
+    public void test_reservations_under_contention() throws Exception {
+        // 10 requests a second, a token every 100ms.
+        HubspotRateLimiter limiter = new HubspotRateLimiter(10, 1000, 1000, 3, 10000);
+        List<Callable<List<Long>>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(() -> {
+                List<Long> due = new ArrayList<>();
+                for (int j = 0; j < 5; j++) {
+                    long wait = limiter.reserve(false);
+                    due.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime()) + wait);
+                }
+                return due;
+            });
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Long> due = new ArrayList<>();
+        try {
+            for (Future<List<Long>> future : executor.invokeAll(tasks)) {
+                due.addAll(future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // The reservations past the bucket, the first 10 and any refilled
+        // while the threads started, each get their own slot 100ms after the
+        // one before it.
+        Collections.sort(due);
+        assertEquals(40, due.size());
+        int waiting = 0;
+        for (int i = 1; i < due.size(); i++) {
+            if (due.get(i - 1) > due.get(0) + 50) {
+                long gap = due.get(i) - due.get(i - 1);
+                assertTrue("Reservations " + gap + "ms apart", gap >= 98 && gap <= 102);
+                waiting++;
+            }
+        }
+        assertTrue(waiting >= 25);
+    }
+}
@@ -0,0 +1,838 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * A local stand-in for the HubSpot v3 CRM api.
+ *
+ * Implements list, get by id, search and batch read for generated companies,
+ * contacts, tickets, deals and a custom Pets object (2-100) with HubSpot's
+ * paging (paging.next.after) and search total, gets by a unique property
+ * (idProperty), the v4 association reads, the custom object schemas and the
+ * property types.  Objects can be updated and archived
+ * while the server runs.  Object i of one type is associated
+ * with every object j of another type where i and j are equal modulo 10.  Requests over the configured rate limits are rejected with a 429
+ * and the X-HubSpot-RateLimit-* headers.  Latency and 502 errors can be
+ * injected to see how the adapter behaves when HubSpot is slow or failing.
+ */
+public class HubspotStubServer implements AutoCloseable {
+    public static final int DEFAULT_RECORDS = 1000;
+    private static final int MAX_LIMIT = 100;
+    private static final long BURST_INTERVAL_MILLIS = 10000;
+    private static final String[] OBJECT_TYPES = 
+        {"companies", "contacts", "tickets", "deals", "2-100"};
+    private static final String SCHEMAS_PATH = "/crm/v3/schemas";
+    private static final String PROPERTIES_PATH = "/crm/v3/properties/";
+    // Generated properties that are not strings, by type.
+    private static final List<String> NUMBER_PROPERTIES =
+        Arrays.asList("hs_object_id", "numberofemployees", "amount");
+    private static final List<String> DATETIME_PROPERTIES =
+        Arrays.asList("createdate", "hs_lastmodifieddate", "lastmodifieddate");
+    private static final String OBJECTS_PATH = "/crm/v3/objects/";
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter
+        .ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+    private static final String ASSOCIATIONS_PATH = "/crm/v4/associations/";
+    private static final String V4_OBJECTS_PATH = "/crm/v4/objects/";
+    private static final int ASSOCIATION_MODULUS = 10;
+    // Associations per result of a batch read, more are paged.
+    private static final int ASSOCIATION_BATCH_LIMIT = 20;
+    private static final int ASSOCIATION_MAX_LIMIT = 500;
+
+    // Lists are replaced rather than modified so requests never see a
+    // partial update.
+    private final Map<String, List<JSONObject>> objects = new ConcurrentHashMap<>();
+    private final Map<String, List<JSONObject>> archivedObjects = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, JSONObject>> objectsById = new HashMap<>();
+    private final int records;
+
+    private int rateLimit = Integer.MAX_VALUE;
+    private int searchRateLimit = Integer.MAX_VALUE;
+    private long latencyMillis;
+    private long latencyJitterMillis;
+    private int slowEvery;
+    private long slowMillis;
+    private double errorRate;
+    private int threads = 256;
+
+    private final Window burstWindow = new Window(BURST_INTERVAL_MILLIS);
+    private final Window searchWindow = new Window(1000);
+
+    private final LongAdder requests = new LongAdder();
+    private final AtomicLong sequence = new AtomicLong();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public HubspotStubServer() {
+        this(DEFAULT_RECORDS);
+    }
+
+    /**
+     * @param records number of objects generated for each object type
+     */
+    public HubspotStubServer(int records) {
+        this.records = records;
+        for (String objectType : OBJECT_TYPES) {
+            List<JSONObject> list = new ArrayList<>(records);
+            Map<String, JSONObject> byId = new ConcurrentHashMap<>();
+            for (int i = 1; i <= records; i++) {
+                JSONObject object = generate(objectType, i);
+                list.add(object);
+                byId.put((String)object.get("id"), object);
+            }
+            objects.put(objectType, list);
+            archivedObjects.put(objectType, new ArrayList<>());
+            objectsById.put(objectType, byId);
+        }
+    }
+
+    /**
+     * Set a property of an object and its last modified date to now.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void update(String objectType, String id, String property,
+        String value) {
+
+        JSONObject object = new JSONObject(objectsById.get(objectType).get(id));
+        JSONObject properties = new JSONObject((JSONObject)object.get("properties"));
+        String timestamp = TIMESTAMP_FORMAT.format(Instant.now());
+        properties.put(property, value);
+        properties.put("hs_lastmodifieddate", timestamp);
+        if ("contacts".equals(objectType)) {
+            properties.put("lastmodifieddate", timestamp);
+        }
+        object.put("properties", properties);
+        object.put("updatedAt", timestamp);
+
+        objectsById.get(objectType).put(id, object);
+        objects.put(objectType, objects.get(objectType).stream()
+            .map(o -> id.equals(o.get("id")) ? object : o)
+            .collect(Collectors.toList()));
+    }
+
+    /**
+     * Move an object to the archived list.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void archive(String objectType, String id) {
+        JSONObject object = new JSONObject(objectsById.get(objectType).remove(id));
+        object.put("archived", true);
+        objects.put(objectType, objects.get(objectType).stream()
+            .filter(o -> !id.equals(o.get("id"))).collect(Collectors.toList()));
+        List<JSONObject> archived = new ArrayList<>(archivedObjects.get(objectType));
+        archived.add(object);
+        archivedObjects.put(objectType, archived);
+    }
+
+    /** Requests allowed per 10 second interval before a 429. */
+    public HubspotStubServer setRateLimit(int rateLimit) {
+        this.rateLimit = rateLimit;
+        return this;
+    }
+
+    /** Search requests allowed per second before a 429. */
+    public HubspotStubServer setSearchRateLimit(int searchRateLimit) {
+        this.searchRateLimit = searchRateLimit;
+        return this;
+    }
+
+    /** Fixed latency plus up to jitter millis of random latency per request. */
+    public HubspotStubServer setLatency(long latencyMillis, long jitterMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyJitterMillis = jitterMillis;
+        return this;
+    }
+
+    /** Every nth request takes an extra millis to respond. */
+    public HubspotStubServer setSlowRequests(int every, long millis) {
+        this.slowEvery = every;
+        this.slowMillis = millis;
+        return this;
+    }
+
+    /** Fraction of requests, 0 to 1, that fail with a 502. */
+    public HubspotStubServer setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /** Number of threads serving requests. */
+    public HubspotStubServer setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Start listening on an ephemeral port of the loopback address.
+     *
+     * @return this
+     * @throws IOException
+     */
+    public HubspotStubServer start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        executor = Executors.newFixedThreadPool(threads,
+            HubspotAdapter.daemonThreadFactory("hubspot-stub-"));
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return this;
+    }
+
+    /** The value for the adapter's API Base Url property. */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    public long getInjectedErrorCount() {
+        return injectedErrors.sum();
+    }
+
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * REQUEST HANDLING
+     *--------------------------------------------------------------------------------------------*/
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try {
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            boolean search = path.endsWith("/search");
+
+            sleep(latencyMillis + (latencyJitterMillis > 0
+                ? ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1) : 0));
+            if (slowEvery > 0 && sequence.incrementAndGet() % slowEvery == 0) {
+                sleep(slowMillis);
+            }
+
+            if (!query.containsKey("hapikey")) {
+                sendError(exchange, 401, "Authentication credentials not found.");
+                return;
+            }
+            long remaining = burstWindow.acquire(rateLimit);
+            if (remaining < 0 || (search && searchWindow.acquire(searchRateLimit) < 0)) {
+                rateLimited.increment();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                sendError(exchange, 429, "You have reached your "
+                    + (remaining < 0 ? "ten_secondly_rolling" : "secondly") + " limit.",
+                    Math.max(remaining, 0));
+                return;
+            }
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                injectedErrors.increment();
+                sendError(exchange, 502, "Injected error.", remaining);
+                return;
+            }
+
+            route(exchange, path, query, remaining);
+        } catch (RuntimeException | ParseException e) {
+            sendError(exchange, 500, String.valueOf(e.getMessage()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange, String path, Map<String, String> query,
+        long remaining) throws IOException, ParseException {
+
+        if (path.startsWith(ASSOCIATIONS_PATH) || path.startsWith(V4_OBJECTS_PATH)) {
+            routeAssociations(exchange, path, query, remaining);
+            return;
+        }
+        if (SCHEMAS_PATH.equals(path)) {
+            send(exchange, 200, schemas(), remaining);
+            return;
+        }
+        if (path.startsWith(PROPERTIES_PATH)
+            && objects.containsKey(path.substring(PROPERTIES_PATH.length()))) {
+            send(exchange, 200, properties(path.substring(PROPERTIES_PATH.length())),
+                remaining);
+            return;
+        }
+        if (!path.startsWith(OBJECTS_PATH)) {
+            sendError(exchange, 404, "Not found.", remaining);
+            return;
+        }
+        String[] segments = path.substring(OBJECTS_PATH.length()).split("/");
+        List<JSONObject> list = objects.get(segments[0]);
+        if (list == null) {
+            sendError(exchange, 404, "Unknown object type " + segments[0] + ".", remaining);
+            return;
+        }
+        String objectType = segments[0];
+        boolean post = "POST".equals(exchange.getRequestMethod());
+
+        JSONObject response;
+        if (segments.length == 1 && !post) {
+            response = list(objectType, query);
+        } else if (segments.length == 2 && post && "search".equals(segments[1])) {
+            response = search(objectType, readBody(exchange));
+        } else if (segments.length == 3 && post && "batch".equals(segments[1])
+            && "read".equals(segments[2])) {
+            response = batchRead(objectType, readBody(exchange));
+        } else if (segments.length == 2 && !post) {
+            JSONObject object = query.containsKey("idProperty")
+                ? findByProperty(list, query.get("idProperty"), segments[1])
+                : objectsById.get(objectType).get(segments[1]);
+            if (object == null) {
+                sendError(exchange, 404, "Object not found.  objectId are usually numeric.",
+                    remaining);
+                return;
+            }
+            response = project(object, splitProperties(query.get("properties")));
+        } else {
+            sendError(exchange, 405, "Method not allowed.", remaining);
+            return;
+        }
+        send(exchange, 200, response, remaining);
+    }
+
+    /**
+     * POST /crm/v4/associations/{from}/{to}/batch/read and
+     * GET /crm/v4/objects/{from}/{id}/associations/{to}.
+     */
+    @SuppressWarnings("unchecked")
+    private void routeAssociations(HttpExchange exchange, String path,
+        Map<String, String> query, long remaining) throws IOException, ParseException {
+
+        boolean post = "POST".equals(exchange.getRequestMethod());
+        String[] segments;
+        String fromType, toType;
+        if (path.startsWith(ASSOCIATIONS_PATH)) {
+            segments = path.substring(ASSOCIATIONS_PATH.length()).split("/");
+            if (!post || segments.length != 4 || !"batch".equals(segments[2])
+                || !"read".equals(segments[3])) {
+                sendError(exchange, 405, "Method not allowed.", remaining);
+                return;
+            }
+            fromType = segments[0];
+            toType = segments[1];
+        } else {
+            segments = path.substring(V4_OBJECTS_PATH.length()).split("/");
+            if (post || segments.length != 4 || !"associations".equals(segments[2])) {
+                sendError(exchange, 405, "Method not allowed.", remaining);
+                return;
+            }
+            fromType = segments[0];
+            toType = segments[3];
+        }
+        if (!objects.containsKey(fromType) || !objects.containsKey(toType)) {
+            sendError(exchange, 404, "Unknown object type.", remaining);
+            return;
+        }
+
+        JSONObject response;
+        if (post) {
+            JSONArray results = new JSONArray();
+            for (Object input : (JSONArray)readBody(exchange).get("inputs")) {
+                String id = asString(((JSONObject)input).get("id"));
+                if (objectsById.get(fromType).containsKey(id)) {
+                    JSONObject result = associationPage(id, ASSOCIATION_BATCH_LIMIT, 0);
+                    JSONObject from = new JSONObject();
+                    from.put("id", id);
+                    result.put("from", from);
+                    result.put("to", result.remove("results"));
+                    results.add(result);
+                }
+            }
+            response = new JSONObject();
+            response.put("status", "COMPLETE");
+            response.put("results", results);
+        } else {
+            if (!objectsById.get(fromType).containsKey(segments[1])) {
+                sendError(exchange, 404, "Object not found.", remaining);
+                return;
+            }
+            String limit = query.get("limit");
+            String after = query.get("after");
+            response = associationPage(segments[1],
+                limit == null ? ASSOCIATION_MAX_LIMIT
+                    : Math.min(ASSOCIATION_MAX_LIMIT, Integer.parseInt(limit)),
+                after == null || after.isEmpty() ? 0 : Integer.parseInt(after));
+        }
+        send(exchange, 200, response, remaining);
+    }
+
+    /**
+     * A page of the associations of an object.  The after token is the offset
+     * of the next association.
+     */
+    @SuppressWarnings("unchecked")
+    private JSONObject associationPage(String id, int limit, int after) {
+        int first = (Integer.parseInt(id) - 1) % ASSOCIATION_MODULUS + 1;
+        List<Integer> toIds = new ArrayList<>();
+        for (int toId = first; toId <= records; toId += ASSOCIATION_MODULUS) {
+            toIds.add(toId);
+        }
+
+        JSONArray results = new JSONArray();
+        int end = Math.min(toIds.size(), after + limit);
+        for (int i = after; i < end; i++) {
+            JSONObject association = new JSONObject();
+            association.put("toObjectId", toIds.get(i));
+            results.add(association);
+        }
+        JSONObject page = new JSONObject();
+        page.put("results", results);
+        if (end < toIds.size()) {
+            JSONObject next = new JSONObject();
+            next.put("after", String.valueOf(end));
+            JSONObject paging = new JSONObject();
+            paging.put("next", next);
+            page.put("paging", paging);
+        }
+        return page;
+    }
+
+    private JSONObject list(String objectType, Map<String, String> query) {
+        List<JSONObject> list = Boolean.parseBoolean(query.get("archived"))
+            ? archivedObjects.get(objectType) : objects.get(objectType);
+        return page(list, query.get("limit"), query.get("after"),
+            splitProperties(query.get("properties")), false);
+    }
+
+    private JSONObject search(String objectType, JSONObject body) {
+        List<JSONObject> matches = objects.get(objectType).stream()
+            .filter(matcher((JSONArray)body.get("filterGroups")))
+            .collect(Collectors.toList());
+
+        JSONArray sorts = (JSONArray)body.get("sorts");
+        if (sorts != null && !sorts.isEmpty()) {
+            matches.sort(comparator(sorts));
+        }
+
+        return page(matches, asString(body.get("limit")), asString(body.get("after")),
+            toStrings((JSONArray)body.get("properties")), true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private JSONObject batchRead(String objectType, JSONObject body) {
+        List<String> properties = toStrings((JSONArray)body.get("properties"));
+        JSONArray results = new JSONArray();
+        for (Object input : (JSONArray)body.get("inputs")) {
+            JSONObject object = objectsById.get(objectType)
+                .get(asString(((JSONObject)input).get("id")));
+            if (object != null) {
+                results.add(project(object, properties));
+            }
+        }
+        JSONObject response = new JSONObject();
+        response.put("status", "COMPLETE");
+        response.put("results", results);
+        return response;
+    }
+
+    /**
+     * A page of objects.  The after token is the offset of the next object.
+     */
+    @SuppressWarnings("unchecked")
+    private JSONObject page(List<JSONObject> list, String limitValue, String afterValue,
+        List<String> properties, boolean total) {
+
+        int limit = limitValue == null ? 10
+            : Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(limitValue)));
+        int after = afterValue == null || afterValue.isEmpty()
+            ? 0 : Integer.parseInt(afterValue);
+
+        JSONArray results = new JSONArray();
+        int end = Math.min(list.size(), after + limit);
+        for (int i = after; i < end; i++) {
+            results.add(project(list.get(i), properties));
+        }
+
+        JSONObject response = new JSONObject();
+        if (total) {
+            response.put("total", list.size());
+        }
+        response.put("results", results);
+        if (end < list.size()) {
+            JSONObject next = new JSONObject();
+            next.put("after", String.valueOf(end));
+            JSONObject paging = new JSONObject();
+            paging.put("next", next);
+            response.put("paging", paging);
+        }
+        return response;
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * SEARCH FILTERS
+     *--------------------------------------------------------------------------------------------*/
+
+    /**
+     * Filter groups are OR'ed, the filters in a group are AND'ed.
+     */
+    private static Predicate<JSONObject> matcher(JSONArray filterGroups) {
+        if (filterGroups == null || filterGroups.isEmpty()) {
+            return object -> true;
+        }
+        Predicate<JSONObject> any = object -> false;
+        for (Object group : filterGroups) {
+            Predicate<JSONObject> all = object -> true;
+            for (Object filter : (JSONArray)((JSONObject)group).get("filters")) {
+                all = all.and(filter((JSONObject)filter));
+            }
+            any = any.or(all);
+        }
+        return any;
+    }
+
+    private static Predicate<JSONObject> filter(JSONObject filter) {
+        String property = (String)filter.get("propertyName");
+        String operator = (String)filter.get("operator");
+        String value = asString(filter.get("value"));
+        List<String> values = toStrings((JSONArray)filter.get("values"));
+
+        return object -> {
+            String actual = asString(((JSONObject)object.get("properties")).get(property));
+            switch (operator) {
+                case "EQ":
+                    return value.equals(actual);
+                case "NEQ":
+                    return !value.equals(actual);
+                case "IN":
+                    return values.contains(actual);
+                case "NOT_IN":
+                    return !values.contains(actual);
+                case "HAS_PROPERTY":
+                    return actual != null;
+                case "NOT_HAS_PROPERTY":
+                    return actual == null;
+                case "CONTAINS_TOKEN":
+                    return actual != null
+                        && actual.toLowerCase().contains(value.replace("*", "").toLowerCase());
+                case "GT":
+                    return actual != null && compare(actual, value) > 0;
+                case "GTE":
+                    return actual != null && compare(actual, value) >= 0;
+                case "LT":
+                    return actual != null && compare(actual, value) < 0;
+                case "LTE":
+                    return actual != null && compare(actual, value) <= 0;
+                case "BETWEEN":
+                    return actual != null && compare(actual, value) >= 0
+                        && compare(actual, asString(filter.get("highValue"))) <= 0;
+                default:
+                    throw new IllegalArgumentException("Unsupported operator " + operator);
+            }
+        };
+    }
+
+    private static Comparator<JSONObject> comparator(JSONArray sorts) {
+        Comparator<JSONObject> comparator = null;
+        for (Object sort : sorts) {
+            String property = (String)((JSONObject)sort).get("propertyName");
+            Comparator<JSONObject> next = (a, b) -> compare(
+                asString(((JSONObject)a.get("properties")).get(property)),
+                asString(((JSONObject)b.get("properties")).get(property)));
+            if ("DESCENDING".equals(((JSONObject)sort).get("direction"))) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    /**
+     * Numbers compare as numbers, everything else as strings.  Nulls sort
+     * last.
+     */
+    private static int compare(String a, String b) {
+        if (a == null || b == null) {
+            return a == null ? (b == null ? 0 : 1) : -1;
+        }
+        try {
+            return Double.compare(Double.parseDouble(a), Double.parseDouble(b));
+        } catch (NumberFormatException e) {
+            return a.compareTo(b);
+        }
+    }
+
+    /*----------------------------------------------------------------------------------------------
+     * HELPER METHODS
+     *--------------------------------------------------------------------------------------------*/
+
+    private static JSONObject findByProperty(List<JSONObject> list, String property,
+        String value) {
+
+        for (JSONObject object : list) {
+            if (value.equals(((JSONObject)object.get("properties")).get(property))) {
+                return object;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The schema of the custom Pets object.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject schemas() {
+        JSONObject labels = new JSONObject();
+        labels.put("singular", "Pet");
+        labels.put("plural", "Pets");
+        JSONObject schema = new JSONObject();
+        schema.put("name", "pets");
+        schema.put("labels", labels);
+        schema.put("objectTypeId", "2-100");
+        JSONArray results = new JSONArray();
+        results.add(schema);
+        JSONObject response = new JSONObject();
+        response.put("results", results);
+        return response;
+    }
+
+    /**
+     * The name and type of the generated properties of an object type.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject properties(String objectType) {
+        JSONArray results = new JSONArray();
+        for (Object name : ((JSONObject)generate(objectType, 1).get("properties")).keySet()) {
+            JSONObject property = new JSONObject();
+            property.put("name", name);
+            property.put("type", NUMBER_PROPERTIES.contains(name) ? "number"
+                : DATETIME_PROPERTIES.contains(name) ? "datetime" : "string");
+            results.add(property);
+        }
+        JSONObject response = new JSONObject();
+        response.put("results", results);
+        return response;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JSONObject generate(String objectType, int i) {
+        String id = String.valueOf(i);
+        String timestamp = String.format("2021-09-%02dT12:00:00.000Z", 1 + i % 28);
+
+        JSONObject properties = new JSONObject();
+        properties.put("hs_object_id", id);
+        properties.put("createdate", timestamp);
+        properties.put("hs_lastmodifieddate", timestamp);
+        switch (objectType) {
+            case "companies":
+                properties.put("name", "Company " + i);
+                properties.put("domain", "company" + i + ".example.com");
+                properties.put("industry", "INDUSTRY_" + (i % 7));
+                properties.put("numberofemployees", String.valueOf(i * 10));
+                break;
+            case "contacts":
+                properties.put("firstname", "First" + i);
+                properties.put("lastname", "Last" + i);
+                properties.put("email", "contact" + i + "@example.com");
+                properties.put("lastmodifieddate", timestamp);
+                properties.put("lifecyclestage", i % 3 == 0 ? "customer" : "lead");
+                break;
+            case "deals":
+                properties.put("dealname", "Deal " + i);
+                properties.put("amount", String.valueOf(i * 100));
+                properties.put("dealstage", i % 2 == 0 ? "closedwon" : "appointmentscheduled");
+                break;
+            case "2-100":
+                properties.put("name", "Pet " + i);
+                break;
+            default:
+                properties.put("subject", "Ticket " + i);
+                properties.put("hs_pipeline", "0");
+                properties.put("hs_pipeline_stage", String.valueOf(1 + i % 4));
+                properties.put("hs_ticket_priority", i % 2 == 0 ? "HIGH" : "LOW");
+                break;
+        }
+
+        JSONObject object = new JSONObject();
+        object.put("id", id);
+        object.put("properties", properties);
+        object.put("createdAt", timestamp);
+        object.put("updatedAt", timestamp);
+        object.put("archived", false);
+        return object;
+    }
+
+    /**
+     * Copy the object with only the requested properties.  Like HubSpot the
+     * default properties are returned when none are requested.
+     */
+    @SuppressWarnings("unchecked")
+    private static JSONObject project(JSONObject object, List<String> properties) {
+        JSONObject copy = new JSONObject(object);
+        if (!properties.isEmpty()) {
+            JSONObject all = (JSONObject)object.get("properties");
+            JSONObject selected = new JSONObject();
+            selected.put("hs_object_id", all.get("hs_object_id"));
+            selected.put("createdate", all.get("createdate"));
+            selected.put("hs_lastmodifieddate", all.get("hs_lastmodifieddate"));
+            for (String property : properties) {
+                selected.put(property, all.get(property));
+            }
+            copy.put("properties", selected);
+        }
+        return copy;
+    }
+
+    private JSONObject readBody(HttpExchange exchange) throws IOException, ParseException {
+        try (Reader reader = new InputStreamReader(exchange.getRequestBody(),
+            StandardCharsets.UTF_8)) {
+            return (JSONObject)new JSONParser().parse(reader);
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message)
+        throws IOException {
+
+        sendError(exchange, status, message, -1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void sendError(HttpExchange exchange, int status, String message,
+        long remaining) throws IOException {
+
+        JSONObject body = new JSONObject();
+        body.put("status", "error");
+        body.put("message", message);
+        body.put("category", status == 429 ? "RATE_LIMITS" : "ERROR");
+        send(exchange, status, body, remaining);
+    }
+
+    private void send(HttpExchange exchange, int status, JSONObject body,
+        long remaining) throws IOException {
+
+        byte[] bytes = body.toJSONString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type",
+            "application/json;charset=utf-8");
+        if (remaining >= 0 && rateLimit != Integer.MAX_VALUE) {
+            exchange.getResponseHeaders().add("X-HubSpot-RateLimit-Max",
+                String.valueOf(rateLimit));
+            exchange.getResponseHeaders().add("X-HubSpot-RateLimit-Remaining",
+                String.valueOf(remaining));
+            exchange.getResponseHeaders().add(
+                "X-HubSpot-RateLimit-Interval-Milliseconds",
+                String.valueOf(BURST_INTERVAL_MILLIS));
+        }
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int index = pair.indexOf('=');
+            try {
+                query.put(URLDecoder.decode(index < 0 ? pair : pair.substring(0, index), "UTF-8"),
+                    index < 0 ? "" : URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+            } catch (java.io.UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return query;
+    }
+
+    private static List<String> splitProperties(String properties) {
+        return properties == null || properties.isEmpty()
+            ? Collections.emptyList() : Arrays.asList(properties.split(","));
+    }
+
+    private static List<String> toStrings(JSONArray array) {
+        if (array == null) {
+            return Collections.emptyList();
+        }
+        List<String> strings = new ArrayList<>(array.size());
+        array.forEach(value -> strings.add(asString(value)));
+        return strings;
+    }
+
+    private static String asString(Object value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A fixed window request counter.
+     */
+    private static class Window {
+        private final long intervalMillis;
+        private final AtomicLong start = new AtomicLong(System.currentTimeMillis());
+        private final AtomicLong count = new AtomicLong();
+
+        Window(long intervalMillis) {
+            this.intervalMillis = intervalMillis;
+        }
+
+        /**
+         * Count a request.
+         *
+         * @return requests remaining in the window, negative if over the limit
+         */
+        long acquire(int limit) {
+            long now = System.currentTimeMillis();
+            long windowStart = start.get();
+            if (now - windowStart >= intervalMillis
+                && start.compareAndSet(windowStart, now)) {
+                count.set(0);
+            }
+            return limit - count.incrementAndGet();
+        }
+    }
+}
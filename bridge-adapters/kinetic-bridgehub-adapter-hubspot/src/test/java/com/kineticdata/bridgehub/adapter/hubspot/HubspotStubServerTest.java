@@ -0,0 +1,740 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import com.kineticdata.bridgehub.adapter.Record;
+import com.kineticdata.bridgehub.adapter.RecordList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.json.simple.JSONObject;
+import org.json.simple.JSONValue;
+import org.junit.After;
+import org.junit.Test;
+
+public class HubspotStubServerTest {
+
+    private HubspotStubServer server;
+    private HubspotAdapter adapter;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.close();
+        }
+        // Other tests count the MBeans of an operation.
+        if (adapter != null) {
+            adapter.getMetrics().close();
+        }
+    }
+
+    private HubspotAdapter startAdapter(HubspotStubServer stub) throws Exception {
+        return startAdapter(stub, new HashMap<>());
+    }
+
+    private HubspotAdapter startAdapter(HubspotStubServer stub,
+        Map<String, String> properties) throws Exception {
+
+        server = stub.start();
+        properties.put(HubspotAdapter.Properties.PROPERTY_API_KEY, "test");
+        properties.put(HubspotAdapter.Properties.PROPERTY_API_BASE_URL,
+            server.getBaseUrl() + "/");
+
+        adapter = new HubspotAdapter();
+        adapter.setProperties(properties);
+        adapter.initialize();
+        return adapter;
+    }
+
+    @Test
+    public void test_count_retrieve_search() throws Exception {
+        assertCountRetrieveSearch(startAdapter(new HubspotStubServer(250)));
+    }
+
+    @Test
+    public void test_async_transport() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(HubspotAdapter.Properties.PROPERTY_HTTP_TRANSPORT,
+            HubspotAdapter.TRANSPORT_ASYNC);
+        assertCountRetrieveSearch(startAdapter(new HubspotStubServer(250)
+            .setLatency(20, 0), properties));
+    }
+
+    @Test
+    public void test_execute_request_async() throws Exception {
+        server = new HubspotStubServer(100).setLatency(50, 0).start();
+        try (HubspotApiHelper apiHelper = new HubspotApiHelper(
+            server.getBaseUrl(), "test", new HubspotAsyncTransport(4, 4, 30000, 60000))) {
+
+            // Many requests in flight over a few connections without a thread
+            // waiting on each.
+            List<CompletableFuture<JSONObject>> futures = new ArrayList<>();
+            for (int i = 1; i <= 50; i++) {
+                futures.add(apiHelper.executeRequestAsync(
+                    "/crm/v3/objects/contacts/" + i, null));
+            }
+            for (int i = 1; i <= 50; i++) {
+                assertEquals(String.valueOf(i), futures.get(i - 1).get().get("id"));
+            }
+
+            Throwable error = null;
+            try {
+                apiHelper.executeRequestAsync("/crm/v3/objects/contacts/404", null)
+                    .get();
+            } catch (ExecutionException e) {
+                error = e.getCause();
+            }
+            assertTrue(error instanceof BridgeError);
+        }
+    }
+
+    @Test
+    public void test_operation_timeout() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(HubspotAdapter.Properties.PROPERTY_OPERATION_TIMEOUTS,
+            "retrieve=100");
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(10)
+            .setLatency(500, 0), properties);
+
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Companies");
+        request.setFields(Arrays.asList("id"));
+        request.setQuery("id=1");
+        BridgeError error = null;
+        long start = System.currentTimeMillis();
+        try {
+            adapter.retrieve(request);
+        } catch (BridgeError e) {
+            error = e;
+        }
+        assertNotNull(error);
+        assertTrue(System.currentTimeMillis() - start < 500);
+
+        // Other operations use the default socket timeout.
+        request.setQuery("");
+        assertEquals(10, adapter.search(request).getRecords().size());
+    }
+
+    @Test
+    public void test_slow_get_is_hedged() throws Exception {
+        for (String transport : Arrays.asList(HubspotAdapter.TRANSPORT_CLASSIC,
+            HubspotAdapter.TRANSPORT_ASYNC)) {
+
+            server = new HubspotStubServer(100).setSlowRequests(10, 5000).start();
+            try (HubspotApiHelper apiHelper = new HubspotApiHelper(
+                server.getBaseUrl(), "test", transport.equals(
+                    HubspotAdapter.TRANSPORT_CLASSIC)
+                    ? new HubspotClassicTransport(10, 10, 30000, 60000)
+                    : new HubspotAsyncTransport(10, 10, 30000, 60000))) {
+
+                apiHelper.setHedgePolicy(new HubspotHedgePolicy(50, 50, 5));
+                // Every tenth response is slow, so without hedging the
+                // requests would take at least 15 seconds.
+                long start = System.currentTimeMillis();
+                for (int i = 1; i <= 30; i++) {
+                    assertEquals(String.valueOf(i), apiHelper.executeRequest(
+                        "/crm/v3/objects/contacts/" + i).get("id"));
+                }
+                assertTrue(System.currentTimeMillis() - start < 5000);
+                assertTrue(apiHelper.getHedgePolicy().getHedgeCount() >= 3);
+            } finally {
+                server.close();
+            }
+        }
+    }
+
+    @Test
+    public void test_circuit_breaker_serves_stale_search() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(HubspotAdapter.Properties.PROPERTY_CIRCUIT_FAILURE_RATE, "50");
+        properties.put(HubspotAdapter.Properties.PROPERTY_CIRCUIT_OPEN_DURATION, "1");
+        properties.put(HubspotAdapter.Properties.PROPERTY_MAX_RETRIES, "0");
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(10), properties);
+
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Companies");
+        request.setFields(Arrays.asList("id", "$.properties.name"));
+        request.setQuery("");
+        assertEquals(10, adapter.search(request).getRecords().size());
+
+        // Enough failures open the circuit.
+        server.setErrorRate(1);
+        BridgeRequest retrieve = new BridgeRequest();
+        retrieve.setStructure("Companies");
+        retrieve.setFields(Arrays.asList("id"));
+        retrieve.setQuery("id=1");
+        for (int i = 0; i < HubspotCircuitBreaker.DEFAULT_MIN_CALLS; i++) {
+            try {
+                adapter.retrieve(retrieve);
+            } catch (BridgeError e) {
+                // Every request fails while HubSpot is failing.
+            }
+        }
+
+        // Searches that succeeded before are served without a request.
+        long requests = server.getRequestCount();
+        RecordList stale = adapter.search(request);
+        assertEquals(10, stale.getRecords().size());
+        assertEquals("true", stale.getMetadata().get(HubspotAdapter.METADATA_STALE));
+        assertNotNull(stale.getMetadata().get(HubspotAdapter.METADATA_STALE_SINCE));
+        assertEquals(requests, server.getRequestCount());
+
+        BridgeError error = null;
+        try {
+            adapter.retrieve(retrieve);
+        } catch (BridgeError e) {
+            error = e;
+        }
+        assertNotNull(error);
+        assertEquals(requests, server.getRequestCount());
+
+        // Once HubSpot recovers the probes close the circuit.
+        server.setErrorRate(0);
+        Thread.sleep(1100);
+        for (int i = 0; i < HubspotCircuitBreaker.DEFAULT_PROBES; i++) {
+            adapter.retrieve(retrieve);
+        }
+        RecordList fresh = adapter.search(request);
+        assertEquals(null, fresh.getMetadata().get(HubspotAdapter.METADATA_STALE));
+    }
+
+    @Test
+    public void test_bulkhead_per_structure() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(HubspotAdapter.Properties.PROPERTY_BULKHEAD_MAX_CONCURRENT, "1");
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(10)
+            .setLatency(500, 0), properties);
+
+        BridgeRequest company = new BridgeRequest();
+        company.setStructure("Companies");
+        company.setFields(Arrays.asList("id"));
+        company.setQuery("id=1");
+        BridgeRequest contact = new BridgeRequest();
+        contact.setStructure("Contacts");
+        contact.setFields(Arrays.asList("id"));
+        contact.setQuery("id=1");
+
+        CompletableFuture<Record> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return adapter.retrieve(company);
+            } catch (BridgeError e) {
+                throw new RuntimeException(e);
+            }
+        });
+        Thread.sleep(100);
+
+        // Companies is full, Contacts is not.
+        BridgeError error = null;
+        try {
+            adapter.retrieve(company);
+        } catch (BridgeError e) {
+            error = e;
+        }
+        assertNotNull(error);
+        assertEquals("1", adapter.retrieve(contact).getValue("id"));
+        assertEquals("1", first.get().getValue("id"));
+    }
+
+    @Test
+    public void test_configured_and_discovered_structures() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(HubspotAdapter.Properties.PROPERTY_DISCOVER_CUSTOM_OBJECTS, "true");
+        properties.put(HubspotAdapter.Properties.PROPERTY_OBJECT_TYPES, 
+            "Animals=2-100");
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(10), properties);
+
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Deals");
+        request.setFields(Arrays.asList("id", "$.properties.dealname"));
+        request.setQuery("body={\"filterGroups\":[{\"filters\":[{\"propertyName\":"
+            + "\"dealstage\",\"operator\":\"EQ\",\"value\":\"closedwon\"}]}]}");
+        assertEquals(5, adapter.search(request).getRecords().size());
+
+        // Discovered from the schemas and configured.
+        for (String structure : Arrays.asList("Pets", "Animals")) {
+            request.setStructure(structure);
+            request.setFields(Arrays.asList("id", "$.properties.name"));
+            request.setQuery("id=3");
+            assertEquals("Pet 3", adapter.retrieve(request).getValue("$.properties.name"));
+        }
+
+        request.setStructure("Widgets");
+        BridgeError error = null;
+        try {
+            adapter.retrieve(request);
+        } catch (BridgeError e) {
+            error = e;
+        }
+        assertNotNull(error);
+    }
+
+    private void assertCountRetrieveSearch(HubspotAdapter adapter) throws Exception {
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Companies");
+        request.setFields(Arrays.asList("id", "$.properties.name"));
+        request.setQuery("body={\"filterGroups\":[{\"filters\":[{\"propertyName\":"
+            + "\"industry\",\"operator\":\"EQ\",\"value\":\"INDUSTRY_0\"}]}]}");
+        assertEquals(Integer.valueOf(35), adapter.count(request).getValue());
+
+        request.setQuery("id=<%=parameter[\"Id\"]%>");
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("Id", "42");
+        request.setParameters(parameters);
+        Record record = adapter.retrieve(request);
+        assertEquals("Company 42", record.getValue("$.properties.name"));
+
+        request.setQuery("fetchAll=true&limit=100");
+        request.setParameters(new HashMap<>());
+        RecordList records = adapter.search(request);
+        assertEquals(250, records.getRecords().size());
+    }
+
+    @Test
+    public void test_fetch_all_resumes_after_the_cap() throws Exception {
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(250));
+
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Companies");
+        request.setFields(Arrays.asList("id"));
+        for (String query : Arrays.asList("", "&body={}")) {
+            request.setQuery("fetchAll=true&maxRecords=130" + query);
+            RecordList records = adapter.search(request);
+            assertEquals(130, records.getRecords().size());
+            assertEquals("130", records.getRecords().get(129).getValue("id"));
+
+            // The token continues with the record after the last one returned.
+            request.setQuery("fetchAll=true&after=" 
+                + records.getMetadata().get("next_page") + query);
+            records = adapter.search(request);
+            assertEquals(120, records.getRecords().size());
+            assertEquals("131", records.getRecords().get(0).getValue("id"));
+        }
+    }
+
+    @Test
+    public void test_page_size_is_pushed_down() throws Exception {
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(250));
+
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Contacts");
+        request.setFields(Arrays.asList("id", "$.properties.email"));
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("pageSize", "10");
+        request.setMetadata(metadata);
+
+        for (String query : Arrays.asList("", "body={}")) {
+            request.setQuery(query);
+            RecordList records = adapter.search(request);
+            assertEquals(10, records.getRecords().size());
+            assertEquals("contact1@example.com", records.getRecords().get(0)
+                .getValue("$.properties.email"));
+            assertEquals("10", records.getMetadata().get("next_page"));
+        }
+    }
+
+    @Test
+    public void test_offset_pagination() throws Exception {
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(250));
+
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Companies");
+        request.setFields(Arrays.asList("id"));
+        request.setQuery("");
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("pageSize", "10");
+        request.setMetadata(metadata);
+
+        // Pages of 100 and 20 to reach the offset, then the page.
+        metadata.put("offset", "120");
+        RecordList records = adapter.search(request);
+        assertEquals("121", records.getRecords().get(0).getValue("id"));
+        assertEquals("13", records.getMetadata().get("pageNumber"));
+        assertEquals(3, server.getRequestCount());
+
+        // The next page and a page before it resume from known tokens.
+        metadata.put("offset", "130");
+        assertEquals("131", adapter.search(request).getRecords().get(0).getValue("id"));
+        assertEquals(4, server.getRequestCount());
+        metadata.put("offset", "125");
+        assertEquals("126", adapter.search(request).getRecords().get(0).getValue("id"));
+        assertEquals(6, server.getRequestCount());
+
+        metadata.put("offset", "300");
+        assertEquals(0, adapter.search(request).getRecords().size());
+
+        // Search pages by page number and returns the total.
+        metadata.remove("offset");
+        metadata.put("pageNumber", "3");
+        request.setQuery("body={}");
+        records = adapter.search(request);
+        assertEquals("21", records.getRecords().get(0).getValue("id"));
+        assertEquals("20", records.getMetadata().get("offset"));
+        assertEquals("250", records.getMetadata().get("count"));
+    }
+
+    @Test
+    public void test_multi_key_order() throws Exception {
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(250));
+
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Contacts");
+        request.setFields(Arrays.asList("id"));
+        request.setQuery("body={}");
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put("pageSize", "5");
+        metadata.put("order", "<%=field[\"lifecyclestage\"]%>:ASC,"
+            + "<%=field[\"$.properties.firstname\"]%>:DESC");
+        request.setMetadata(metadata);
+
+        // HubSpot sorts the lifecyclestage string as text, which the adapter
+        // may not, so every page is read after the property types.
+        List<String> ids = new ArrayList<>();
+        adapter.search(request).getRecords().forEach(record -> 
+            ids.add((String)record.getValue("id")));
+        assertEquals(Arrays.asList("99", "96", "93", "90", "9"), ids);
+        assertEquals(4, server.getRequestCount());
+
+        // HubSpot sorts on the createdate datetime, so the first page ends 
+        // past the contacts created first and no other page is read.
+        metadata.put("order", "<%=field[\"createdate\"]%>:ASC,"
+            + "<%=field[\"$.properties.firstname\"]%>:DESC");
+        ids.clear();
+        adapter.search(request).getRecords().forEach(record -> 
+            ids.add((String)record.getValue("id")));
+        assertEquals(Arrays.asList("84", "56", "28", "224", "196"), ids);
+        assertEquals(5, server.getRequestCount());
+
+        // An ordered list is a search that HubSpot sorts.
+        request.setStructure("Companies");
+        request.setQuery("");
+        metadata.put("order", "<%=field[\"numberofemployees\"]%>:DESC");
+        metadata.put("offset", "1");
+        RecordList records = adapter.search(request);
+        assertEquals("249", records.getRecords().get(0).getValue("id"));
+        assertEquals("245", records.getRecords().get(4).getValue("id"));
+        assertEquals("1", records.getMetadata().get("offset"));
+        long requests = server.getRequestCount();
+        assertTrue(requests <= 5 + 3);
+
+        // A list with more keys is sorted by the adapter, up to the max.
+        metadata.put("order", "<%=field[\"industry\"]%>:ASC,"
+            + "<%=field[\"numberofemployees\"]%>:DESC");
+        metadata.put("offset", "9999");
+        BridgeError error = null;
+        try {
+            adapter.search(request);
+        } catch (BridgeError e) {
+            error = e;
+        }
+        assertNotNull(error);
+        assertEquals(requests, server.getRequestCount());
+    }
+
+    @Test
+    public void test_filters_are_pushed_down() throws Exception {
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(250));
+
+        // A lookup on a unique property is a get with idProperty.
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Contacts");
+        request.setFields(Arrays.asList("id", "$.properties.firstname"));
+        request.setQuery("email=<%=parameter[\"Email\"]%>");
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("Email", "contact7@example.com");
+        request.setParameters(parameters);
+        assertEquals("First7", adapter.retrieve(request)
+            .getValue("$.properties.firstname"));
+
+        // Other qualifications are searches.
+        request.setQuery("lifecyclestage=customer");
+        assertEquals(Integer.valueOf(83), adapter.count(request).getValue());
+        assertEquals(83, adapter.search(request).getRecords().size());
+
+        request.setStructure("Companies");
+        request.setQuery("industry=INDUSTRY_1,INDUSTRY_2");
+        assertEquals(Integer.valueOf(72), adapter.count(request).getValue());
+        request.setQuery("numberofemployees=100..200");
+        assertEquals(Integer.valueOf(11), adapter.count(request).getValue());
+    }
+
+    @Test
+    public void test_events_evict_unique_lookups() throws Exception {
+        Map<String, String> properties = new HashMap<>();
+        properties.put(HubspotAdapter.Properties.PROPERTY_RETRIEVE_CACHE_TTLS,
+            "Contacts=3600");
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(100), properties);
+
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Contacts");
+        request.setFields(Arrays.asList("id", "$.properties.firstname"));
+        request.setQuery("email=contact7@example.com");
+        adapter.retrieve(request);
+        long requests = server.getRequestCount();
+        adapter.retrieve(request);
+        assertEquals(requests, server.getRequestCount());
+
+        // The event is for the id of the contact that was looked up by email.
+        adapter.applyWebhookEvents(HubspotWebhookReceiver.parseEvents("[{"
+            + "\"subscriptionType\":\"contact.propertyChange\",\"objectId\":7,"
+            + "\"propertyName\":\"email\",\"propertyValue\":\"jane@acme.com\"}]"));
+        adapter.retrieve(request);
+        assertEquals(requests + 1, server.getRequestCount());
+    }
+
+    @Test
+    public void test_retrieve_by_filters() throws Exception {
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(250));
+
+        // Filters on properties that are not unique are a search.
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Contacts");
+        request.setFields(Arrays.asList("id", "$.properties.lastname"));
+        request.setQuery("firstname=First7");
+        Record record = adapter.retrieve(request);
+        assertEquals("7", record.getValue("id"));
+        assertEquals("Last7", record.getValue("$.properties.lastname"));
+
+        request.setStructure("Companies");
+        request.setFields(Arrays.asList("id"));
+        request.setQuery("name=Company 12");
+        assertEquals("12", adapter.retrieve(request).getValue("id"));
+
+        request.setQuery("name=Company 0");
+        assertNull(adapter.retrieve(request).getRecord());
+
+        request.setQuery("industry=INDUSTRY_1");
+        BridgeError error = null;
+        try {
+            adapter.retrieve(request);
+        } catch (BridgeError e) {
+            error = e;
+        }
+        assertNotNull(error);
+    }
+
+    @Test
+    public void test_partitioned_scan() throws Exception {
+        server = new HubspotStubServer(250).start();
+        try (HubspotApiHelper apiHelper = new HubspotApiHelper(server.getBaseUrl(),
+            "test", new HubspotClassicTransport(10, 10, 30000, 60000))) {
+
+            // The ranges that were paged through, by their low id, with the
+            // number of objects each returned.
+            Map<Long, long[]> paged = new ConcurrentSkipListMap<>();
+            HubspotPartitionedScan scan = new HubspotPartitionedScan(body -> {
+                JSONObject response = apiHelper.executeRequest(
+                    "/crm/v3/objects/contacts/search", body);
+                List<?> filters = (List<?>)((Map<?, ?>)((List<?>)body
+                    .get("filterGroups")).get(0)).get("filters");
+                if (filters.size() == 3 && ((Number)response.get("total")).intValue() <= 30) {
+                    paged.put(Long.valueOf((String)((Map<?, ?>)filters.get(1)).get("value")),
+                        new long[] {
+                            Long.parseLong((String)((Map<?, ?>)filters.get(2)).get("value")),
+                            ((List<?>)response.get("results")).size()});
+                }
+                return response;
+            }, 3, 1000, 30);
+            List<JSONObject> objects = scan.scan((JSONObject)JSONValue.parse(
+                "{\"filterGroups\":[{\"filters\":[{\"propertyName\":"
+                + "\"lifecyclestage\",\"operator\":\"EQ\",\"value\":\"lead\"}]}]}"));
+            List<String> expected = new ArrayList<>();
+            for (int id = 1; id <= 250; id++) {
+                if (id % 3 != 0) {
+                    expected.add(String.valueOf(id));
+                }
+            }
+            List<String> ids = new ArrayList<>();
+            objects.forEach(object -> ids.add((String)object.get("id")));
+            assertEquals(expected, ids);
+
+            // Ids 1 to 250 are split into 3 ranges of about 56 leads, each is
+            // split again into 4 ranges of about 14.  The 12 ranges are
+            // disjoint, cover every id and return each lead once.
+            assertEquals(12, paged.size());
+            long next = 1;
+            long returned = 0;
+            for (Map.Entry<Long, long[]> range : paged.entrySet()) {
+                assertEquals(next, (long)range.getKey());
+                next = range.getValue()[0];
+                returned += range.getValue()[1];
+            }
+            assertEquals(251, next);
+            assertEquals(167, returned);
+            // The 2 probes, the 3 ranges and the 12 pages.
+            assertEquals(17, scan.getSearchCount());
+
+            // The range filters would make 7 filters in a group.
+            BridgeError error = null;
+            try {
+                scan.scan((JSONObject)JSONValue.parse("{\"filterGroups\":[{\"filters\":["
+                    + "{\"propertyName\":\"a\",\"operator\":\"HAS_PROPERTY\"},"
+                    + "{\"propertyName\":\"b\",\"operator\":\"HAS_PROPERTY\"},"
+                    + "{\"propertyName\":\"c\",\"operator\":\"HAS_PROPERTY\"},"
+                    + "{\"propertyName\":\"d\",\"operator\":\"HAS_PROPERTY\"},"
+                    + "{\"propertyName\":\"e\",\"operator\":\"HAS_PROPERTY\"}]}]}"));
+            } catch (BridgeError e) {
+                error = e;
+            }
+            assertNotNull(error);
+            assertEquals(17, scan.getSearchCount());
+        }
+
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(250));
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Contacts");
+        request.setFields(Arrays.asList("id"));
+        request.setQuery("scan=true&lifecyclestage=customer");
+        RecordList records = adapter.search(request);
+        assertEquals(83, records.getRecords().size());
+        assertEquals("3", records.getRecords().get(0).getValue("id"));
+
+        request.setQuery("scan=true&maxRecords=50&lifecyclestage=customer");
+        BridgeError error = null;
+        try {
+            adapter.search(request);
+        } catch (BridgeError e) {
+            error = e;
+        }
+        assertNotNull(error);
+    }
+
+    @Test
+    public void test_identical_requests_share_one_call() throws Exception {
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(250)
+            .setLatency(300, 0));
+
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Companies");
+        request.setFields(Arrays.asList("id", "$.properties.name"));
+        request.setQuery("body={\"filterGroups\":[{\"filters\":[{\"propertyName\":"
+            + "\"industry\",\"operator\":\"EQ\",\"value\":\"INDUSTRY_0\"}]}]}");
+        BridgeRequest missing = new BridgeRequest();
+        missing.setStructure("Companies");
+        missing.setFields(Arrays.asList("id"));
+        missing.setQuery("id=404");
+
+        // Every caller gets the result, or the error, of the one call.
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 20; i++) {
+                BridgeRequest next = i % 2 == 0 ? request : missing;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        return adapter.search(next);
+                    } catch (BridgeError e) {
+                        return e;
+                    }
+                }));
+            }
+            start.countDown();
+            for (int i = 0; i < 20; i++) {
+                Object result = results.get(i).get();
+                if (i % 2 == 0) {
+                    assertEquals(35, ((RecordList)result).getRecords().size());
+                } else {
+                    assertTrue(result instanceof BridgeError);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2, server.getRequestCount());
+
+        // Nothing is kept once the call completes.
+        adapter.search(request);
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void test_nested_structure() throws Exception {
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(250));
+
+        // Each company is associated with 25 contacts, more than the stub
+        // returns in a batch read so the rest are paged.
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Companies > Contacts");
+        request.setFields(Arrays.asList("id", "$.properties.firstname",
+            "$.parent.properties.name"));
+        request.setQuery("id=1,2");
+        assertEquals(Integer.valueOf(50), adapter.count(request).getValue());
+
+        RecordList records = adapter.search(request);
+        assertEquals(50, records.getRecords().size());
+        Record record = records.getRecords().get(0);
+        assertEquals("1", record.getValue("id"));
+        assertEquals("Company 1", record.getValue("$.parent.properties.name"));
+        assertNotNull(record.getValue("$.properties.firstname"));
+        assertEquals("Company 2", records.getRecords().get(49)
+            .getValue("$.parent.properties.name"));
+
+        // The parents of a search or list are every page of the parent 
+        // structure.
+        request.setQuery("body={\"filterGroups\":[{\"filters\":[{\"propertyName\":"
+            + "\"industry\",\"operator\":\"EQ\",\"value\":\"INDUSTRY_0\"}]}]}");
+        assertEquals(Integer.valueOf(35 * 25), adapter.count(request).getValue());
+        request.setQuery("");
+        assertEquals(Integer.valueOf(250 * 25), adapter.count(request).getValue());
+        request.setQuery("industry=INDUSTRY_1,INDUSTRY_2,INDUSTRY_3");
+        records = adapter.search(request);
+        assertEquals(108 * 25, records.getRecords().size());
+        assertEquals("", records.getMetadata().get("next_page"));
+
+        // Parents past maxRecords fail rather than return part of the children.
+        BridgeError error = null;
+        try {
+            request.setQuery("maxRecords=150");
+            adapter.count(request);
+        } catch (BridgeError e) {
+            error = e;
+        }
+        assertNotNull(error);
+
+        error = null;
+        try {
+            request.setQuery("id=1");
+            adapter.retrieve(request);
+        } catch (BridgeError e) {
+            error = e;
+        }
+        assertNotNull(error);
+    }
+
+    @Test
+    public void test_rate_limit_is_retried() throws Exception {
+        HubspotAdapter adapter = startAdapter(new HubspotStubServer(10)
+            .setSearchRateLimit(1));
+
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Tickets");
+        request.setFields(Arrays.asList("id"));
+        request.setQuery("body={}");
+
+        BridgeError error = null;
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertNotNull(adapter.search(request));
+            }
+        } catch (BridgeError e) {
+            error = e;
+        }
+
+        assertEquals(null, error);
+        assertTrue(server.getRateLimitedCount() > 0);
+    }
+}
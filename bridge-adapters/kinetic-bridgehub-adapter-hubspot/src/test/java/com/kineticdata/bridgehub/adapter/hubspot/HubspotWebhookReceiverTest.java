@@ -0,0 +1,165 @@
+package com.kineticdata.bridgehub.adapter.hubspot;
+
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class HubspotWebhookReceiverTest {
+    private static final String CLIENT_SECRET = "client-secret";
+
+    @Test
+    public void test_recorded_events_patch_and_evict() throws Exception {
+        try (HubspotStubServer server = new HubspotStubServer(100).start()) {
+            Map<String, String> properties = new HashMap<>();
+            properties.put(HubspotAdapter.Properties.PROPERTY_API_KEY, "test");
+            properties.put(HubspotAdapter.Properties.PROPERTY_API_BASE_URL,
+                server.getBaseUrl());
+            properties.put(HubspotAdapter.Properties.PROPERTY_RETRIEVE_CACHE_TTLS,
+                "Companies=3600");
+            properties.put(HubspotAdapter.Properties.PROPERTY_COUNT_CACHE_TTL, "3600");
+            properties.put(HubspotAdapter.Properties.PROPERTY_WEBHOOK_PORT, "0");
+            properties.put(HubspotAdapter.Properties.PROPERTY_WEBHOOK_CLIENT_SECRET,
+                CLIENT_SECRET);
+            // Events are flushed by the test.
+            properties.put(HubspotAdapter.Properties.PROPERTY_WEBHOOK_BATCH_WINDOW,
+                "3600000");
+            HubspotAdapter adapter = new HubspotAdapter();
+            adapter.setProperties(properties);
+            adapter.initialize();
+            HubspotWebhookReceiver receiver = adapter.getWebhookReceiver();
+
+            BridgeRequest request = new BridgeRequest();
+            request.setStructure("Companies");
+            request.setFields(Arrays.asList("id", "$.properties.name"));
+            for (String id : Arrays.asList("42", "43", "45")) {
+                request.setQuery("id=" + id);
+                adapter.retrieve(request);
+            }
+            request.setQuery("body={}");
+            adapter.count(request);
+
+            String payload = readResource("/webhooks/company-events.json");
+            String url = "http://127.0.0.1:" + receiver.getPort()
+                + HubspotWebhookReceiver.DEFAULT_PATH;
+            assertEquals(401, post(url, payload, "X-HubSpot-Signature",
+                HubspotWebhookReceiver.signV1("wrong", payload)));
+            assertEquals(204, post(url, payload, "X-HubSpot-Signature",
+                HubspotWebhookReceiver.signV1(CLIENT_SECRET, payload)));
+            receiver.flush();
+
+            // The property change is patched into the cache.
+            long requests = server.getRequestCount();
+            request.setQuery("id=42");
+            assertEquals("Renamed", adapter.retrieve(request)
+                .getValue("$.properties.name"));
+            assertEquals(requests, server.getRequestCount());
+
+            // The deleted and merged objects and the count are read again.
+            request.setQuery("id=43");
+            adapter.retrieve(request);
+            request.setQuery("id=45");
+            adapter.retrieve(request);
+            request.setQuery("body={}");
+            adapter.count(request);
+            assertEquals(requests + 3, server.getRequestCount());
+        }
+    }
+
+    @Test
+    public void test_v3_signature() throws Exception {
+        try (HubspotWebhookReceiver receiver = new HubspotWebhookReceiver(null, 0,
+            HubspotWebhookReceiver.DEFAULT_PATH, CLIENT_SECRET, null, 3600000,
+            HubspotWebhookReceiver.DEFAULT_MAX_BODY_BYTES, events -> {}).start()) {
+
+            String payload = readResource("/webhooks/company-events.json");
+            String url = "http://127.0.0.1:" + receiver.getPort()
+                + HubspotWebhookReceiver.DEFAULT_PATH;
+            String timestamp = String.valueOf(System.currentTimeMillis());
+            String signature = HubspotWebhookReceiver.signV3(CLIENT_SECRET, "POST",
+                url, payload, timestamp);
+
+            assertEquals(204, post(url, payload, "X-HubSpot-Signature-v3", signature,
+                "X-HubSpot-Request-Timestamp", timestamp));
+            // Replayed after the timestamp expired.
+            String expired = String.valueOf(System.currentTimeMillis() - 600000);
+            assertEquals(401, post(url, payload, "X-HubSpot-Signature-v3",
+                HubspotWebhookReceiver.signV3(CLIENT_SECRET, "POST", url, payload,
+                    expired), "X-HubSpot-Request-Timestamp", expired));
+            assertEquals(3, HubspotWebhookReceiver.parseEvents(payload).size());
+        }
+    }
+
+    @Test
+    public void test_large_bodies_are_rejected() throws Exception {
+        String payload = readResource("/webhooks/company-events.json");
+        List<HubspotWebhookReceiver.Event> received = new ArrayList<>();
+        try (HubspotWebhookReceiver receiver = new HubspotWebhookReceiver(null, 0,
+            HubspotWebhookReceiver.DEFAULT_PATH, CLIENT_SECRET, null, 3600000,
+            payload.length() - 1, received::addAll).start()) {
+
+            assertTrue(receiver.getAddress().getAddress().isLoopbackAddress());
+            String url = "http://127.0.0.1:" + receiver.getPort()
+                + HubspotWebhookReceiver.DEFAULT_PATH;
+            String signature = HubspotWebhookReceiver.signV1(CLIENT_SECRET, payload);
+            assertEquals(413, post(url, payload, "X-HubSpot-Signature", signature));
+            // Without a Content-Length.
+            assertEquals(413, post(url, payload, true, "X-HubSpot-Signature",
+                signature));
+            receiver.flush();
+            assertTrue(received.isEmpty());
+        }
+    }
+
+    private static int post(String url, String payload, String... headers)
+        throws Exception {
+
+        return post(url, payload, false, headers);
+    }
+
+    private static int post(String url, String payload, boolean chunked,
+        String... headers) throws Exception {
+
+        HttpURLConnection connection = (HttpURLConnection)new URL(url).openConnection();
+        if (chunked) {
+            connection.setChunkedStreamingMode(16);
+        }
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        for (int i = 0; i < headers.length; i += 2) {
+            connection.setRequestProperty(headers[i], headers[i + 1]);
+        }
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(payload.getBytes(StandardCharsets.UTF_8));
+        }
+        int status = connection.getResponseCode();
+        connection.disconnect();
+        return status;
+    }
+
+    private static String readResource(String name) throws Exception {
+        try (InputStream input = HubspotWebhookReceiverTest.class
+            .getResourceAsStream(name)) {
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return new String(output.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
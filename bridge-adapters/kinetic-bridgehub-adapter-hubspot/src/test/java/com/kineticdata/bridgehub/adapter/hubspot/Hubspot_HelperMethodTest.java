@@ -11,9 +11,13 @@ import com.kineticdata.bridgehub.adapter.hubspot.HubspotAdapter;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jayway.jsonpath.JsonPathException;
 import com.kineticdata.bridgehub.adapter.BridgeError;
+import com.kineticdata.bridgehub.adapter.BridgeRequest;
 import com.kineticdata.bridgehub.adapter.Record;
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -123,4 +127,220 @@ public class Hubspot_HelperMethodTest {
         
         assertNotNull(error);
     }
+    
+    @Test
+    public void test_response_projection() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        
+        List<String> fields = new ArrayList();
+        fields.add("id");
+        fields.add("$.properties.name");
+        fields.add("$.associations.tickets.results[*].id");
+        
+        String jsonString = "{\"results\": [{\"id\": \"1\", \"archived\": false,"
+            + "\"properties\": {\"name\": \"Foo\", \"domain\": \"foo.com\"},"
+            + "\"associations\": {\"tickets\": {\"results\": [{\"id\": \"7\"}]},"
+            + "\"contacts\": {\"results\": [{\"id\": \"8\"}]}}}],"
+            + "\"paging\": {\"next\": {\"after\": \"2\"}}}";
+        
+        String control = "{\"results\": [{\"id\": \"1\","
+            + "\"properties\": {\"name\": \"Foo\"},"
+            + "\"associations\": {\"tickets\": {\"results\": [{\"id\": \"7\"}]}}}],"
+            + "\"paging\": {\"next\": {\"after\": \"2\"}}}";
+        
+        Object projected = HubspotResponseProjection.forFields("results", fields)
+            .parse(new StringReader(jsonString));
+        
+        assertEquals(mapper.readTree(control), 
+            mapper.readTree(((JSONObject)projected).toJSONString()));
+        
+        // A single record response is projected the same way.
+        projected = HubspotResponseProjection.forFields("results", fields)
+            .parse(new StringReader("{\"id\": \"1\", \"archived\": false}"));
+        
+        assertEquals(mapper.readTree("{\"id\": \"1\"}"), 
+            mapper.readTree(((JSONObject)projected).toJSONString()));
+    }
+    
+    @Test
+    public void test_field_plan() {
+        List<String> fields = new ArrayList();
+        fields.add("id");
+        fields.add("$.properties.name");
+        fields.add("$.properties.domain");
+        fields.add("$.missing.name");
+        fields.add("$.associations.tickets.results[*].id");
+        
+        HubspotFieldPlan plan = HubspotFieldPlan.compile(fields);
+        
+        JSONObject jsonobj = (JSONObject)JSONValue.parse("{\"id\": \"1\","
+            + "\"properties\": {\"name\": \"Foo\"}, \"associations\":"
+            + "{\"tickets\": {\"results\": [{\"id\": \"7\"}]}}}");
+        
+        Map<String, Object> record = plan.buildRecord(jsonobj).getRecord();
+        
+        assertEquals("1", record.get("id"));
+        assertEquals("Foo", record.get("$.properties.name"));
+        assertNull(record.get("$.properties.domain"));
+        assertNull(record.get("$.missing.name"));
+        assertEquals(Arrays.asList("7"), 
+            record.get("$.associations.tickets.results[*].id"));
+    }
+    
+    @Test
+    public void test_request_plan() throws BridgeError {
+        HubspotAdapter helper = new HubspotAdapter();
+        
+        BridgeRequest request = new BridgeRequest();
+        request.setStructure("Contacts");
+        request.setQuery("body={\"query\": \"acme\"}&after=<%=parameter[\"Page\"]%>");
+        request.setFields(Arrays.asList("id", "properties.firstname"));
+        request.setParameters(new HashMap<String, String>() {{
+            put("Page", "10");
+        }});
+        
+        HubspotRequestPlan plan = helper.getRequestPlan(request);
+        
+        // The plan is cached by structure, qualification and fields.
+        assertTrue(plan == helper.getRequestPlan(request));
+        assertEquals(Arrays.asList("firstname"), plan.getProperties());
+        
+        Map<String, String> parameters = plan.getParameters(
+            new HubspotQualificationParser(), request.getParameters());
+        assertEquals("10", parameters.get("after"));
+        
+        // Each request gets its own copy of the body.
+        JSONObject body = plan.getBody(parameters);
+        body.put("limit", 1);
+        assertEquals("acme", plan.getBody(parameters).get("query"));
+        assertNull(plan.getBody(parameters).get("limit"));
+    }
+    
+    @Test
+    public void test_field_references() {
+        List<String> fields = Arrays.asList("id", "properties.firstname",
+            "properties[\"lastname\"]", "$.properties.email",
+            "$['properties']['phone']", "$.properties['job title']",
+            "$.properties.email", "$.associations.tickets.results[*].id",
+            "associations[\"deals\"]", "createdAt");
+        
+        assertEquals(Arrays.asList("firstname", "lastname", "email", "phone",
+            "job title"), HubspotRequestPlan.getPropertyNames(fields));
+        assertEquals(Arrays.asList("tickets", "deals"), 
+            HubspotRequestPlan.getAssociationNames(fields));
+    }
+    
+    @Test
+    public void test_canonical_json() {
+        Object first = JSONValue.parse("{\"limit\": 1, \"filterGroups\": "
+            + "[{\"filters\": [{\"value\": \"a\", \"propertyName\": \"name\"}]}]}");
+        Object second = JSONValue.parse("{\"filterGroups\": [{\"filters\": "
+            + "[{\"propertyName\": \"name\", \"value\": \"a\"}]}], \"limit\": 1}");
+        
+        assertEquals(HubspotAdapter.toCanonicalJson(first), 
+            HubspotAdapter.toCanonicalJson(second));
+        assertEquals("{\"filterGroups\":[{\"filters\":[{\"propertyName\":\"name\","
+            + "\"value\":\"a\"}]}],\"limit\":1}", HubspotAdapter.toCanonicalJson(first));
+    }
+    
+    @Test
+    public void test_filters() {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("email", "jane@acme.com");
+        parameters.put("lifecyclestage", "lead,customer");
+        parameters.put("createdate", "2021-01-01..2021-02-01");
+        parameters.put("amount", "1000..");
+        parameters.put("phone", "");
+        parameters.put("limit", "10");
+        
+        HubspotFilters filters = HubspotFilters.extract(parameters);
+        assertEquals(Collections.singleton("limit"), parameters.keySet());
+        assertEquals("{\"filterGroups\":[{\"filters\":["
+            + "{\"operator\":\"GTE\",\"propertyName\":\"amount\",\"value\":\"1000\"},"
+            + "{\"highValue\":\"2021-02-01\",\"operator\":\"BETWEEN\","
+            + "\"propertyName\":\"createdate\",\"value\":\"2021-01-01\"},"
+            + "{\"operator\":\"EQ\",\"propertyName\":\"email\",\"value\":\"jane@acme.com\"},"
+            + "{\"operator\":\"IN\",\"propertyName\":\"lifecyclestage\","
+            + "\"values\":[\"lead\",\"customer\"]},"
+            + "{\"operator\":\"NOT_HAS_PROPERTY\",\"propertyName\":\"phone\"}]}]}",
+            HubspotAdapter.toCanonicalJson(sorted(filters.toBody())));
+        assertNull(filters.getUniqueLookup(Arrays.asList("email")));
+        
+        parameters.put("email", "jane@acme.com");
+        filters = HubspotFilters.extract(parameters);
+        assertEquals("jane@acme.com", 
+            filters.getUniqueLookup(Arrays.asList("email")).getValue());
+        assertNull(filters.getUniqueLookup(Arrays.asList("domain")));
+
+        // The values are escaped for a JSON string by the qualification
+        // parser, so name=Acme\, Inc. arrives as Acme\\, Inc.
+        parameters.put("name", "Acme\\\\, Inc.");
+        parameters.put("domain", "a\\\\..b,c\\\\,d");
+        parameters.put("version", "1\\\\.2..1\\\\.5");
+        parameters.put("path", "C:\\\\\\\\");
+        filters = HubspotFilters.extract(parameters);
+        assertEquals("{\"filterGroups\":[{\"filters\":["
+            + "{\"operator\":\"IN\",\"propertyName\":\"domain\","
+            + "\"values\":[\"a..b\",\"c,d\"]},"
+            + "{\"operator\":\"EQ\",\"propertyName\":\"name\",\"value\":\"Acme, Inc.\"},"
+            + "{\"operator\":\"EQ\",\"propertyName\":\"path\",\"value\":\"C:\\\\\"},"
+            + "{\"highValue\":\"1.5\",\"operator\":\"BETWEEN\","
+            + "\"propertyName\":\"version\",\"value\":\"1.2\"}]}]}",
+            HubspotAdapter.toCanonicalJson(sorted(filters.toBody())));
+    }
+    
+    @Test
+    public void test_sort_order_of_mixed_values() {
+        List<String> values = Arrays.asList("10", "9", "1e", "1e2", "3M", "-2.5",
+            "Acme", "acme", "ACME", "2021-09-01T12:00:00Z",
+            "2021-09-01T12:00:00.500Z", "1630497600001", "NaN", "Infinity", "1d",
+            "", "12 Main St", "2021-09-01");
+        // Every triple is ordered consistently.
+        for (String a : values) {
+            for (String b : values) {
+                assertEquals(Integer.signum(HubspotSortOrder.compareValues(a, b)),
+                    -Integer.signum(HubspotSortOrder.compareValues(b, a)));
+                for (String c : values) {
+                    if (HubspotSortOrder.compareValues(a, b) <= 0
+                        && HubspotSortOrder.compareValues(b, c) <= 0) {
+                        assertTrue(a + " " + b + " " + c,
+                            HubspotSortOrder.compareValues(a, c) <= 0);
+                    }
+                }
+            }
+        }
+
+        // Numbers and datetimes sort before text.
+        Map<String, String> items = new HashMap<>();
+        items.put("$.properties.name", "ASC");
+        HubspotSortOrder order = new HubspotSortOrder(items);
+        HubspotTopK<JSONObject> top = new HubspotTopK<>(values.size(),
+            order.comparator());
+        for (String value : values) {
+            JSONObject properties = new JSONObject();
+            properties.put("name", value);
+            JSONObject object = new JSONObject();
+            object.put("properties", properties);
+            top.offer(object);
+        }
+        List<String> sorted = new ArrayList<>();
+        top.toList().forEach(object -> sorted.add((String)
+            ((JSONObject)object.get("properties")).get("name")));
+        assertEquals(Arrays.asList("-2.5", "9", "10", "1e2", "2021-09-01T12:00:00Z",
+            "1630497600001", "2021-09-01T12:00:00.500Z", "", "12 Main St",
+            "1d", "1e", "2021-09-01", "3M", "ACME", "Acme", "acme", "Infinity",
+            "NaN"), sorted);
+    }
+
+    /**
+     * Order the filters by property so the body does not depend on the 
+     * order of the parameters.
+     */
+    private static JSONObject sorted(JSONObject body) {
+        List<JSONObject> filters = (List<JSONObject>)((JSONObject)
+            ((List)body.get("filterGroups")).get(0)).get("filters");
+        filters.sort((a, b) -> ((String)a.get("propertyName"))
+            .compareTo((String)b.get("propertyName")));
+        return body;
+    }
 }